@@ -0,0 +1,748 @@
+package org.torcb.math;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Matrix products and determinants across worker processes.
+ * The coordinator splits a job into tasks (row blocks of a product, cofactors of a determinant);
+ * workers pull them one at a time, so faster workers take more, and the task of a worker that dies
+ * is requeued for the others (up to MAX_ATTEMPTS) while a replacement worker is started.
+ * An attempt counts once the worker acknowledged the task, or if it fails on a connection that never served one;
+ * a connection that served earlier tasks and has since dropped (recycled, idle timeout) costs no attempt.
+ * A worker that exceeds the task timeout is killed and handled as dead.
+ * Workers speak one stream protocol over process pipes (local pool), loopback or remote sockets
+ * (Worker --listen), or an in-process loopback server; operands travel in the compact cell format below.
+ * Cells are computed without truncation; substitution rules are sent with each task.
+ */
+public interface MatrixDistributed {
+    int MAX_ATTEMPTS = 3;
+    /**
+     * Tasks per worker a product is split into, for load balance
+     */
+    int TASKS_PER_WORKER = 4;
+    long POLL_MILLIS = 50;
+    /**
+     * Default limit of one task, from sending it to its result; see WorkerPool.setTaskTimeout
+     */
+    long TASK_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Limits on sizes read from a peer, checked before allocating: a worker socket may be reachable by anyone
+     */
+    int MAX_CELLS = 1 << 24, MAX_SYMBOLS = 1 << 16, MAX_EXPONENT = 1 << 16;
+
+    int OP_CLOSE = 0, OP_PUT = 1, OP_MULTIPLY = 2, OP_DETERMINANT = 3;
+    int STATUS_OK = 0, STATUS_ERROR = 1;
+    /**
+     * Sent by a worker once it has read a whole task, before computing it
+     */
+    int RECEIVED = 0x52;
+
+    static void writeVarInt(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    /**
+     * @return varint in 0..max, else IOException
+     */
+    static int readCount(DataInput in, int max) throws IOException {
+        int v = readVarInt(in);
+        if (v < 0 || v > max) throw new IOException("count " + Integer.toUnsignedString(v) + " out of range 0.." + max);
+        return v;
+    }
+
+    /**
+     * Cells with a shared symbol table: count, symbols, then per cell 0 (zero) or terms + 1,
+     * a term as (symbol index, exponent) runs and its double coefficient
+     */
+    static void writeCells(DataOutput out, MVPolynomial[] cells) throws IOException {
+        var symbols = new LinkedHashMap<String, Integer>();
+        for (var cell : cells) {
+            if (cell == null) continue;
+            for (var t : cell.terms()) {
+                for (var s : t.symbols()) symbols.putIfAbsent(s, symbols.size());
+            }
+        }
+        writeVarInt(out, cells.length);
+        writeVarInt(out, symbols.size());
+        for (var s : symbols.keySet()) out.writeUTF(s);
+        for (var cell : cells) {
+            if (cell == null || cell.terms().isEmpty()) {
+                writeVarInt(out, 0);
+                continue;
+            }
+            writeVarInt(out, cell.terms().size() + 1);
+            for (var t : cell.terms()) {
+                var syms = t.symbols(); //sorted: equal symbols are adjacent
+                int runs = 0;
+                for (int i = 0; i < syms.size(); i++) {
+                    if (i == 0 || !syms.get(i).equals(syms.get(i - 1))) runs++;
+                }
+                writeVarInt(out, runs);
+                for (int i = 0; i < syms.size(); ) {
+                    int j = i;
+                    while (j < syms.size() && syms.get(j).equals(syms.get(i))) j++;
+                    writeVarInt(out, symbols.get(syms.get(i)));
+                    writeVarInt(out, j - i);
+                    i = j;
+                }
+                out.writeDouble(cell.coefficient(t));
+            }
+        }
+    }
+
+    static MVPolynomial[] readCells(DataInput in) throws IOException {
+        var cells = new MVPolynomial[readCount(in, MAX_CELLS)];
+        var symbols = new String[readCount(in, MAX_SYMBOLS)];
+        for (int i = 0; i < symbols.length; i++) symbols[i] = in.readUTF();
+        var product = new ArrayList<String>();
+        for (int c = 0; c < cells.length; c++) {
+            int terms = readCount(in, Integer.MAX_VALUE) - 1;
+            if (terms < 0) continue;
+            var cell = cells[c] = new MVPolynomial();
+            for (int k = 0; k < terms; k++) {
+                product.clear();
+                for (int runs = readCount(in, symbols.length); runs > 0; runs--) {
+                    int symbol = readVarInt(in);
+                    if (symbol < 0 || symbol >= symbols.length) throw new IOException("symbol index " + symbol + " out of range");
+                    for (int e = readCount(in, MAX_EXPONENT); e > 0; e--) product.add(symbols[symbol]);
+                }
+                var t = new Term();
+                t.build(product.toArray(new String[0]));
+                cell.add(t, in.readDouble());
+            }
+        }
+        return cells;
+    }
+
+    static void writeRules(DataOutput out, SubstituteTerms rules) throws IOException {
+        out.writeBoolean(rules.all);
+        var cells = new MVPolynomial[2 * rules.list.size()];
+        for (int i = 0; i < rules.list.size(); i++) {
+            var rule = rules.list.get(i);
+            cells[2 * i] = new MVPolynomial().add(rule.fromTerm(), 1);
+            cells[2 * i + 1] = rule.toExpression();
+        }
+        writeCells(out, cells);
+    }
+
+    static SubstituteTerms readRules(DataInput in) throws IOException {
+        var rules = new SubstituteTerms().acceptAll(in.readBoolean());
+        var cells = readCells(in);
+        if (cells.length % 2 != 0) throw new IOException("rules: odd cell count");
+        for (int i = 0; i < cells.length; i += 2) {
+            if (cells[i] == null || cells[i].terms().size() != 1) throw new IOException("rules: malformed term");
+            var from = cells[i].terms().iterator().next();
+            rules.add(new SubstituteTerm(from, cells[i + 1] == null ? new MVPolynomial() : cells[i + 1]));
+        }
+        return rules;
+    }
+
+    /**
+     * Row-major cells of a matrix; id names a shared operand cached by workers
+     */
+    record Operand(int id, int rows, int cols, MVPolynomial[] cells) {
+        void write(DataOutput out) throws IOException {
+            writeVarInt(out, rows);
+            writeVarInt(out, cols);
+            writeCells(out, cells);
+        }
+
+        static Operand read(DataInput in, int id) throws IOException {
+            int rows = readCount(in, MAX_CELLS), cols = readCount(in, MAX_CELLS);
+            var cells = readCells(in);
+            if ((long) rows * cols != cells.length) throw new IOException("operand: " + rows + "x" + cols + " but " + cells.length + " cells");
+            return new Operand(id, rows, cols, cells);
+        }
+    }
+
+    /**
+     * MULTIPLY: operand (rows of the left matrix) * shared (right matrix);
+     * DETERMINANT: det(operand), shared is null
+     */
+    record Task(int index, int op, Operand shared, Operand operand, SubstituteTerms rules) {
+    }
+
+    /**
+     * Serves tasks from a stream until OP_CLOSE, end of input or maxTasks tasks.
+     * Run as a process: no arguments for pipes (stdin/stdout), "--listen port [--bind address]" for sockets,
+     * "--max-tasks n" to exit after n tasks.
+     */
+    final class Worker {
+        private Worker() {}
+
+        public static void main(String[] args) throws IOException, InterruptedException {
+            int port = -1, maxTasks = Integer.MAX_VALUE;
+            var bind = InetAddress.getLoopbackAddress();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--listen" -> port = Integer.parseInt(args[i + 1]);
+                    case "--bind" -> bind = InetAddress.getByName(args[i + 1]);
+                    case "--max-tasks" -> maxTasks = Integer.parseInt(args[i + 1]);
+                    default -> throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (port >= 0) {
+                try (var server = new WorkerServer(new InetSocketAddress(bind, port), maxTasks)) {
+                    System.err.println("worker listening on " + server.address());
+                    server.join();
+                }
+                return;
+            }
+            var protocolOut = new FileOutputStream(FileDescriptor.out);
+            System.setOut(System.err); //stdout carries the protocol only
+            serve(System.in, protocolOut, maxTasks);
+        }
+
+        public static void serve(InputStream input, OutputStream output, int maxTasks) throws IOException {
+            var in = new DataInputStream(new BufferedInputStream(input));
+            var out = new DataOutputStream(new BufferedOutputStream(output));
+            Operand shared = null;
+            for (int done = 0; done < maxTasks; ) {
+                int op;
+                try {
+                    op = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (op) {
+                    case OP_CLOSE -> {
+                        return;
+                    }
+                    case OP_PUT -> shared = Operand.read(in, readVarInt(in));
+                    case OP_MULTIPLY, OP_DETERMINANT -> {
+                        int task = in.readInt();
+                        int sharedId = op == OP_MULTIPLY ? readVarInt(in) : -1;
+                        var rules = readRules(in);
+                        var operand = Operand.read(in, -1);
+                        out.writeByte(RECEIVED);
+                        out.flush();
+                        MVPolynomial[] result = null;
+                        String error = null;
+                        try {
+                            if (op == OP_DETERMINANT) {
+                                result = new MVPolynomial[]{determinant(operand, rules)};
+                            } else if (shared == null || shared.id() != sharedId) {
+                                error = "operand " + sharedId + " not sent";
+                            } else {
+                                result = multiply(operand, shared, rules);
+                            }
+                        } catch (RuntimeException e) {
+                            error = String.valueOf(e);
+                        }
+                        out.writeInt(task);
+                        if (error != null) {
+                            out.writeByte(STATUS_ERROR);
+                            out.writeUTF(error.length() > 1000 ? error.substring(0, 1000) : error);
+                        } else {
+                            out.writeByte(STATUS_OK);
+                            writeCells(out, result);
+                        }
+                        out.flush();
+                        done++;
+                    }
+                    default -> throw new IOException("unknown op " + op);
+                }
+            }
+        }
+
+        static MVPolynomial[] multiply(Operand left, Operand right, SubstituteTerms rules) {
+            if (left.cols() != right.rows()) throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            var out = new MVPolynomial[left.rows() * right.cols()];
+            for (int row = 0; row < left.rows(); row++) {
+                for (int col = 0; col < right.cols(); col++) {
+                    var sum = new MVPolynomial();
+                    for (int i = 0; i < left.cols(); i++) {
+                        var a = left.cells()[row * left.cols() + i];
+                        var b = right.cells()[i * right.cols() + col];
+                        if (a != null && b != null) sum.add(a.multiplyIm(b));
+                    }
+                    sum = sum.substituteTermsIm(rules);
+                    out[row * right.cols() + col] = sum.isZero() ? null : sum;
+                }
+            }
+            return out;
+        }
+
+        static MVPolynomial determinant(Operand m, SubstituteTerms rules) {
+            var all = MatrixView.range(0, m.rows());
+            return new MatrixView.IndexView(m.cells(), m.cols(), all, all, false).determinantBerkowitz(rules);
+        }
+    }
+
+    /**
+     * Socket server for workers: one thread per connection, each served as Worker.serve.
+     * Bound to loopback unless a wider address is given.
+     */
+    final class WorkerServer implements AutoCloseable {
+        private final ServerSocket socket;
+        private final Thread acceptor;
+        private final Set<Socket> clients = Collections.synchronizedSet(new HashSet<>());
+
+        public WorkerServer(InetSocketAddress address, int maxTasks) throws IOException {
+            socket = new ServerSocket();
+            socket.bind(address);
+            acceptor = Thread.ofPlatform().daemon().name("matrix-worker-server").start(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        var client = socket.accept();
+                        clients.add(client);
+                        Thread.ofPlatform().daemon().name("matrix-worker-" + client.getPort()).start(() -> {
+                            try (client) {
+                                serveOne(client, maxTasks);
+                            } catch (IOException ignored) {
+                                //coordinator gone; it requeues unfinished tasks
+                            } finally {
+                                clients.remove(client);
+                            }
+                        });
+                    } catch (IOException e) {
+                        return; //closed
+                    }
+                }
+            });
+        }
+
+        /**
+         * In-process server on an ephemeral loopback port
+         */
+        public static WorkerServer local(int maxTasks) throws IOException {
+            return new WorkerServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), maxTasks);
+        }
+
+        private static void serveOne(Socket client, int maxTasks) throws IOException {
+            client.setTcpNoDelay(true);
+            Worker.serve(client.getInputStream(), client.getOutputStream(), maxTasks);
+        }
+
+        public InetSocketAddress address() {
+            return (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+
+        public void join() throws InterruptedException {
+            acceptor.join();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            synchronized (clients) {
+                for (var c : clients) c.close();
+            }
+        }
+    }
+
+    /**
+     * Coordinator over a set of worker connections; one job at a time
+     */
+    final class WorkerPool implements AutoCloseable {
+        @FunctionalInterface
+        private interface Opener {
+            Connection open() throws IOException;
+        }
+
+        private static final AtomicInteger OPERAND_IDS = new AtomicInteger();
+        private final List<Connection> connections = new ArrayList<>();
+        private final Opener opener;
+        private final WorkerServer server;
+        private volatile long taskTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(TASK_TIMEOUT_MILLIS);
+
+        private WorkerPool(int count, Opener opener, WorkerServer server) throws IOException {
+            this.opener = opener;
+            this.server = server;
+            try {
+                for (int i = 0; i < count; i++) connections.add(opener.open());
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Worker JVMs on this host, talking over pipes; started again if they die
+         */
+        public static WorkerPool processes(int count) throws IOException {
+            return processes(count, List.of(), List.of());
+        }
+
+        public static WorkerPool processes(int count, List<String> jvmArgs, List<String> workerArgs) throws IOException {
+            var cmd = new ArrayList<String>();
+            cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            cmd.addAll(jvmArgs);
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(Worker.class.getName());
+            cmd.addAll(workerArgs);
+            return new WorkerPool(count, () -> {
+                var process = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                return new Connection(process.getInputStream(), process.getOutputStream(), process, null);
+            }, null);
+        }
+
+        /**
+         * Socket connections to running workers (Worker --listen), e.g. on other hosts; reconnected if dropped
+         */
+        public static WorkerPool connect(List<InetSocketAddress> workers) throws IOException {
+            var next = new AtomicInteger();
+            return new WorkerPool(workers.size(), () -> open(workers.get(next.getAndIncrement() % workers.size())), null);
+        }
+
+        /**
+         * Workers as threads of this JVM behind a loopback server: same protocol and failure handling.
+         * maxTasks limits each connection (worker recycling, failure tests).
+         */
+        public static WorkerPool inProcess(int count, int maxTasks) throws IOException {
+            var server = WorkerServer.local(maxTasks);
+            return new WorkerPool(count, () -> open(server.address()), server);
+        }
+
+        public static WorkerPool inProcess(int count) throws IOException {
+            return inProcess(count, Integer.MAX_VALUE);
+        }
+
+        private static Connection open(InetSocketAddress address) throws IOException {
+            var socket = new Socket();
+            socket.connect(address);
+            socket.setTcpNoDelay(true);
+            return new Connection(socket.getInputStream(), socket.getOutputStream(), null, socket);
+        }
+
+        /**
+         * A task without result after millis is handled as a dead worker: the connection is killed,
+         * the task requeued (up to MAX_ATTEMPTS) and a replacement worker started
+         */
+        public void setTaskTimeout(long millis) {
+            if (millis <= 0) throw new IllegalArgumentException("timeout <= 0");
+            taskTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        public synchronized int size() {
+            return (int) connections.stream().filter(c -> c.alive).count();
+        }
+
+        /**
+         * left * right, split into row blocks; rules applied per cell (MVPolynomial.substituteTermsIm)
+         */
+        public synchronized Matrix multiply(Matrix left, Matrix right, SubstituteTerms rules) {
+            if (left.nCols != right.nRows) throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            var shared = new Operand(OPERAND_IDS.incrementAndGet(), right.nRows, right.nCols, normalized(right.cells));
+            int workers = Math.max(1, size());
+            int rowsPerTask = Math.max(1, (left.nRows + workers * TASKS_PER_WORKER - 1) / (workers * TASKS_PER_WORKER));
+            var tasks = new ArrayList<Task>();
+            var leftCells = normalized(left.cells);
+            for (int row = 0; row < left.nRows; row += rowsPerTask) {
+                int rows = Math.min(rowsPerTask, left.nRows - row);
+                var slice = Arrays.copyOfRange(leftCells, row * left.nCols, (row + rows) * left.nCols);
+                tasks.add(new Task(tasks.size(), OP_MULTIPLY, shared, new Operand(-1, rows, left.nCols, slice), rules));
+            }
+            var results = run(tasks);
+            var out = new Matrix(left.nRows, right.nCols);
+            for (int t = 0, pos = 0; t < tasks.size(); t++) {
+                System.arraycopy(results[t], 0, out.cells, pos, results[t].length);
+                pos += results[t].length;
+            }
+            return out;
+        }
+
+        /**
+         * Laplace expansion along the row with most zero cells; each cofactor is one Berkowitz task
+         */
+        public synchronized MVPolynomial determinant(Matrix m, SubstituteTerms rules) {
+            if (m.nRows != m.nCols) throw new IllegalStateException("Not square");
+            int n = m.nRows;
+            if (n <= 2) return m.determinantBerkowitz(rules);
+            var cells = normalized(m.cells);
+            int row = 0, zeros = -1;
+            for (int r = 0; r < n; r++) {
+                int z = 0;
+                for (int c = 0; c < n; c++) if (cells[r * n + c] == null) z++;
+                if (z > zeros) {
+                    zeros = z;
+                    row = r;
+                }
+            }
+            var tasks = new ArrayList<Task>();
+            var factors = new ArrayList<MVPolynomial>();
+            var all = MatrixView.range(0, n);
+            for (int col = 0; col < n; col++) {
+                var a = cells[row * n + col];
+                if (a == null) continue;
+                var minor = new MatrixView.IndexView(cells, n, all, all, false).minor(row, col);
+                var minorCells = new MVPolynomial[(n - 1) * (n - 1)];
+                for (int i = 0; i < n - 1; i++) {
+                    for (int j = 0; j < n - 1; j++) minorCells[i * (n - 1) + j] = minor.cell(i, j);
+                }
+                tasks.add(new Task(tasks.size(), OP_DETERMINANT, null, new Operand(-1, n - 1, n - 1, minorCells), rules));
+                factors.add((row + col) % 2 == 0 ? a : a.negateIm());
+            }
+            var results = run(tasks);
+            var det = new MVPolynomial();
+            for (int t = 0; t < tasks.size(); t++) {
+                var cofactor = results[t][0];
+                if (cofactor != null) det.add(factors.get(t).multiplyIm(cofactor));
+            }
+            return det.substituteTermsIm(rules);
+        }
+
+        /**
+         * Zero cells as null; also clears zero entries before cells are read from several threads
+         */
+        private static MVPolynomial[] normalized(MVPolynomial[] cells) {
+            var out = new MVPolynomial[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                out[i] = cells[i] == null || cells[i].isZero() ? null : cells[i];
+            }
+            return out;
+        }
+
+        /**
+         * One pulling thread per connection; a failed connection requeues its task and is replaced
+         */
+        private MVPolynomial[][] run(List<Task> tasks) {
+            connections.replaceAll(c -> c.alive ? c : reopen());
+            connections.removeIf(Objects::isNull);
+            if (connections.isEmpty()) throw new IllegalStateException("no workers");
+            var queue = new LinkedBlockingDeque<>(tasks);
+            var results = new MVPolynomial[tasks.size()][];
+            var pending = new CountDownLatch(tasks.size());
+            var attempts = new AtomicIntegerArray(tasks.size());
+            var failure = new AtomicReference<RuntimeException>();
+            var respawns = new AtomicInteger(tasks.size() * MAX_ATTEMPTS);
+            var live = new AtomicInteger(connections.size());
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < connections.size(); i++) {
+                int slot = i;
+                threads.add(Thread.ofPlatform().daemon().name("matrix-coordinator-" + slot).start(() -> {
+                    var conn = connections.get(slot);
+                    while (pending.getCount() > 0 && failure.get() == null) {
+                        Task task;
+                        try {
+                            task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                        if (task == null) continue;
+                        try {
+                            results[task.index()] = conn.execute(task, taskTimeoutNanos);
+                            pending.countDown();
+                        } catch (IOException e) {
+                            conn.kill();
+                            if (conn.countsAsAttempt() && attempts.incrementAndGet(task.index()) >= MAX_ATTEMPTS) {
+                                failure.compareAndSet(null, new IllegalStateException(
+                                        "task " + task.index() + " failed " + MAX_ATTEMPTS + " times", e));
+                            } else {
+                                queue.addFirst(task);
+                            }
+                            conn = respawns.getAndDecrement() > 0 ? reopen() : null;
+                            if (conn == null) {
+                                live.decrementAndGet();
+                                return;
+                            }
+                            synchronized (connections) {
+                                connections.set(slot, conn);
+                            }
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                }));
+            }
+            try {
+                while (!pending.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) break;
+                    if (live.get() == 0) failure.compareAndSet(null, new IllegalStateException("no live workers"));
+                    killStuck(false);
+                }
+                for (var t : threads) {
+                    while (t.isAlive()) {
+                        t.join(POLL_MILLIS);
+                        killStuck(failure.get() != null); //a failed job needs no further results
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new IllegalStateException("interrupted"));
+            }
+            if (failure.get() != null) throw failure.get();
+            return results;
+        }
+
+        /**
+         * Kills connections past their task deadline, or every busy one if abandoned;
+         * the blocked coordinator thread then sees an IOException
+         */
+        private void killStuck(boolean abandoned) {
+            long now = System.nanoTime();
+            synchronized (connections) {
+                for (var c : connections) {
+                    if (c != null && (abandoned ? c.busy() : c.overdue(now))) c.timeout();
+                }
+            }
+        }
+
+        private Connection reopen() {
+            try {
+                return opener.open();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            for (var c : connections) c.close();
+            connections.clear();
+            if (server != null) server.close();
+        }
+    }
+
+    /**
+     * One worker: request/response streams and the process or socket behind them
+     */
+    final class Connection implements Closeable {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Process process;
+        private final Socket socket;
+        private int sharedId = -1;
+        private long served;
+        private boolean delivered;
+        private volatile boolean busy, timedOut;
+        private volatile long deadline; //System.nanoTime() by which the task in flight must be answered
+        volatile boolean alive = true;
+
+        Connection(InputStream in, OutputStream out, Process process, Socket socket) {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.process = process;
+            this.socket = socket;
+        }
+
+        MVPolynomial[] execute(Task task, long timeoutNanos) throws IOException {
+            if (!alive) throw new IOException("worker dead");
+            deadline = System.nanoTime() + timeoutNanos;
+            delivered = false;
+            busy = true;
+            try {
+                return send(task);
+            } catch (IOException e) {
+                if (timedOut) throw new IOException("task " + task.index() + " timed out", e);
+                throw e;
+            } finally {
+                busy = false;
+            }
+        }
+
+        boolean busy() {
+            return busy;
+        }
+
+        /**
+         * @return whether the failed execute counts against its task: the worker had received it,
+         * or this connection never worked (rather than a stale one that dropped after earlier tasks)
+         */
+        boolean countsAsAttempt() {
+            return delivered || served == 0;
+        }
+
+        boolean overdue(long now) {
+            return busy && now - deadline > 0;
+        }
+
+        /**
+         * kill, from a thread other than the one blocked in execute
+         */
+        void timeout() {
+            timedOut = true;
+            kill();
+        }
+
+        private MVPolynomial[] send(Task task) throws IOException {
+            if (task.shared() != null && task.shared().id() != sharedId) {
+                out.writeByte(OP_PUT);
+                writeVarInt(out, task.shared().id());
+                task.shared().write(out);
+                sharedId = task.shared().id();
+            }
+            out.writeByte(task.op());
+            out.writeInt(task.index());
+            if (task.op() == OP_MULTIPLY) writeVarInt(out, task.shared().id());
+            writeRules(out, task.rules());
+            task.operand().write(out);
+            out.flush();
+            if (in.readUnsignedByte() != RECEIVED) throw new IOException("protocol: task " + task.index() + " not acknowledged");
+            delivered = true;
+            int index = in.readInt();
+            if (index != task.index()) throw new IOException("protocol: expected task " + task.index() + ", got " + index);
+            if (in.readUnsignedByte() == STATUS_ERROR) {
+                var error = in.readUTF();
+                served++;
+                throw new IllegalStateException("worker failed: " + error);
+            }
+            var result = readCells(in);
+            served++;
+            return result;
+        }
+
+        void kill() {
+            alive = false;
+            try {
+                if (socket != null) socket.close();
+                else in.close();
+            } catch (IOException ignored) {
+                //already broken
+            }
+            if (process != null) process.destroyForcibly();
+        }
+
+        @Override
+        public void close() {
+            if (alive) {
+                try {
+                    out.writeByte(OP_CLOSE);
+                    out.flush();
+                } catch (IOException ignored) {
+                    //worker already gone
+                }
+            }
+            alive = false;
+            try {
+                out.close();
+                if (socket != null) socket.close();
+                if (process != null && !process.waitFor(1, TimeUnit.SECONDS)) process.destroyForcibly();
+            } catch (IOException ignored) {
+                //closing anyway
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.torcb.math;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface MatrixIncremental {
+
+    private static Matrix copyOf(Matrix m) {
+        return new Matrix(m.nRows, m.nCols).init(m.cells.clone());
+    }
+
+    private static MVPolynomial orZero(MVPolynomial cell) {
+        return cell == null ? new MVPolynomial() : cell;
+    }
+
+    /**
+     * Cached product left * right, updated per cell edit:
+     * an edit of left(r,c) changes product row r only, an edit of right(r,c) changes product column c only.
+     * Truncation, rules and tolerance of the context given at construction apply to every update as to
+     * left.multiplyIm(right, context); the sums are kept before tolerance, so small terms cancel as in a fresh product.
+     */
+    class IncrementalProduct {
+        private final Matrix left, right, sums, product;
+        private final SymbolMathContext.Context context;
+        private final SubstituteTerms subst;
+
+        public IncrementalProduct(Matrix left, Matrix right) {
+            this(left, right, SymbolMathContext.current());
+        }
+
+        /**
+         * Context of the current thread with subst as its rules
+         */
+        public IncrementalProduct(Matrix left, Matrix right, SubstituteTerms subst) {
+            this(left, right, SymbolMathContext.current().withRules(subst));
+        }
+
+        public IncrementalProduct(Matrix left, Matrix right, SymbolMathContext.Context context) {
+            this.left = copyOf(left);
+            this.right = copyOf(right);
+            this.context = context;
+            subst = context.substituteTerms();
+            sums = left.multiplyIm(right, context.withTolerance(SymbolMathContext.Context.DEFAULT_TOLERANCE));
+            product = copyOf(sums);
+            context.clean(product.cells);
+        }
+
+        public Matrix left() {return left;}
+
+        public Matrix right() {return right;}
+
+        /**
+         * @return product matrix, updated in place by later edits
+         */
+        public Matrix product() {return product;}
+
+        public IncrementalProduct setLeftCell(int row, int col, MVPolynomial value) {
+            var delta = orZero(value).minusIm(orZero(left.cell(row, col)));
+            left.setCell(row, col, value);
+            if (delta.isZero()) return this;
+            for (int j = 0; j < right.nCols; j++) {
+                var r = right.cell(col, j);
+                if (r != null) addToProduct(row, j, delta.multiplyIm(r, 1, context.truncation()));
+            }
+            return this;
+        }
+
+        public IncrementalProduct setRightCell(int row, int col, MVPolynomial value) {
+            var delta = orZero(value).minusIm(orZero(right.cell(row, col)));
+            right.setCell(row, col, value);
+            if (delta.isZero()) return this;
+            for (int i = 0; i < left.nRows; i++) {
+                var l = left.cell(i, row);
+                if (l != null) addToProduct(i, col, l.multiplyIm(delta, 1, context.truncation()));
+            }
+            return this;
+        }
+
+        private void addToProduct(int row, int col, MVPolynomial change) {
+            var sum = orZero(sums.cell(row, col)).addIm(change).substituteTermsIm(subst);
+            sums.setCell(row, col, sum);
+            product.setCell(row, col, context.clean(sum));
+        }
+    }
+
+    /**
+     * Cached determinant with cofactors, updated per cell edit by the rank-one determinant lemma:
+     * det(A + d e_r e_c^T) = det(A) + d * cofactor(r, c).
+     * Cofactors of the edited row and column stay valid; the others are dropped and recomputed on demand,
+     * one (n-1)x(n-1) Berkowitz minor each. An edit is therefore free of minors only where its cofactor is
+     * still cached (repeated edits in one row or column); any other edit costs one minor, for 6x6 several
+     * times less than the full determinant but not constant time. minorsComputed() counts them.
+     */
+    class IncrementalDeterminant {
+        private final Matrix matrix;
+        private final SubstituteTerms subst;
+        private final MVPolynomial[] cofactors;
+        private MVPolynomial det;
+        private long minors;
+
+        public IncrementalDeterminant(Matrix matrix) {
+            this(matrix, SymbolMathContext.current().substituteTerms());
+        }
+
+        public IncrementalDeterminant(Matrix matrix, SubstituteTerms subst) {
+            if (matrix.nCols != matrix.nRows) throw new IllegalStateException("Not square");
+            this.matrix = copyOf(matrix);
+            this.subst = subst;
+            cofactors = new MVPolynomial[matrix.cells.length];
+            det = this.matrix.determinantBerkowitz(subst);
+        }
+
+        public Matrix matrix() {return matrix;}
+
+        public MVPolynomial determinant() {return det;}
+
+        public long minorsComputed() {return minors;}
+
+        public MVPolynomial cofactor(int row, int col) {
+            int pos = matrix.index(row, col);
+            var cof = cofactors[pos];
+            if (cof == null) {
+                if (matrix.nRows == 1) {
+                    cof = new MVPolynomial().add(1);
+                } else {
+                    cof = matrix.minor(row, col).determinantBerkowitz(subst);
+                    minors++;
+                    if ((row + col) % 2 != 0) cof = cof.negateIm();
+                }
+                cofactors[pos] = cof;
+            }
+            return cof;
+        }
+
+        public IncrementalDeterminant setCell(int row, int col, MVPolynomial value) {
+            var delta = orZero(value).minusIm(orZero(matrix.cell(row, col)));
+            if (delta.isZero()) {
+                matrix.setCell(row, col, value);
+                return this;
+            }
+            det = det.addIm(delta.multiplyIm(cofactor(row, col))).substituteTermsIm(subst);
+            matrix.setCell(row, col, value);
+            invalidateCofactors(row, col);
+            return this;
+        }
+
+        /**
+         * Replace a whole row: det = sum_j value_j * cofactor(row, j), cofactors of that row are unaffected
+         */
+        public IncrementalDeterminant setRow(int row, MVPolynomial... values) {
+            if (values.length != matrix.nCols) throw new IllegalArgumentException("Expected " + matrix.nCols + " values");
+            var sum = new MVPolynomial();
+            for (int col = 0; col < values.length; col++) {
+                if (values[col] != null) sum.add(values[col].multiplyIm(cofactor(row, col)));
+            }
+            for (int col = 0; col < values.length; col++) {
+                matrix.setCell(row, col, values[col]);
+            }
+            det = sum.substituteTermsIm(subst);
+            for (int i = 0; i < matrix.nRows; i++) {
+                if (i == row) continue;
+                for (int j = 0; j < matrix.nCols; j++) {
+                    cofactors[i * matrix.nCols + j] = null;
+                }
+            }
+            return this;
+        }
+
+        private void invalidateCofactors(int row, int col) {
+            for (int i = 0; i < matrix.nRows; i++) {
+                if (i == row) continue;
+                for (int j = 0; j < matrix.nCols; j++) {
+                    if (j != col) cofactors[i * matrix.nCols + j] = null;
+                }
+            }
+        }
+    }
+}
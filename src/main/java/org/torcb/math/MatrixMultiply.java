@@ -0,0 +1,275 @@
+package org.torcb.math;
+
+import java.util.TreeSet;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface MatrixMultiply {
+    /**
+     * Weight of one term product relative to one term addition (a product allocates and sorts a new Term)
+     */
+    double TERM_PRODUCT_WEIGHT = 3;
+    /**
+     * Fixed cost of one MVPolynomial.multiplyIm call (allocation, map setup), in term additions
+     */
+    double MULTIPLY_OVERHEAD = 8;
+    /**
+     * Below this dimension strassenCost exceeds classicCost for any operand sizes, so SizeStats are not computed
+     */
+    int STRASSEN_MIN_DIM = 4;
+
+    /**
+     * Operand statistics for the cost model: average cell approxSize and approxSize of all distinct terms
+     */
+    record SizeStats(double avgSize, long distinctSize) {
+        public static SizeStats of(Matrix m) {
+            var terms = new TreeSet<Term>();
+            long size = 0;
+            int n = 0;
+            for (var cell : m.cells) {
+                if (cell == null) continue;
+                size += cell.approxSize();
+                terms.addAll(cell.terms());
+                n++;
+            }
+            long distinct = terms.stream().mapToLong(t -> 1 + t.degree()).sum();
+            return new SizeStats(n == 0 ? 0 : (double) size / n, distinct);
+        }
+
+        /**
+         * Estimated size of a sum of 'count' cells; bounded by the distinct terms of the whole matrix
+         */
+        double sumSize(double cellSize, int count) {
+            return Math.min(count * cellSize, Math.max(cellSize, distinctSize));
+        }
+    }
+
+    /**
+     * Triple loop: n^3 polynomial products, each accumulated into its result cell
+     */
+    static double classicCost(long n, double sa, double sb) {
+        return (double) n * n * n * ((TERM_PRODUCT_WEIGHT + 1) * sa * sb + MULTIPLY_OVERHEAD);
+    }
+
+    /**
+     * One Winograd level over classic half-size products: 7 products on (partially summed) operands,
+     * 8 operand block sums (copies) and 7 in-place result block sums.
+     */
+    static double strassenCost(long n, double sa, double sb, SizeStats a, SizeStats b) {
+        long h = (n + 1) / 2;
+        double a2 = a.sumSize(sa, 2), a3 = a.sumSize(sa, 3), a4 = a.sumSize(sa, 4);
+        double b2 = b.sumSize(sb, 2), b3 = b.sumSize(sb, 3), b4 = b.sumSize(sb, 4);
+        double adds = h * h * (2 * (2 * a2 + a3 + a4) + 2 * (2 * b2 + b3 + b4) + 7 * sa * sb);
+        return adds
+               + 2 * classicCost(h, sa, sb)
+               + classicCost(h, a4, sb)
+               + classicCost(h, sa, b4)
+               + 2 * classicCost(h, a2, b2)
+               + classicCost(h, a3, b3);
+    }
+
+    static boolean preferStrassen(Matrix left, Matrix right) {
+        return Strassen.ifPreferred(1, Truncation.NONE, left, right) != null;
+    }
+
+    private static boolean useStrassen(long n, double sa, double sb, SizeStats a, SizeStats b) {
+        return n >= 2 && strassenCost(n, sa, sb, a, b) < classicCost(n, sa, sb);
+    }
+
+    /**
+     * Number of cell products done by the classic triple loop (null cells skipped)
+     */
+    static long classicMultiplyCount(Matrix left, Matrix right) {
+        long count = 0;
+        for (int row = 0; row < left.nRows; row++) {
+            for (int col = 0; col < right.nCols; col++) {
+                for (int i = 0; i < left.nCols; i++) {
+                    if (left.cell(row, i) != null && right.cell(i, col) != null) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Winograd variant of Strassen on square blocks padded with null (zero) cells.
+     * Recursion stops where the cost model prefers the classic loop.
+     */
+    class Strassen {
+        private final double factor;
+        private final Truncation truncation;
+        private final SizeStats statsA, statsB;
+        private long multiplies;
+
+        public Strassen(double factor, SizeStats statsA, SizeStats statsB) {
+            this(factor, SymbolMathContext.current().truncation(), statsA, statsB);
+        }
+
+        /**
+         * @param truncation applied to the leaf products
+         */
+        public Strassen(double factor, Truncation truncation, SizeStats statsA, SizeStats statsB) {
+            this.factor = factor;
+            this.truncation = truncation;
+            this.statsA = statsA;
+            this.statsB = statsB;
+        }
+
+        public static Strassen of(double factor, Matrix left, Matrix right) {
+            return of(factor, SymbolMathContext.current().truncation(), left, right);
+        }
+
+        public static Strassen of(double factor, Truncation truncation, Matrix left, Matrix right) {
+            return new Strassen(factor, truncation, SizeStats.of(left), SizeStats.of(right));
+        }
+
+        /**
+         * @return Strassen over the stats the decision computed, null where the cost model prefers the classic loop
+         */
+        public static Strassen ifPreferred(double factor, Truncation truncation, Matrix left, Matrix right) {
+            if (left.nCols < 2) return null;
+            long n = Math.max(Math.max(left.nRows, left.nCols), right.nCols);
+            if (n < STRASSEN_MIN_DIM) return null;
+            var a = SizeStats.of(left);
+            var b = SizeStats.of(right);
+            return useStrassen(n, a.avgSize, b.avgSize, a, b) ? new Strassen(factor, truncation, a, b) : null;
+        }
+
+        public long multiplies() {
+            return multiplies;
+        }
+
+        public void multiply(Matrix left, Matrix right, Matrix out) {
+            if (left.nCols != right.nRows || out.nRows != left.nRows || out.nCols != right.nCols) {
+                throw new IllegalArgumentException("multiply: dimension mismatch");
+            }
+            int n = Math.max(Math.max(left.nRows, left.nCols), right.nCols);
+            var a = pad(left, n);
+            var b = pad(right, n);
+            var c = multiply(a, b, n, statsA.avgSize, statsB.avgSize);
+            for (int row = 0; row < out.nRows; row++) {
+                System.arraycopy(c, row * n, out.cells, row * out.nCols, out.nCols);
+            }
+        }
+
+        private static MVPolynomial[] pad(Matrix m, int n) {
+            var out = new MVPolynomial[n * n];
+            for (int row = 0; row < m.nRows; row++) {
+                System.arraycopy(m.cells, row * m.nCols, out, row * n, m.nCols);
+            }
+            return out;
+        }
+
+        private MVPolynomial[] multiply(MVPolynomial[] a, MVPolynomial[] b, int n, double sa, double sb) {
+            if (!useStrassen(n, sa, sb, statsA, statsB)) {
+                return classic(a, b, n);
+            }
+            int h = (n + 1) / 2;
+            var a11 = block(a, n, h, 0, 0);
+            var a12 = block(a, n, h, 0, h);
+            var a21 = block(a, n, h, h, 0);
+            var a22 = block(a, n, h, h, h);
+            var b11 = block(b, n, h, 0, 0);
+            var b12 = block(b, n, h, 0, h);
+            var b21 = block(b, n, h, h, 0);
+            var b22 = block(b, n, h, h, h);
+
+            var s1 = add(a21, a22, 1);
+            var s2 = add(s1, a11, -1);
+            var s3 = add(a11, a21, -1);
+            var s4 = add(a12, s2, -1);
+            var t1 = add(b12, b11, -1);
+            var t2 = add(b22, t1, -1);
+            var t3 = add(b22, b12, -1);
+            var t4 = add(t2, b21, -1);
+
+            double a2 = statsA.sumSize(sa, 2), a3 = statsA.sumSize(sa, 3), a4 = statsA.sumSize(sa, 4);
+            double b2 = statsB.sumSize(sb, 2), b3 = statsB.sumSize(sb, 3), b4 = statsB.sumSize(sb, 4);
+            var m1 = multiply(a11, b11, h, sa, sb);
+            var m2 = multiply(a12, b21, h, sa, sb);
+            var m3 = multiply(s4, b22, h, a4, sb);
+            var m4 = multiply(a22, t4, h, sa, b4);
+            var m5 = multiply(s1, t1, h, a2, b2);
+            var m6 = multiply(s2, t2, h, a3, b3);
+            var m7 = multiply(s3, t3, h, a2, b2);
+
+            // m1..m7 are fresh products: combine them in place
+            accumulate(m6, m1, 1); // u2
+            accumulate(m7, m6, 1); // u3
+            accumulate(m6, m5, 1); // u4
+            accumulate(m6, m3, 1); // c12
+            accumulate(m5, m7, 1); // c22 = u3 + m5
+            accumulate(m7, m4, -1); // c21 = u3 - m4
+            accumulate(m2, m1, 1); // c11
+            var c = new MVPolynomial[n * n];
+            setBlock(c, n, h, 0, 0, m2);
+            setBlock(c, n, h, 0, h, m6);
+            setBlock(c, n, h, h, 0, m7);
+            setBlock(c, n, h, h, h, m5);
+            return c;
+        }
+
+        private MVPolynomial[] classic(MVPolynomial[] a, MVPolynomial[] b, int n) {
+            var c = new MVPolynomial[n * n];
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    MVPolynomial elem = null;
+                    for (int i = 0; i < n; i++) {
+                        var l = a[row * n + i];
+                        var r = b[i * n + col];
+                        if (l != null && r != null) {
+                            if (elem == null) elem = new MVPolynomial();
+                            elem.add(l.multiplyIm(r, factor, truncation));
+                            multiplies++;
+                        }
+                    }
+                    c[row * n + col] = elem;
+                }
+            }
+            return c;
+        }
+
+        /**
+         * h*h block at (row0, col0) of an n*n array; cells outside n are null (zero padding)
+         */
+        private static MVPolynomial[] block(MVPolynomial[] m, int n, int h, int row0, int col0) {
+            var out = new MVPolynomial[h * h];
+            for (int r = 0; r < h && row0 + r < n; r++) {
+                int len = Math.min(h, n - col0);
+                if (len > 0) System.arraycopy(m, (row0 + r) * n + col0, out, r * h, len);
+            }
+            return out;
+        }
+
+        private static void setBlock(MVPolynomial[] m, int n, int h, int row0, int col0, MVPolynomial[] blk) {
+            for (int r = 0; r < h && row0 + r < n; r++) {
+                int len = Math.min(h, n - col0);
+                if (len > 0) System.arraycopy(blk, r * h, m, (row0 + r) * n + col0, len);
+            }
+        }
+
+        /**
+         * target += sign * source; target cells are owned (mutable), source cells are copied when moved
+         */
+        private static void accumulate(MVPolynomial[] target, MVPolynomial[] source, double sign) {
+            for (int i = 0; i < target.length; i++) {
+                var s = source[i];
+                if (s == null) continue;
+                if (target[i] == null) target[i] = s.multiplyIm(sign);
+                else target[i].add(s, sign);
+            }
+        }
+
+        private static MVPolynomial[] add(MVPolynomial[] x, MVPolynomial[] y, double sign) {
+            var out = new MVPolynomial[x.length];
+            for (int i = 0; i < x.length; i++) {
+                var a = x[i];
+                var b = y[i];
+                if (b == null) out[i] = a;
+                else if (a == null) out[i] = sign == 1 ? b : b.multiplyIm(sign);
+                else out[i] = a.addIm(b, sign);
+            }
+            return out;
+        }
+    }
+}
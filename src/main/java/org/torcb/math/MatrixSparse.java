@@ -0,0 +1,276 @@
+package org.torcb.math;
+
+import java.util.Arrays;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface MatrixSparse {
+    /**
+     * Matrices below this fill ratio (non-zero cells / all cells) are multiplied in sparse form
+     */
+    double SPARSE_FILL_RATIO = 0.25;
+    /**
+     * Matrices smaller than this (cell count) are always multiplied in dense form
+     */
+    int SPARSE_MIN_CELLS = 256;
+
+    static boolean isZeroCell(MVPolynomial cell) {
+        return cell == null || cell.isZero();
+    }
+
+    static int nonZeroCount(Matrix m) {
+        int count = 0;
+        for (var cell : m.cells) {
+            if (!isZeroCell(cell)) count++;
+        }
+        return count;
+    }
+
+    static double fillRatio(Matrix m) {
+        return m.cells.length == 0 ? 0 : (double) nonZeroCount(m) / m.cells.length;
+    }
+
+    static boolean preferSparse(Matrix left, Matrix right) {
+        if (left.cells.length < SPARSE_MIN_CELLS && right.cells.length < SPARSE_MIN_CELLS) return false;
+        return fillRatio(left) < SPARSE_FILL_RATIO || fillRatio(right) < SPARSE_FILL_RATIO;
+    }
+
+    /**
+     * Compressed Sparse Row matrix of non-zero polynomials (immutable; cells shared, never modified).
+     * Row r holds columns colIndex[rowStart[r]..rowStart[r+1]) in ascending order.
+     */
+    class SparseMatrix {
+        public final int nRows, nCols;
+        final int[] rowStart;
+        final int[] colIndex;
+        final MVPolynomial[] values;
+
+        SparseMatrix(int nRows, int nCols, int[] rowStart, int[] colIndex, MVPolynomial[] values) {
+            this.nRows = nRows;
+            this.nCols = nCols;
+            this.rowStart = rowStart;
+            this.colIndex = colIndex;
+            this.values = values;
+        }
+
+        public static SparseMatrix from(Matrix m) {
+            int nnz = nonZeroCount(m);
+            var b = new Builder(m.nRows, m.nCols, nnz);
+            m.iterateNonNull((pos, row, col, cell) -> {
+                if (!cell.isZero()) b.append(row, col, cell);
+            });
+            return b.build();
+        }
+
+        public Matrix toDense() {
+            var out = new Matrix(nRows, nCols);
+            copyTo(out);
+            return out;
+        }
+
+        void copyTo(Matrix out) {
+            if (out.nRows != nRows || out.nCols != nCols)
+                throw new IllegalArgumentException("Dimension mismatch");
+            iterateNonNull((pos, row, col, cell) -> out.cells[pos] = cell);
+        }
+
+        public int nonZeros() {
+            return rowStart[nRows];
+        }
+
+        public double fillRatio() {
+            return nRows * nCols == 0 ? 0 : (double) nonZeros() / (nRows * nCols);
+        }
+
+        public MVPolynomial cell(int row, int col) {
+            if (row < 0 || row >= nRows || col < 0 || col >= nCols)
+                throw new IllegalArgumentException("out of bounds");
+            int ix = Arrays.binarySearch(colIndex, rowStart[row], rowStart[row + 1], col);
+            return ix < 0 ? null : values[ix];
+        }
+
+        /**
+         * Visit non-zero cells in row-major order; pos is the dense index (row * nCols + col)
+         */
+        public void iterateNonNull(Matrix.RowCol action) {
+            for (int row = 0; row < nRows; row++) {
+                for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                    int col = colIndex[k];
+                    action.accept(row * nCols + col, row, col, values[k]);
+                }
+            }
+        }
+
+        public SparseMatrix transposeIm() {
+            int nnz = nonZeros();
+            int[] start = new int[nCols + 1];
+            for (int k = 0; k < nnz; k++) {
+                start[colIndex[k] + 1]++;
+            }
+            for (int c = 0; c < nCols; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] next = Arrays.copyOf(start, nCols);
+            int[] rows = new int[nnz];
+            var vals = new MVPolynomial[nnz];
+            for (int row = 0; row < nRows; row++) {
+                for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                    int dst = next[colIndex[k]]++;
+                    rows[dst] = row;
+                    vals[dst] = values[k];
+                }
+            }
+            return new SparseMatrix(nCols, nRows, start, rows, vals);
+        }
+
+        public SparseMatrix addIm(SparseMatrix right) {
+            return addIm(right, 1);
+        }
+
+        public SparseMatrix addIm(SparseMatrix right, double scalar) {
+            if (nRows != right.nRows || nCols != right.nCols)
+                throw new IllegalArgumentException("Dimension mismatch");
+            var b = new Builder(nRows, nCols, nonZeros() + right.nonZeros());
+            for (int row = 0; row < nRows; row++) {
+                int i = rowStart[row], iEnd = rowStart[row + 1];
+                int j = right.rowStart[row], jEnd = right.rowStart[row + 1];
+                while (i < iEnd || j < jEnd) {
+                    int ci = i < iEnd ? colIndex[i] : nCols;
+                    int cj = j < jEnd ? right.colIndex[j] : nCols;
+                    if (ci < cj) {
+                        b.append(row, ci, values[i++]);
+                    } else if (cj < ci) {
+                        b.appendNonZero(row, cj, right.values[j++].multiplyIm(scalar));
+                    } else {
+                        b.appendNonZero(row, ci, values[i++].addIm(right.values[j++], scalar));
+                    }
+                }
+            }
+            return b.build();
+        }
+
+        public SparseMatrix multiplyIm(SparseMatrix right) {
+            return multiplyIm(right, 1);
+        }
+
+        /**
+         * Gustavson row-by-row product: only pairs of non-zero cells are multiplied
+         */
+        public SparseMatrix multiplyIm(SparseMatrix right, double factor) {
+            return multiplyIm(right, factor, SymbolMathContext.current().truncation());
+        }
+
+        public SparseMatrix multiplyIm(SparseMatrix right, double factor, Truncation truncation) {
+            if (nCols != right.nRows) {
+                throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            }
+            var b = new Builder(nRows, right.nCols, Math.max(nonZeros(), right.nonZeros()));
+            var acc = new MVPolynomial[right.nCols];
+            int[] touched = new int[right.nCols];
+            for (int row = 0; row < nRows; row++) {
+                int nTouched = 0;
+                for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                    var l = values[k];
+                    int mid = colIndex[k];
+                    for (int m = right.rowStart[mid]; m < right.rowStart[mid + 1]; m++) {
+                        int col = right.colIndex[m];
+                        if (acc[col] == null) {
+                            acc[col] = new MVPolynomial();
+                            touched[nTouched++] = col;
+                        }
+                        acc[col].add(l.multiplyIm(right.values[m], factor, truncation));
+                    }
+                }
+                Arrays.sort(touched, 0, nTouched);
+                for (int t = 0; t < nTouched; t++) {
+                    int col = touched[t];
+                    b.appendNonZero(row, col, acc[col]);
+                    acc[col] = null;
+                }
+            }
+            return b.build();
+        }
+
+        public SparseMatrix multiplyIm(double scalar) {
+            var b = new Builder(nRows, nCols, nonZeros());
+            iterateNonNull((pos, row, col, cell) -> b.appendNonZero(row, col, cell.multiplyIm(scalar)));
+            return b.build();
+        }
+
+        public SparseMatrix substituteTermsIm(SubstituteTerms subst) {
+            var b = new Builder(nRows, nCols, nonZeros());
+            iterateNonNull((pos, row, col, cell) -> b.appendNonZero(row, col, cell.substituteTermsIm(subst)));
+            return b.build();
+        }
+
+        public SparseMatrix substituteTermsIm(String fromTerm, String toExpression) {
+            return substituteTermsIm(new SubstituteTerms().add(fromTerm, toExpression));
+        }
+
+        @Override
+        public final boolean equals(Object o) {
+            if (!(o instanceof SparseMatrix that)) return false;
+            return nRows == that.nRows && nCols == that.nCols
+                   && Arrays.equals(rowStart, that.rowStart)
+                   && Arrays.equals(colIndex, 0, nonZeros(), that.colIndex, 0, that.nonZeros())
+                   && Arrays.equals(values, 0, nonZeros(), that.values, 0, that.nonZeros());
+        }
+
+        @Override
+        public int hashCode() {
+            return MatrixView.hashCells(nRows, nCols, this::iterateNonNull); //the hash of the dense matrix
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder(" SparseMatrix{" + nRows + "x" + nCols + ", nnz " + nonZeros() + "}");
+            iterateNonNull((pos, row, col, cell) ->
+                    sb.append("\n  (").append(row).append(",").append(col).append(") ").append(cell));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Row-major CSR construction; cells must be appended in ascending (row, col) order
+     */
+    class Builder {
+        private final int nRows, nCols;
+        private final int[] rowStart;
+        private int[] colIndex;
+        private MVPolynomial[] values;
+        private int nnz, lastRow;
+
+        Builder(int nRows, int nCols, int capacity) {
+            this.nRows = nRows;
+            this.nCols = nCols;
+            rowStart = new int[nRows + 1];
+            colIndex = new int[Math.max(capacity, 4)];
+            values = new MVPolynomial[colIndex.length];
+        }
+
+        void appendNonZero(int row, int col, MVPolynomial cell) {
+            if (!isZeroCell(cell)) append(row, col, cell);
+        }
+
+        void append(int row, int col, MVPolynomial cell) {
+            if (nnz == colIndex.length) {
+                colIndex = Arrays.copyOf(colIndex, nnz * 2);
+                values = Arrays.copyOf(values, nnz * 2);
+            }
+            closeRowsUpTo(row);
+            colIndex[nnz] = col;
+            values[nnz++] = cell;
+        }
+
+        private void closeRowsUpTo(int row) {
+            while (lastRow < row) {
+                rowStart[++lastRow] = nnz;
+            }
+        }
+
+        SparseMatrix build() {
+            closeRowsUpTo(nRows);
+            return new SparseMatrix(nRows, nCols, rowStart, colIndex, values);
+        }
+    }
+}
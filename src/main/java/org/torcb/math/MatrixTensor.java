@@ -0,0 +1,351 @@
+package org.torcb.math;
+
+import java.util.*;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface MatrixTensor {
+
+    /**
+     * @return sorted union of sorted, distinct term arrays
+     */
+    static Term[] union(Term[] a, Term[] b) {
+        var out = new Term[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            int cmp = a[i].compareTo(b[j]);
+            if (cmp < 0) out[n++] = a[i++];
+            else if (cmp > 0) out[n++] = b[j++];
+            else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) out[n++] = a[i++];
+        while (j < b.length) out[n++] = b[j++];
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Matrix of polynomials over one shared, sorted monomial basis: cell (row, col) is
+     * sum_k coeffs[(row * nCols + col) * basis.length + k] * basis[k].
+     * Cells of a symbolic matrix mostly share their monomials, so one flat double array replaces
+     * a TreeMap of boxed entries per cell; add, scale, substitution and evaluation become loops over it.
+     * Immutable. Dense in the basis: suited to matrices whose cells share most terms, see compactIm.
+     */
+    final class CoefficientTensor {
+        public final int nRows, nCols;
+        final Term[] basis;
+        final double[] coeffs;
+
+        CoefficientTensor(int nRows, int nCols, Term[] basis, double[] coeffs) {
+            this.nRows = nRows;
+            this.nCols = nCols;
+            this.basis = basis;
+            this.coeffs = coeffs;
+        }
+
+        public static CoefficientTensor of(MatrixView m) {
+            int rows = m.nRows(), cols = m.nCols();
+            var terms = new TreeSet<Term>();
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    var cell = m.cell(row, col);
+                    if (cell != null) terms.addAll(cell.terms());
+                }
+            }
+            var basis = terms.toArray(new Term[0]);
+            var coeffs = new double[rows * cols * basis.length];
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    var cell = m.cell(row, col);
+                    if (cell == null) continue;
+                    int offset = (row * cols + col) * basis.length;
+                    for (var t : cell.terms()) {
+                        coeffs[offset + Arrays.binarySearch(basis, t)] = cell.coefficient(t);
+                    }
+                }
+            }
+            return new CoefficientTensor(rows, cols, basis, coeffs).compactIm();
+        }
+
+        public static CoefficientTensor of(MVPolynomial p) {
+            return of(new Matrix(1, 1).init(p));
+        }
+
+        /**
+         * @return matrix with zero cells as null
+         */
+        public Matrix toMatrix() {
+            var out = new Matrix(nRows, nCols);
+            for (int pos = 0; pos < out.cells.length; pos++) {
+                out.cells[pos] = toPolynomial(pos);
+            }
+            return out;
+        }
+
+        public MVPolynomial cell(int row, int col) {
+            if (row < 0 || row >= nRows || col < 0 || col >= nCols)
+                throw new IllegalArgumentException("out of bounds");
+            var cell = toPolynomial(row * nCols + col);
+            return cell == null ? new MVPolynomial() : cell;
+        }
+
+        private MVPolynomial toPolynomial(int pos) {
+            MVPolynomial out = null;
+            int offset = pos * basis.length;
+            for (int k = 0; k < basis.length; k++) {
+                double c = coeffs[offset + k];
+                if (zero(c)) continue;
+                if (out == null) out = new MVPolynomial();
+                out.add(basis[k], c);
+            }
+            return out;
+        }
+
+        public List<Term> basis() {
+            return List.of(basis);
+        }
+
+        public double coefficient(int row, int col, Term term) {
+            int k = Arrays.binarySearch(basis, term);
+            return k < 0 ? 0 : coeffs[(row * nCols + col) * basis.length + k];
+        }
+
+        /**
+         * Same cells over a superset basis (sorted)
+         */
+        CoefficientTensor rebase(Term[] to) {
+            if (to.length == basis.length) return this;
+            int[] index = new int[basis.length];
+            for (int k = 0; k < basis.length; k++) {
+                index[k] = Arrays.binarySearch(to, basis[k]);
+            }
+            var out = new double[nRows * nCols * to.length];
+            for (int pos = 0, cells = nRows * nCols; pos < cells; pos++) {
+                int from = pos * basis.length, dst = pos * to.length;
+                for (int k = 0; k < basis.length; k++) {
+                    out[dst + index[k]] = coeffs[from + k];
+                }
+            }
+            return new CoefficientTensor(nRows, nCols, to, out);
+        }
+
+        /**
+         * @return same cells without basis terms that are zero in every cell
+         */
+        public CoefficientTensor compactIm() {
+            int cells = nRows * nCols;
+            var used = new boolean[basis.length];
+            int count = 0;
+            for (int pos = 0; pos < cells; pos++) {
+                for (int k = 0, offset = pos * basis.length; k < basis.length; k++) {
+                    if (!used[k] && !zero(coeffs[offset + k])) {
+                        used[k] = true;
+                        count++;
+                    }
+                }
+            }
+            if (count == basis.length) return this;
+            var to = new Term[count];
+            for (int k = 0, n = 0; k < basis.length; k++) {
+                if (used[k]) to[n++] = basis[k];
+            }
+            var out = new double[cells * count];
+            for (int pos = 0; pos < cells; pos++) {
+                for (int k = 0, n = 0, offset = pos * basis.length; k < basis.length; k++) {
+                    if (used[k]) out[pos * count + n++] = coeffs[offset + k];
+                }
+            }
+            return new CoefficientTensor(nRows, nCols, to, out);
+        }
+
+        public CoefficientTensor addIm(CoefficientTensor right) {
+            return addIm(right, 1);
+        }
+
+        public CoefficientTensor minusIm(CoefficientTensor right) {
+            return addIm(right, -1);
+        }
+
+        public CoefficientTensor addIm(CoefficientTensor right, double scalar) {
+            if (nRows != right.nRows || nCols != right.nCols)
+                throw new IllegalArgumentException("Dimension mismatch");
+            var to = union(basis, right.basis);
+            var a = rebase(to).coeffs;
+            var b = right.rebase(to).coeffs;
+            var out = a == coeffs ? a.clone() : a;
+            for (int i = 0; i < out.length; i++) {
+                out[i] += scalar * b[i];
+            }
+            return new CoefficientTensor(nRows, nCols, to, out).compactIm();
+        }
+
+        public CoefficientTensor multiplyIm(double scalar) {
+            var out = coeffs.clone();
+            for (int i = 0; i < out.length; i++) {
+                out[i] *= scalar;
+            }
+            return new CoefficientTensor(nRows, nCols, basis, out).compactIm();
+        }
+
+        public CoefficientTensor transposeIm() {
+            int nb = basis.length;
+            var out = new double[coeffs.length];
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < nCols; col++) {
+                    System.arraycopy(coeffs, (row * nCols + col) * nb, out, (col * nRows + row) * nb, nb);
+                }
+            }
+            return new CoefficientTensor(nCols, nRows, basis, out);
+        }
+
+        /**
+         * Matrix product without substitution rules: the basis products are resolved once into an index table,
+         * the inner loop accumulates coefficient products only.
+         */
+        public CoefficientTensor multiplyIm(CoefficientTensor right) {
+            if (nCols != right.nRows) throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            int na = basis.length, nb = right.basis.length;
+            var products = new Term[na * nb];
+            var terms = new TreeSet<Term>();
+            for (int i = 0; i < na; i++) {
+                for (int j = 0; j < nb; j++) {
+                    terms.add(products[i * nb + j] = basis[i].multiplyIm(right.basis[j]));
+                }
+            }
+            var to = terms.toArray(new Term[0]);
+            int[] index = new int[products.length];
+            for (int i = 0; i < products.length; i++) {
+                index[i] = Arrays.binarySearch(to, products[i]);
+            }
+            int nc = to.length;
+            var out = new double[nRows * right.nCols * nc];
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < right.nCols; col++) {
+                    int dst = (row * right.nCols + col) * nc;
+                    for (int l = 0; l < nCols; l++) {
+                        int a = (row * nCols + l) * na, b = (l * right.nCols + col) * nb;
+                        for (int i = 0; i < na; i++) {
+                            double ca = coeffs[a + i];
+                            if (ca == 0) continue;
+                            for (int j = 0; j < nb; j++) {
+                                out[dst + index[i * nb + j]] += ca * right.coeffs[b + j];
+                            }
+                        }
+                    }
+                }
+            }
+            return new CoefficientTensor(nRows, right.nCols, to, out).compactIm();
+        }
+
+        /**
+         * Replace one occurrence of sub in every term (as MVPolynomial.substituteTermsIm(Term, ...)).
+         * The rule is linear in the basis: it is built once as a sparse basis-to-basis map,
+         * then applied to all cells.
+         */
+        public CoefficientTensor substituteTermsIm(Term sub, MVPolynomial repl) {
+            return substitute(sub, repl, true);
+        }
+
+        /**
+         * Rules in order; a rule is kept per cell only if that cell's approxSize shrinks, unless subst.all
+         * (per cell as MVPolynomial.substituteTermsIm(SubstituteTerms))
+         */
+        public CoefficientTensor substituteTermsIm(SubstituteTerms subst) {
+            var out = this;
+            for (var rule : subst.list) {
+                out = out.substitute(rule.fromTerm(), rule.toExpression(), subst.all);
+            }
+            return out;
+        }
+
+        private CoefficientTensor substitute(Term sub, MVPolynomial repl, boolean all) {
+            var images = new MVPolynomial[basis.length];
+            var terms = new TreeSet<>(List.of(basis));
+            boolean applies = false;
+            for (int k = 0; k < basis.length; k++) {
+                var r = basis[k].divideIm(sub);
+                if (r == null) continue;
+                images[k] = repl.multiplyIm(r, 1);
+                terms.addAll(images[k].terms());
+                applies = true;
+            }
+            if (!applies) return this;
+            var to = terms.toArray(new Term[0]);
+            var self = rebase(to);
+            int[] start = new int[basis.length + 1];
+            var targets = new ArrayList<Integer>();
+            var weights = new ArrayList<Double>();
+            for (int k = 0; k < basis.length; k++) {
+                if (images[k] == null) {
+                    targets.add(Arrays.binarySearch(to, basis[k]));
+                    weights.add(1.0);
+                } else {
+                    for (var t : images[k].terms()) {
+                        targets.add(Arrays.binarySearch(to, t));
+                        weights.add(images[k].coefficient(t));
+                    }
+                }
+                start[k + 1] = targets.size();
+            }
+            int[] target = targets.stream().mapToInt(Integer::intValue).toArray();
+            double[] weight = weights.stream().mapToDouble(Double::doubleValue).toArray();
+            int cells = nRows * nCols, nb = basis.length, nt = to.length;
+            var out = new double[cells * nt];
+            for (int pos = 0; pos < cells; pos++) {
+                int from = pos * nb, dst = pos * nt;
+                for (int k = 0; k < nb; k++) {
+                    double c = coeffs[from + k];
+                    if (c == 0) continue;
+                    for (int e = start[k]; e < start[k + 1]; e++) {
+                        out[dst + target[e]] += c * weight[e];
+                    }
+                }
+                if (!all && approxSize(to, out, dst) >= approxSize(to, self.coeffs, dst)) {
+                    System.arraycopy(self.coeffs, dst, out, dst, nt);
+                }
+            }
+            return new CoefficientTensor(nRows, nCols, to, out).compactIm();
+        }
+
+        private static int approxSize(Term[] basis, double[] coeffs, int offset) {
+            int size = 0;
+            for (int k = 0; k < basis.length; k++) {
+                if (!zero(coeffs[offset + k])) size += 1 + basis[k].degree();
+            }
+            return size;
+        }
+
+        /**
+         * @return cell values, row-major; each basis term is evaluated once for all cells
+         */
+        public double[] evaluate(Map<String, Double> values) {
+            int nb = basis.length;
+            var termValues = new double[nb];
+            for (int k = 0; k < nb; k++) {
+                double v = 1;
+                for (var s : basis[k].symbols()) {
+                    var x = values.get(s);
+                    if (x == null) throw new IllegalArgumentException("no value for " + s);
+                    v *= x;
+                }
+                termValues[k] = v;
+            }
+            var out = new double[nRows * nCols];
+            for (int pos = 0; pos < out.length; pos++) {
+                double sum = 0;
+                for (int k = 0, offset = pos * nb; k < nb; k++) {
+                    sum += coeffs[offset + k] * termValues[k];
+                }
+                out[pos] = sum;
+            }
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            return "CoefficientTensor{" + nRows + "x" + nCols + ", basis " + basis.length + "}";
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package org.torcb.math;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Read-only matrix of polynomial cells (null <=> 0); implemented by Matrix and by zero-copy views.
+ * Views share the cells array of their base matrix through row/column index maps,
+ * they are neither copied nor logged.
+ */
+public interface MatrixView {
+    /**
+     * Vector-matrix products of Berkowitz' algorithm run in parallel from this dimension
+     */
+    int PARALLEL_MIN_DIM = 8;
+
+    /**
+     * Cofactor expansions fork their minors from this dimension
+     */
+    int PARALLEL_MIN_DET = 6;
+
+    int nRows();
+
+    int nCols();
+
+    MVPolynomial cell(int row, int col);
+
+    IndexView indexView();
+
+    default MatrixView transpose() {
+        return indexView().transpose();
+    }
+
+    /**
+     * @return view without the given rows and columns
+     */
+    default MatrixView minor(int[] skipRows, int[] skipCols) {
+        return indexView().minor(skipRows, skipCols);
+    }
+
+    default MatrixView minor(int skipRow, int skipCol) {
+        return minor(new int[]{skipRow}, new int[]{skipCol});
+    }
+
+    default MatrixView block(int row0, int col0, int rows, int cols) {
+        return indexView().block(row0, col0, rows, cols);
+    }
+
+    default MatrixView row(int row) {
+        return block(row, 0, 1, nCols());
+    }
+
+    default MatrixView column(int col) {
+        return block(0, col, nRows(), 1);
+    }
+
+    /**
+     * @return new Matrix sharing the cell instances
+     */
+    default Matrix toMatrix() {
+        var out = new Matrix(nRows(), nCols());
+        for (int row = 0; row < nRows(); row++) {
+            for (int col = 0; col < nCols(); col++) {
+                out.cells[row * out.nCols + col] = cell(row, col);
+            }
+        }
+        return out;
+    }
+
+    default double[] getAllScalars() {
+        double[] scalars = new double[nRows() * nCols()];
+        for (int row = 0; row < nRows(); row++) {
+            for (int col = 0; col < nCols(); col++) {
+                var cell = cell(row, col);
+                scalars[row * nCols() + col] = cell == null ? 0 : cell.scalarSum();
+            }
+        }
+        return scalars;
+    }
+
+    /**
+     * Product of views: the cells are shared into Matrix instances, so sparse, Strassen or classic
+     * is chosen and the context applied as in Matrix.multiplyIm
+     */
+    default Matrix multiplyIm(MatrixView right) {
+        if (nCols() != right.nRows()) {
+            throw new IllegalArgumentException("multiply: nCols != other.nRows");
+        }
+        return toMatrix().multiplyIm(right.toMatrix());
+    }
+
+    /**
+     * Cofactor expansion along row 0, minors are views.
+     * Empty subst: rules of SymbolMathContext.current(), whose tolerance applies to the result.
+     */
+    default MVPolynomial determinant(SubstituteTerms subst) {
+        var context = SymbolMathContext.current();
+        if (subst.list.isEmpty()) {
+            subst = context.substituteTerms();
+        }
+        var rules = subst;
+        return context.traced("determinant", () -> context.clean(determinant(rules, context)));
+    }
+
+    /**
+     * determinant(SubstituteTerms) under context instead of the one of this thread
+     */
+    default MVPolynomial determinant(SymbolMathContext.Context context) {
+        return context.call(() -> determinant(new SubstituteTerms()));
+    }
+
+    /**
+     * From PARALLEL_MIN_DET the minors of row 0 are forked, inheriting context; summed in column order
+     */
+    private MVPolynomial determinant(SubstituteTerms subst, SymbolMathContext.Context context) {
+        if (nCols() != nRows()) throw new IllegalStateException("Not square");
+        int n = nCols();
+        var mvp = new MVPolynomial();
+        if (n == 0) return mvp.add(0);
+        if (n == 1) return mvp.add(cell(0, 0));
+        if (n == 2) return mvp.add(MVPolynomial.multiplyIm(cell(0, 0), cell(1, 1), 1))
+                              .add(MVPolynomial.multiplyIm(cell(0, 1), cell(1, 0), -1))
+                              .substituteTermsIm(subst);
+        IntFunction<MVPolynomial> minor = col -> {
+            var cell = cell(0, col);
+            //not isZero, which removes empty entries: cells are shared between forked minors and stay read only
+            if (cell == null || cell.terms().stream().allMatch(t -> zero(cell.coefficient(t)))) return null;
+            return minor(0, col).determinant(subst, context).multiplyIm(cell, col % 2 == 0 ? 1 : -1);
+        };
+        List<MVPolynomial> terms;
+        if (n >= PARALLEL_MIN_DET) {
+            terms = context.map(n, minor);
+        } else {
+            terms = IntStream.range(0, n).mapToObj(minor).toList();
+        }
+        for (var term : terms) {
+            if (term != null) mvp = mvp.add(term).substituteTermsIm(subst);
+        }
+        return mvp;
+    }
+
+    /**
+     * Characteristic polynomial det(xI - M) by Berkowitz' division-free algorithm, O(n^4) ring operations.
+     *
+     * @return p[k] = coefficient of x^k, p[n] = 1
+     */
+    default MVPolynomial[] characteristicCoefficients(SubstituteTerms subst) {
+        if (nCols() != nRows()) throw new IllegalStateException("Not square");
+        MVPolynomial[] q = {new MVPolynomial().add(1)}; //highest degree first
+        for (int k = 1; k <= nRows(); k++) {
+            int m = k - 1;
+            var t = new MVPolynomial[k + 1];
+            t[0] = new MVPolynomial().add(1);
+            t[1] = cellOrZero(m, m).negateIm();
+            var v = new MVPolynomial[m];
+            var col = new MVPolynomial[m];
+            for (int i = 0; i < m; i++) {
+                v[i] = cellOrZero(m, i);
+                col[i] = cellOrZero(i, m);
+            }
+            for (int j = 2; j <= k; j++) {
+                t[j] = SymbolMath.dotProduct(v, col).negateIm().substituteTermsIm(subst);
+                if (j < k) v = vectorMultiply(v, m, subst);
+            }
+            q = toeplitzMultiply(t, q, subst);
+        }
+        var p = new MVPolynomial[q.length];
+        for (int i = 0; i < q.length; i++) {
+            p[i] = q[q.length - 1 - i];
+        }
+        return p;
+    }
+
+    /**
+     * v * (leading dim x dim block of this matrix)
+     */
+    private MVPolynomial[] vectorMultiply(MVPolynomial[] v, int dim, SubstituteTerms subst) {
+        var context = SymbolMathContext.current();
+        IntFunction<MVPolynomial> column = c -> {
+            var sum = new MVPolynomial();
+            for (int r = 0; r < dim; r++) {
+                var a = cell(r, c);
+                if (a != null) sum.add(v[r].multiplyIm(a, 1, context.truncation()));
+            }
+            return sum.substituteTermsIm(subst);
+        };
+        var cols = dim >= PARALLEL_MIN_DIM
+                   ? context.map(dim, column)
+                   : IntStream.range(0, dim).mapToObj(column).toList();
+        return cols.toArray(MVPolynomial[]::new);
+    }
+
+    /**
+     * Lower triangular Toeplitz matrix (first column t, t.length - 1 columns) times vector q
+     */
+    private static MVPolynomial[] toeplitzMultiply(MVPolynomial[] t, MVPolynomial[] q, SubstituteTerms subst) {
+        var out = new MVPolynomial[t.length];
+        for (int i = 0; i < t.length; i++) {
+            var sum = new MVPolynomial();
+            for (int j = 0; j <= i && j < q.length; j++) {
+                sum.add(t[i - j].multiplyIm(q[j]));
+            }
+            out[i] = sum.substituteTermsIm(subst);
+        }
+        return out;
+    }
+
+    private MVPolynomial cellOrZero(int row, int col) {
+        var cell = cell(row, col);
+        return cell == null ? new MVPolynomial() : cell;
+    }
+
+    /**
+     * @return det(variable * I - M) as polynomial in variable
+     */
+    default MVPolynomial characteristicPolynomial(String variable, SubstituteTerms subst) {
+        var p = characteristicCoefficients(subst);
+        var out = new MVPolynomial();
+        for (int k = 0; k < p.length; k++) {
+            var power = new Term();
+            var symbols = new String[k];
+            Arrays.fill(symbols, variable);
+            power.build(symbols);
+            out.add(p[k].multiplyIm(power, 1));
+        }
+        return out;
+    }
+
+    /**
+     * Determinant as (-1)^n * constant coefficient of the characteristic polynomial
+     */
+    default MVPolynomial determinantBerkowitz(SubstituteTerms subst) {
+        var p = characteristicCoefficients(subst);
+        return nRows() % 2 == 0 ? p[0] : p[0].negateIm();
+    }
+
+    /**
+     * Traces of powers tr(M^1)..tr(M^count) from the characteristic polynomial (Newton's identities)
+     */
+    default MVPolynomial[] powerTraces(int count, SubstituteTerms subst) {
+        var p = characteristicCoefficients(subst);
+        int n = nRows();
+        var traces = new MVPolynomial[count + 1]; //traces[k] = tr(M^k)
+        for (int k = 1; k <= count; k++) {
+            var sum = new MVPolynomial();
+            if (k <= n) sum.add(p[n - k], -k);
+            for (int i = 1; i < k && i <= n; i++) {
+                sum.add(p[n - i].multiplyIm(traces[k - i], -1));
+            }
+            traces[k] = sum.substituteTermsIm(subst);
+        }
+        return Arrays.copyOfRange(traces, 1, count + 1);
+    }
+
+    /**
+     * Randomized zero test respecting the rules of SymbolMathContext.current(), see PolynomialRandomized
+     */
+    default boolean isZeroProbably() {
+        return PolynomialRandomized.isZeroProbably(this, PolynomialRandomized.Config.defaults());
+    }
+
+    default boolean equalsProbably(MatrixView other) {
+        return PolynomialRandomized.equalsProbably(this, other, PolynomialRandomized.Config.defaults());
+    }
+
+    /**
+     * Cell-wise equality, null <=> 0
+     */
+    static boolean equalCells(MatrixView a, MatrixView b) {
+        if (a.nRows() != b.nRows() || a.nCols() != b.nCols()) {
+            return false;
+        }
+        for (int row = 0; row < a.nRows(); row++) {
+            for (int col = 0; col < a.nCols(); col++) {
+                MVPolynomial x = a.cell(row, col);
+                MVPolynomial y = b.cell(row, col);
+                if (x != null) {
+                    if (!x.equals(y)) return false;
+                } else {
+                    if (y != null && !y.isZero()) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash of dimensions and cell term sets, consistent with equalCells
+     */
+    static int hashCells(MatrixView m) {
+        return hashCells(m.nRows(), m.nCols(), action -> {
+            for (int row = 0; row < m.nRows(); row++) {
+                for (int col = 0; col < m.nCols(); col++) action.accept(row * m.nCols() + col, row, col, m.cell(row, col));
+            }
+        });
+    }
+
+    /**
+     * hashCells over the cells cells visits, in any order; zero cells may be skipped (e.g. SparseMatrix.iterateNonNull)
+     */
+    static int hashCells(int nRows, int nCols, Consumer<Matrix.RowCol> cells) {
+        var h = new long[]{mix64(31L * nRows + nCols)};
+        cells.accept((pos, row, col, cell) -> {
+            if (cell != null && !cell.isZero()) h[0] += mix64(cell.hashCode() + ((long) row << 32 | col));
+        });
+        return (int) (h[0] ^ (h[0] >>> 32));
+    }
+
+    /**
+     * Content fingerprint from dimensions and cell fingerprints, computed on demand
+     */
+    default long fingerprint() {
+        long h = mix64(31L * nRows() + nCols());
+        for (int row = 0; row < nRows(); row++) {
+            for (int col = 0; col < nCols(); col++) {
+                var cell = cell(row, col);
+                long fp = cell == null ? 0 : cell.fingerprint();
+                if (fp != 0) h += mix64(fp + mix64((long) row << 32 | col));
+            }
+        }
+        return h;
+    }
+
+    static int[] range(int from, int to) {
+        return IntStream.range(from, to).toArray();
+    }
+
+    /**
+     * View on a base cells array: cell(r, c) = cells[rows[r] * stride + cols[c]], or (c, r) when transposed
+     */
+    final class IndexView implements MatrixView {
+        private final MVPolynomial[] cells;
+        private final int stride;
+        private final int[] rows, cols;
+        private final boolean transposed;
+
+        IndexView(MVPolynomial[] cells, int stride, int[] rows, int[] cols, boolean transposed) {
+            this.cells = cells;
+            this.stride = stride;
+            this.rows = rows;
+            this.cols = cols;
+            this.transposed = transposed;
+        }
+
+        public static IndexView of(Matrix m) {
+            return new IndexView(m.cells, m.nCols, range(0, m.nRows), range(0, m.nCols), false);
+        }
+
+        @Override
+        public int nRows() {
+            return transposed ? cols.length : rows.length;
+        }
+
+        @Override
+        public int nCols() {
+            return transposed ? rows.length : cols.length;
+        }
+
+        @Override
+        public MVPolynomial cell(int row, int col) {
+            if (row < 0 || row >= nRows() || col < 0 || col >= nCols())
+                throw new IllegalArgumentException("out of bounds");
+            return transposed ? cells[rows[col] * stride + cols[row]] : cells[rows[row] * stride + cols[col]];
+        }
+
+        @Override
+        public IndexView indexView() {
+            return this;
+        }
+
+        @Override
+        public IndexView transpose() {
+            return new IndexView(cells, stride, rows, cols, !transposed);
+        }
+
+        @Override
+        public IndexView minor(int[] skipRows, int[] skipCols) {
+            var r = transposed ? skipCols : skipRows;
+            var c = transposed ? skipRows : skipCols;
+            return new IndexView(cells, stride, skip(rows, r), skip(cols, c), transposed);
+        }
+
+        @Override
+        public IndexView block(int row0, int col0, int nRows, int nCols) {
+            if (row0 < 0 || col0 < 0 || row0 + nRows > nRows() || col0 + nCols > nCols())
+                throw new IllegalArgumentException("block outside matrix");
+            return transposed
+                    ? new IndexView(cells, stride, slice(rows, col0, nCols), slice(cols, row0, nRows), true)
+                    : new IndexView(cells, stride, slice(rows, row0, nRows), slice(cols, col0, nCols), false);
+        }
+
+        private static int[] skip(int[] map, int[] skipIndices) {
+            var out = new int[map.length];
+            int n = 0;
+            outer:
+            for (int i = 0; i < map.length; i++) {
+                for (int s : skipIndices) {
+                    if (s == i) continue outer;
+                }
+                out[n++] = map[i];
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static int[] slice(int[] map, int from, int length) {
+            return Arrays.copyOfRange(map, from, from + length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MatrixView view && equalCells(this, view);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCells(this);
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder(" MatrixView{" + nRows() + "x" + nCols() + "}\n  ");
+            for (int row = 0; row < nRows(); row++) {
+                if (row > 0) sb.append("\n  ");
+                for (int col = 0; col < nCols(); col++) {
+                    var cell = cell(row, col);
+                    sb.append(cell == null ? "0" : cell)
+                      .append(col < nCols() - 1 ? ",  " : ";");
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
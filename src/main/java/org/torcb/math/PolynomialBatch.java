@@ -0,0 +1,395 @@
+package org.torcb.math;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Batch pipeline over expression files: read -> parse -> substitute -> simplify -> evaluate -> write.
+ * A record is one line, or in record mode a block of lines ended by a blank line; a record containing ',' or ';'
+ * is a matrix (cells separated by ',', rows by ';' or, in record mode, by line breaks).
+ * Records are processed concurrently (virtual threads or a fixed pool) and written in input order;
+ * at most window records are in flight, so memory stays bounded for any input size.
+ * The writing thread streams results through PolynomialFormat, without a string per cell.
+ */
+public interface PolynomialBatch {
+
+    /**
+     * @param window     records in flight (read but not yet written)
+     * @param records    blank-line separated records instead of lines
+     * @param simplify   search config (PolynomialSimplify), null: no simplify stage
+     * @param evaluateAt variable values, null: no evaluate stage (expressions are printed)
+     */
+    record Config(int parallelism, int window, boolean virtualThreads, boolean records, SubstituteTerms rules,
+                  PolynomialSimplify.Config simplify, Map<String, Double> evaluateAt) {
+        public Config {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+            if (window < 1) throw new IllegalArgumentException("window < 1");
+        }
+
+        public static Config defaults() {
+            int cores = Runtime.getRuntime().availableProcessors();
+            return new Config(cores, 64 * cores, true, false, new SubstituteTerms(), null, null);
+        }
+
+        public Config withParallelism(int parallelism) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withWindow(int window) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withVirtualThreads(boolean virtualThreads) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withRecords(boolean records) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withRules(SubstituteTerms rules) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withSimplify(PolynomialSimplify.Config simplify) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+
+        public Config withEvaluateAt(Map<String, Double> evaluateAt) {
+            return new Config(parallelism, window, virtualThreads, records, rules, simplify, evaluateAt);
+        }
+    }
+
+    enum Stage {READ, PARSE, SUBSTITUTE, SIMPLIFY, EVALUATE, WRITE}
+
+    /**
+     * Per stage item counts and busy time, summed over threads
+     */
+    final class Stats {
+        private final LongAdder[] items = new LongAdder[Stage.values().length];
+        private final LongAdder[] nanos = new LongAdder[Stage.values().length];
+        private final LongAdder errors = new LongAdder();
+        private volatile long wallNanos;
+
+        Stats() {
+            for (int i = 0; i < items.length; i++) {
+                items[i] = new LongAdder();
+                nanos[i] = new LongAdder();
+            }
+        }
+
+        void record(Stage stage, long startNanos) {
+            items[stage.ordinal()].increment();
+            nanos[stage.ordinal()].add(System.nanoTime() - startNanos);
+        }
+
+        public long items(Stage stage) {
+            return items[stage.ordinal()].sum();
+        }
+
+        public long errors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return items per second of busy time in this stage (summed over threads)
+         */
+        public double throughput(Stage stage) {
+            long n = nanos[stage.ordinal()].sum();
+            return n == 0 ? 0 : items(stage) * 1e9 / n;
+        }
+
+        public double wallSeconds() {
+            return wallNanos / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder(String.format("%-10s %10s %10s %12s%n", "stage", "items", "busy ms", "items/s"));
+            for (var stage : Stage.values()) {
+                if (items(stage) == 0) continue;
+                sb.append(String.format("%-10s %10d %10.1f %12.0f%n", stage.name().toLowerCase(), items(stage),
+                        nanos[stage.ordinal()].sum() / 1e6, throughput(stage)));
+            }
+            long written = items(Stage.WRITE);
+            return sb.append(String.format("%d records (%d errors) in %.3f s, %.0f records/s", written, errors(),
+                    wallSeconds(), wallNanos == 0 ? 0 : written * 1e9 / wallNanos)).toString();
+        }
+    }
+
+    /**
+     * One record through the stages; cells row-major, a plain expression is a 1 x 1 non-matrix
+     */
+    final class Item {
+        final String source;
+        boolean matrix;
+        int rows = 1, cols = 1;
+        MVPolynomial[] cells;
+        double[] values;
+        String error;
+
+        Item(String source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Worker stages of one item; failures are recorded on the item and printed in its place
+     */
+    static Item process(Item item, Config config, Stats stats) {
+        try {
+            long t = System.nanoTime();
+            parse(item, config.records());
+            stats.record(Stage.PARSE, t);
+            if (!config.rules().list.isEmpty()) {
+                t = System.nanoTime();
+                for (int i = 0; i < item.cells.length; i++) {
+                    item.cells[i] = item.cells[i].substituteTermsIm(config.rules());
+                }
+                stats.record(Stage.SUBSTITUTE, t);
+            }
+            if (config.simplify() != null) {
+                t = System.nanoTime();
+                for (int i = 0; i < item.cells.length; i++) {
+                    item.cells[i] = PolynomialSimplify.simplify(item.cells[i], config.rules(), config.simplify()).result();
+                }
+                stats.record(Stage.SIMPLIFY, t);
+            }
+            if (config.evaluateAt() != null) {
+                t = System.nanoTime();
+                item.values = new double[item.cells.length];
+                for (int i = 0; i < item.cells.length; i++) {
+                    item.values[i] = evaluate(item.cells[i], config.evaluateAt());
+                }
+                stats.record(Stage.EVALUATE, t);
+            }
+        } catch (RuntimeException e) {
+            item.error = e.getMessage() == null ? e.toString() : e.getMessage();
+            stats.errors.increment();
+        }
+        return item;
+    }
+
+    private static void parse(Item item, boolean records) {
+        var text = item.source.strip();
+        item.matrix = text.indexOf(',') >= 0 || text.indexOf(';') >= 0;
+        if (!item.matrix) {
+            item.cells = new MVPolynomial[]{MVPolynomial.parse(text.replace('\n', ' '))};
+            return;
+        }
+        var rowTexts = new ArrayList<String>();
+        for (var line : records ? text.split("\n") : new String[]{text}) {
+            for (var row : line.split(";")) {
+                if (!row.isBlank()) rowTexts.add(row);
+            }
+        }
+        item.rows = rowTexts.size();
+        item.cols = rowTexts.get(0).split(",", -1).length;
+        item.cells = new MVPolynomial[item.rows * item.cols];
+        for (int r = 0; r < item.rows; r++) {
+            var cols = rowTexts.get(r).split(",", -1);
+            if (cols.length != item.cols) throw new IllegalStateException("different row lengths");
+            for (int c = 0; c < cols.length; c++) {
+                item.cells[r * item.cols + c] = MVPolynomial.parse(cols[c].strip());
+            }
+        }
+    }
+
+    static double evaluate(MVPolynomial p, Map<String, Double> values) {
+        double sum = 0;
+        for (var t : p.terms()) {
+            double v = p.coefficient(t);
+            for (var s : t.symbols()) {
+                var x = values.get(s);
+                if (x == null) throw new IllegalArgumentException("no value for " + s);
+                v *= x;
+            }
+            sum += v;
+        }
+        return sum;
+    }
+
+    static void write(Item item, boolean records, Appendable out) throws IOException {
+        if (item.error != null) {
+            out.append("error: ").append(item.error.replace('\n', ' ')).append('\n');
+        } else {
+            for (int r = 0; r < item.rows; r++) {
+                for (int c = 0; c < item.cols; c++) {
+                    int pos = r * item.cols + c;
+                    if (c > 0) out.append(", ");
+                    if (item.values != null) out.append(Double.toString(item.values[pos]));
+                    else PolynomialFormat.Format.defaults().write(out, item.cells[pos]);
+                }
+                if (r < item.rows - 1) out.append(records ? ";\n" : "; ");
+            }
+            out.append('\n');
+        }
+        if (records) out.append('\n');
+    }
+
+    /**
+     * Ordered, bounded concurrent run: a reader thread submits records and queues their futures in input order
+     * (blocking when window futures are pending), the calling thread writes them as they complete.
+     */
+    static Stats run(BufferedReader in, Writer out, Config config) throws IOException {
+        var stats = new Stats();
+        long start = System.nanoTime();
+        var inFlight = new ArrayBlockingQueue<Future<Item>>(config.window());
+        var end = CompletableFuture.<Item>completedFuture(null);
+        var readFailure = new AtomicReference<IOException>();
+        var context = SymbolMathContext.current(); //workers run under the caller's context
+        try (var executor = config.virtualThreads()
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(config.parallelism())) {
+            var limit = new Semaphore(config.parallelism()); //CPU-bound stages: at most parallelism at a time
+            var reader = Thread.ofPlatform().daemon().name("batch-reader").start(() -> {
+                try {
+                    for (String record; (record = next(in, config.records(), stats)) != null; ) {
+                        var item = new Item(record);
+                        inFlight.put(executor.submit(context.wrap(() -> {
+                            limit.acquire();
+                            try {
+                                return process(item, config, stats);
+                            } finally {
+                                limit.release();
+                            }
+                        })));
+                    }
+                } catch (IOException e) {
+                    readFailure.set(e);
+                } catch (InterruptedException | RejectedExecutionException e) {
+                    return; //writer failed: interrupted, or the executor shut down before the interrupt arrived
+                }
+                try {
+                    inFlight.put(end);
+                } catch (InterruptedException ignored) {
+                    //writer failed
+                }
+            });
+            try {
+                for (Future<Item> f; (f = inFlight.take()) != end; ) {
+                    var item = f.get();
+                    long t = System.nanoTime();
+                    write(item, config.records(), out);
+                    stats.record(Stage.WRITE, t);
+                }
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                reader.interrupt();
+                executor.shutdownNow();
+                throw e;
+            } catch (InterruptedException e) {
+                reader.interrupt();
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("batch interrupted");
+            } catch (ExecutionException e) { //process catches record failures; an Error, e.g. StackOverflowError
+                reader.interrupt();
+                executor.shutdownNow();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        if (readFailure.get() != null) throw readFailure.get();
+        stats.wallNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    /**
+     * @return next non-blank line or blank-line separated block, null at end of input
+     */
+    private static String next(BufferedReader in, boolean records, Stats stats) throws IOException {
+        long t = System.nanoTime();
+        String line;
+        while ((line = in.readLine()) != null && (line.isBlank() || line.startsWith("#"))) {
+            //skip blank lines and comments between records
+        }
+        if (line == null) return null;
+        if (records) {
+            var sb = new StringBuilder(line);
+            while ((line = in.readLine()) != null && !line.isBlank()) {
+                if (!line.startsWith("#")) sb.append('\n').append(line);
+            }
+            line = sb.toString();
+        }
+        stats.record(Stage.READ, t);
+        return line;
+    }
+
+    /**
+     * Rules file or argument: one 'from -> to' per line, quotes optional, '#' comments
+     */
+    static SubstituteTerms parseRules(Iterable<String> lines, SubstituteTerms into) {
+        for (var line : lines) {
+            if (line.isBlank() || line.strip().startsWith("#")) continue;
+            int arrow = line.indexOf("->");
+            if (arrow < 0) throw new IllegalArgumentException("expected 'from -> to': " + line);
+            into.add(unquote(line.substring(0, arrow)), unquote(line.substring(arrow + 2)));
+        }
+        return into;
+    }
+
+    private static String unquote(String s) {
+        s = s.strip();
+        return s.length() >= 2 && s.startsWith("'") && s.endsWith("'") ? s.substring(1, s.length() - 1) : s;
+    }
+
+    /**
+     * java org.torcb.math.PolynomialBatch$Cli [options] [input [output]], stdin/stdout by default; stats on stderr.
+     * Options: --rules file, --rule 'from -> to', --all (accept all rules), --simplify, --eval x=1,y=2,
+     * --records, --parallelism n, --window n, --platform-threads, --quiet (no stats)
+     */
+    final class Cli {
+        private Cli() {}
+
+        public static void main(String[] args) throws IOException {
+            var config = Config.defaults();
+            var rules = new SubstituteTerms();
+            var files = new ArrayList<String>();
+            boolean quiet = false;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--rules" -> parseRules(Files.readAllLines(Path.of(args[++i])), rules);
+                    case "--rule" -> parseRules(List.of(args[++i]), rules);
+                    case "--all" -> rules.acceptAll(true);
+                    case "--simplify" -> config = config.withSimplify(PolynomialSimplify.Config.defaults());
+                    case "--eval" -> config = config.withEvaluateAt(parseValues(args[++i]));
+                    case "--records" -> config = config.withRecords(true);
+                    case "--parallelism" -> config = config.withParallelism(Integer.parseInt(args[++i]));
+                    case "--window" -> config = config.withWindow(Integer.parseInt(args[++i]));
+                    case "--platform-threads" -> config = config.withVirtualThreads(false);
+                    case "--quiet" -> quiet = true;
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("unknown option " + args[i]);
+                        files.add(args[i]);
+                    }
+                }
+            }
+            config = config.withRules(rules);
+            try (var in = files.isEmpty() ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Path.of(files.get(0)));
+                 var out = files.size() < 2 ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                         : Files.newBufferedWriter(Path.of(files.get(1)))) {
+                var stats = run(in, out, config);
+                if (!quiet) System.err.println(stats);
+            }
+        }
+
+        static Map<String, Double> parseValues(String arg) {
+            var values = new HashMap<String, Double>();
+            for (var pair : arg.split(",")) {
+                var kv = pair.split("=", 2);
+                if (kv.length != 2) throw new IllegalArgumentException("expected name=value: " + pair);
+                values.put(kv[0].strip(), Double.parseDouble(kv[1].strip()));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.torcb.math;
+
+import java.util.*;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Multivariate division by a set of divisors on a geobucket: the running remainder is spread over
+ * buckets of geometrically growing capacity, so a reduction step merges the scaled divisor tail into a small
+ * bucket instead of rebuilding the whole remainder.
+ */
+public interface PolynomialDivision {
+    /**
+     * Term order of the MVPolynomial map: higher degree is greater, its first entry is the leading term.
+     * An order compares greater-is-larger and must be a monomial order for division to terminate,
+     * see PolynomialOrder.MonomialOrder.
+     */
+    Comparator<Term> DEFAULT_ORDER = PolynomialOrder.MonomialOrder.DEFAULT;
+    /**
+     * Capacity of bucket i is BUCKET_BASE^(i+1) terms
+     */
+    int BUCKET_BASE = 4;
+
+    /**
+     * p = sum quotients[i] * divisors[i] + remainder, no term of remainder divisible by a divisor's leading term
+     */
+    record Division(List<MVPolynomial> quotients, MVPolynomial remainder) {
+    }
+
+    static Division divide(MVPolynomial p, List<MVPolynomial> divisors, Comparator<Term> order) {
+        return run(p, divisors, order, true);
+    }
+
+    static Division divide(MVPolynomial p, MVPolynomial divisor) {
+        return divide(p, List.of(divisor), DEFAULT_ORDER);
+    }
+
+    /**
+     * Normal form: remainder only, no quotients kept
+     */
+    static MVPolynomial reduce(MVPolynomial p, List<MVPolynomial> divisors, Comparator<Term> order) {
+        return run(p, divisors, order, false).remainder();
+    }
+
+    static Term leadingTerm(MVPolynomial p, Comparator<Term> order) {
+        return p.leadingTerm(order);
+    }
+
+    private static Division run(MVPolynomial p, List<MVPolynomial> divisors, Comparator<Term> order, boolean keepQuotients) {
+        int n = divisors.size();
+        var leads = new Term[n];
+        var leadCoefficients = new double[n];
+        var tails = new Tail[n];
+        for (int i = 0; i < n; i++) {
+            var d = divisors.get(i);
+            if (d == null || d.isZero()) throw new IllegalArgumentException("zero divisor");
+            leads[i] = leadingTerm(d, order);
+            leadCoefficients[i] = d.coefficient(leads[i]);
+            tails[i] = Tail.of(d, leads[i]);
+        }
+        var quotients = new ArrayList<MVPolynomial>();
+        for (int i = 0; i < n; i++) quotients.add(new MVPolynomial());
+        var remainder = new MVPolynomial();
+        var bucket = new Geobucket(order);
+        if (p != null) bucket.add(Tail.of(p, null), null, 1);
+        for (Map.Entry<Term, Double> lead; (lead = bucket.popLeading()) != null; ) {
+            var term = lead.getKey();
+            boolean reduced = false;
+            for (int i = 0; i < n && !reduced; i++) {
+                var factor = term.divideIm(leads[i]);
+                if (factor == null) continue;
+                double c = lead.getValue() / leadCoefficients[i];
+                if (keepQuotients) quotients.get(i).add(factor, c);
+                bucket.add(tails[i], factor, -c);
+                reduced = true;
+            }
+            if (!reduced) remainder.add(term, lead.getValue());
+        }
+        return new Division(quotients, remainder);
+    }
+
+    /**
+     * Terms and coefficients of a polynomial without one term, as arrays
+     */
+    record Tail(Term[] terms, double[] values) {
+        static Tail of(MVPolynomial p, Term skip) {
+            int n = p.terms().size() - (skip == null ? 0 : 1);
+            var terms = new Term[n];
+            var values = new double[n];
+            int k = 0;
+            for (var t : p.terms()) {
+                if (t.equals(skip)) continue;
+                terms[k] = t;
+                values[k++] = p.coefficient(t);
+            }
+            return new Tail(terms, values);
+        }
+    }
+
+    /**
+     * Sum of polynomials in buckets of growing capacity; popLeading combines the leading terms of all buckets
+     */
+    final class Geobucket {
+        private final Comparator<Term> order;
+        private final List<TreeMap<Term, Double>> buckets = new ArrayList<>(); //first key = greatest
+
+        public Geobucket(Comparator<Term> order) {
+            this.order = order;
+        }
+
+        private static long capacity(int i) {
+            long c = BUCKET_BASE;
+            for (int k = 0; k < i && c < Integer.MAX_VALUE; k++) c *= BUCKET_BASE;
+            return c;
+        }
+
+        private TreeMap<Term, Double> bucket(int i) {
+            while (buckets.size() <= i) buckets.add(new TreeMap<>(order.reversed()));
+            return buckets.get(i);
+        }
+
+        /**
+         * Adds scale * factor * tail
+         */
+        public void add(Tail tail, Term factor, double scale) {
+            int i = 0;
+            while (capacity(i) < tail.terms().length) i++;
+            var b = bucket(i);
+            for (int k = 0; k < tail.terms().length; k++) {
+                var t = factor == null ? tail.terms()[k] : tail.terms()[k].multiplyIm(factor);
+                merge(b, t, scale * tail.values()[k]);
+            }
+            while (b.size() > capacity(i)) { //overflow: move up
+                var up = bucket(i + 1);
+                b.forEach((t, v) -> merge(up, t, v));
+                b.clear();
+                b = up;
+                i++;
+            }
+        }
+
+        private static void merge(TreeMap<Term, Double> b, Term t, double v) {
+            b.merge(t, v, (x, y) -> {
+                double s = x + y;
+                return zero(s) ? null : s;
+            });
+        }
+
+        /**
+         * @return leading term with its total coefficient, removed; null if the sum is zero
+         */
+        public Map.Entry<Term, Double> popLeading() {
+            while (true) {
+                Term best = null;
+                for (var b : buckets) {
+                    if (!b.isEmpty() && (best == null || order.compare(b.firstKey(), best) > 0)) best = b.firstKey();
+                }
+                if (best == null) return null;
+                double sum = 0;
+                for (var b : buckets) {
+                    var v = b.remove(best);
+                    if (v != null) sum += v;
+                }
+                if (!zero(sum)) return Map.entry(best, sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.torcb.math;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Streaming output of polynomials and matrices: terms are appended one by one to an Appendable,
+ * so writing to a Writer or OutputStream needs no string of the whole result.
+ * Immutable and thread-safe; Format.defaults() writes what toString returns.
+ */
+public interface PolynomialFormat {
+    /**
+     * Precision printing the shortest decimal that parses back to the same double
+     */
+    int ROUND_TRIP = -1;
+
+    /**
+     * TEXT: toString syntax, read back by MVPolynomial.parse (in ROUND_TRIP precision exactly);
+     * JAVA: Java/C expression with double literals, matrices as array initializers;
+     * LATEX: math mode, exponents and pmatrix
+     */
+    enum Syntax {TEXT, JAVA, LATEX}
+
+    /**
+     * @param decimals fraction digits, rounded half-even as DecimalFormat does; ROUND_TRIP for all needed
+     */
+    record Format(Syntax syntax, int decimals) {
+        private static final Format DEFAULT = new Format(Syntax.TEXT, 3);
+        /**
+         * Per-thread DecimalFormat by decimals, only for values near a rounding boundary
+         */
+        private static final ThreadLocal<Map<Integer, DecimalFormat>> TIE_FORMATS = ThreadLocal.withInitial(HashMap::new);
+
+        public Format {
+            Objects.requireNonNull(syntax);
+            if (decimals < ROUND_TRIP) throw new IllegalArgumentException("decimals < -1");
+        }
+
+        /**
+         * TEXT with 3 decimals, as toString
+         */
+        public static Format defaults() {
+            return DEFAULT;
+        }
+
+        public Format withSyntax(Syntax syntax) {
+            return new Format(syntax, decimals);
+        }
+
+        public Format withDecimals(int decimals) {
+            return new Format(syntax, decimals);
+        }
+
+        public Format withRoundTrip() {
+            return withDecimals(ROUND_TRIP);
+        }
+
+        /**
+         * Signed number in this syntax; TEXT with 3 decimals equals DF.format(d)
+         */
+        public String number(double d) {
+            boolean negative = d < 0 || d == 0 && 1 / d < 0;
+            var s = magnitude(Math.abs(d));
+            return negative ? "-" + s : s;
+        }
+
+        private String magnitude(double a) {
+            if (!Double.isFinite(a)) {
+                boolean nan = Double.isNaN(a);
+                return switch (syntax) {
+                    case TEXT -> nan ? "NaN" : "∞";
+                    case JAVA -> nan ? "(0.0 / 0.0)" : "(1.0 / 0.0)";
+                    case LATEX -> nan ? "\\mathrm{NaN}" : "\\infty";
+                };
+            }
+            if (syntax == Syntax.TEXT) return decimal(a);
+            if (decimals == ROUND_TRIP) {
+                var s = Double.toString(a);
+                if (syntax == Syntax.JAVA) return s;
+                int e = s.indexOf('E');
+                if (e < 0) return s.endsWith(".0") ? s.substring(0, s.length() - 2) : s;
+                var mantissa = s.substring(0, e);
+                if (mantissa.endsWith(".0")) mantissa = mantissa.substring(0, mantissa.length() - 2);
+                return mantissa + " \\cdot 10^{" + s.substring(e + 1) + "}";
+            }
+            var s = decimal(a);
+            return syntax == Syntax.JAVA && s.indexOf('.') < 0 ? s + ".0" : s;
+        }
+
+        /**
+         * Plain decimal of a finite a >= 0, as DecimalFormat. That rounds a digit string of a whose last digit
+         * depends on its conversion; the result is computed here whenever no rounding boundary lies within
+         * half an ulp of a, the rare rest (and a >= 2^53) goes to a DecimalFormat confined to this thread.
+         */
+        private String decimal(double a) {
+            if (a < 0x1p53 && a == Math.rint(a)) return Long.toString((long) a);
+            if (decimals == ROUND_TRIP) return new BigDecimal(Double.toString(a)).stripTrailingZeros().toPlainString();
+            if (a < 0x1p53) {
+                var exact = new BigDecimal(a);
+                var halfUlp = new BigDecimal(Math.ulp(a) / 2);
+                var step = BigDecimal.ONE.movePointLeft(decimals);
+                var above = exact.setScale(decimals, RoundingMode.FLOOR).add(step.divide(BigDecimal.TWO));
+                var below = above.subtract(step);
+                if (above.subtract(exact).compareTo(halfUlp) > 0 && exact.subtract(below).compareTo(halfUlp) > 0) {
+                    return exact.setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+                }
+            }
+            return TIE_FORMATS.get().computeIfAbsent(decimals, Format::decimalFormat).format(a);
+        }
+
+        private static DecimalFormat decimalFormat(int decimals) {
+            var symbols = DecimalFormatSymbols.getInstance();
+            symbols.setDecimalSeparator('.');
+            return new DecimalFormat(decimals == 0 ? "#" : "#." + "#".repeat(decimals), symbols);
+        }
+
+        public void write(Appendable out, Term term) throws IOException {
+            var symbols = term.symbols();
+            switch (syntax) {
+                case TEXT, JAVA -> {
+                    for (int i = 0; i < symbols.size(); i++) {
+                        if (i > 0) out.append('*');
+                        out.append(symbols.get(i));
+                    }
+                }
+                case LATEX -> {
+                    for (int i = 0; i < symbols.size(); ) {
+                        var symbol = symbols.get(i);
+                        int exponent = 1;
+                        while (i + exponent < symbols.size() && symbols.get(i + exponent).equals(symbol)) exponent++;
+                        if (i > 0) out.append(' ');
+                        if (symbol.length() == 1) out.append(symbol);
+                        else out.append("\\mathit{").append(symbol.replace("_", "\\_")).append('}');
+                        if (exponent > 1) out.append("^{").append(Integer.toString(exponent)).append('}');
+                        i += exponent;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Terms in map order, as toString
+         */
+        public void write(Appendable out, MVPolynomial p) throws IOException {
+            write(out, p, p.terms());
+        }
+
+        /**
+         * Terms greatest first under order; sorts references to the terms
+         */
+        public void write(Appendable out, MVPolynomial p, Comparator<Term> order) throws IOException {
+            var terms = new ArrayList<>(p.terms());
+            terms.sort(order.reversed());
+            write(out, p, terms);
+        }
+
+        private void write(Appendable out, MVPolynomial p, Collection<Term> terms) throws IOException {
+            var one = magnitude(1);
+            boolean first = true;
+            for (var term : terms) {
+                double value = p.coefficient(term);
+                if (syntax == Syntax.TEXT) out.append(first ? (value < 0 ? "−" : "") : (value < 0 ? " − " : " + "));
+                else out.append(first ? (value < 0 ? "-" : "") : (value < 0 ? " - " : " + "));
+                first = false;
+                var v = magnitude(Math.abs(value));
+                boolean constant = term.degree() == 0;
+                if (constant || !one.equals(v)) {
+                    out.append(v);
+                    if (!constant && syntax != Syntax.TEXT) out.append(syntax == Syntax.JAVA ? "*" : " ");
+                }
+                write(out, term);
+            }
+            if (first) out.append(magnitude(0));
+        }
+
+        /**
+         * Rows of cells (null is 0): TEXT as in Matrix.toString after its header line
+         */
+        public void write(Appendable out, MatrixView m) throws IOException {
+            var zero = magnitude(0);
+            switch (syntax) {
+                case TEXT -> {
+                    for (int row = 0; row < m.nRows(); row++) {
+                        if (row > 0) out.append("\n  ");
+                        for (int col = 0; col < m.nCols(); col++) {
+                            writeCell(out, m.cell(row, col), zero);
+                            out.append(col < m.nCols() - 1 ? ",  " : ";");
+                        }
+                    }
+                }
+                case JAVA -> {
+                    out.append('{');
+                    for (int row = 0; row < m.nRows(); row++) {
+                        out.append(row > 0 ? ",\n {" : "{");
+                        for (int col = 0; col < m.nCols(); col++) {
+                            if (col > 0) out.append(", ");
+                            writeCell(out, m.cell(row, col), zero);
+                        }
+                        out.append('}');
+                    }
+                    out.append('}');
+                }
+                case LATEX -> {
+                    out.append("\\begin{pmatrix}\n");
+                    for (int row = 0; row < m.nRows(); row++) {
+                        for (int col = 0; col < m.nCols(); col++) {
+                            if (col > 0) out.append(" & ");
+                            writeCell(out, m.cell(row, col), zero);
+                        }
+                        out.append(row < m.nRows() - 1 ? " \\\\\n" : "\n");
+                    }
+                    out.append("\\end{pmatrix}");
+                }
+            }
+        }
+
+        private void writeCell(Appendable out, MVPolynomial cell, String zero) throws IOException {
+            if (cell == null) out.append(zero);
+            else write(out, cell);
+        }
+
+        /**
+         * UTF-8, buffered; out is flushed, not closed
+         */
+        public void write(OutputStream out, MVPolynomial p) throws IOException {
+            var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            write(writer, p);
+            writer.flush();
+        }
+
+        public void write(OutputStream out, MatrixView m) throws IOException {
+            var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            write(writer, m);
+            writer.flush();
+        }
+
+        public String toString(MVPolynomial p) {
+            var sb = new StringBuilder();
+            try {
+                write(sb, p);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); //not thrown by StringBuilder
+            }
+            return sb.toString();
+        }
+
+        public String toString(MVPolynomial p, Comparator<Term> order) {
+            var sb = new StringBuilder();
+            try {
+                write(sb, p, order);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sb.toString();
+        }
+
+        public String toString(MatrixView m) {
+            var sb = new StringBuilder();
+            try {
+                write(sb, m);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sb.toString();
+        }
+    }
+}
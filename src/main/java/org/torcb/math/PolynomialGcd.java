@@ -0,0 +1,322 @@
+package org.torcb.math;
+
+import java.util.*;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Multivariate GCD over the rationals by recursive primitive pseudo-remainder sequences,
+ * with fast paths for constants, monomials, equal primitive parts and exact divisibility.
+ * Coefficients are doubles: results are exact while the integer coefficients stay below 2^53,
+ * which taking primitive parts at every step is meant to ensure.
+ * Multiplications here ignore the context truncation.
+ */
+public interface PolynomialGcd {
+
+    /**
+     * Numeric content: positive rational c such that p / c has coprime integer coefficients,
+     * negative if the leading coefficient is. Falls back to the leading coefficient (monic primitive part)
+     * when a coefficient is not a small rational.
+     */
+    static double content(MVPolynomial p) {
+        var terms = p.terms();
+        if (terms.isEmpty()) return 1;
+        double lead = p.coefficient(terms.iterator().next());
+        long num = 0, den = 1;
+        for (var t : terms) {
+            var q = rational(p.coefficient(t));
+            if (q == null) return lead;
+            long g = gcd(den, q[1]);
+            if (den / g > (1L << 53) / q[1]) return lead;
+            den = den / g * q[1];
+            num = gcd(num, Math.abs(q[0]));
+        }
+        // num = gcd of numerators, den = lcm of denominators: gcd of reduced fractions is num / den
+        double c = (double) num / den;
+        return lead < 0 ? -c : c;
+    }
+
+    static MVPolynomial primitivePart(MVPolynomial p) {
+        return p.multiplyIm(1 / content(p));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * @return gcd with coprime integer coefficients and positive leading coefficient, 0 if both are 0
+     */
+    static MVPolynomial gcd(MVPolynomial a, MVPolynomial b) {
+        if (a == null || a.isZero()) return b == null ? new MVPolynomial() : normalize(b);
+        if (b == null || b.isZero()) return normalize(a);
+        if (isConstant(a) || isConstant(b)) return one();
+        if (a.terms().size() == 1) return monomialGcd(a, b);
+        if (b.terms().size() == 1) return monomialGcd(b, a);
+        var ppA = primitivePart(a);
+        var ppB = primitivePart(b);
+        if (ppA.equals(ppB)) return normalize(ppA);
+        if (ppB.terms().size() <= ppA.terms().size() && divides(ppB, ppA)) return normalize(ppB);
+        if (ppA.terms().size() <= ppB.terms().size() && divides(ppA, ppB)) return normalize(ppA);
+
+        var varsA = variables(a);
+        var varsB = variables(b);
+        for (var x : varsA) {
+            if (!varsB.contains(x)) return gcd(content(a, x), b); //a factor common to b can't contain x
+        }
+        for (var x : varsB) {
+            if (!varsA.contains(x)) return gcd(a, content(b, x));
+        }
+        var x = mainVariable(a, b, varsA);
+        var contA = content(a, x);
+        var contB = content(b, x);
+        var r0 = divideExact(a, contA);
+        var r1 = divideExact(b, contB);
+        if (degree(r0, x) < degree(r1, x)) {
+            var t = r0;
+            r0 = r1;
+            r1 = t;
+        }
+        while (true) {
+            var r = pseudoRemainder(r0, r1, x);
+            if (r.isZero()) break;
+            if (degree(r, x) == 0) {
+                r1 = one();
+                break;
+            }
+            r0 = r1;
+            r1 = primitivePart(divideExact(r, content(r, x)));
+        }
+        return normalize(multiply(gcd(contA, contB), primitivePart(divideExact(r1, content(r1, x)))));
+    }
+
+    static MVPolynomial lcm(MVPolynomial a, MVPolynomial b) {
+        if (a == null || b == null || a.isZero() || b.isZero()) return new MVPolynomial();
+        return normalize(multiply(divideExact(a, gcd(a, b)), b));
+    }
+
+    /**
+     * Content with respect to variable x: gcd of the coefficients of the powers of x
+     */
+    static MVPolynomial content(MVPolynomial p, String x) {
+        MVPolynomial g = null;
+        for (var c : coefficients(p, x).values()) {
+            g = g == null ? normalize(c) : gcd(g, c);
+            if (isConstant(g)) break;
+        }
+        return g == null ? new MVPolynomial() : g;
+    }
+
+    /**
+     * @throws ArithmeticException if b does not divide a
+     */
+    static MVPolynomial divideExact(MVPolynomial a, MVPolynomial b) {
+        var d = a.divideIm(b);
+        if (!d.remain().isZero()) throw new ArithmeticException("not divisible: (" + a + ") / (" + b + ")");
+        return d.ans();
+    }
+
+    static boolean divides(MVPolynomial divisor, MVPolynomial p) {
+        return p.divideIm(divisor).remain().isZero();
+    }
+
+    /**
+     * Fraction reduced to lowest terms: common factors cancelled, denominator normalized
+     */
+    record Fraction(MVPolynomial numerator, MVPolynomial denominator) {
+        public static Fraction of(MVPolynomial numerator, MVPolynomial denominator) {
+            if (denominator == null || denominator.isZero()) throw new ArithmeticException("zero denominator");
+            if (numerator == null || numerator.isZero()) return new Fraction(new MVPolynomial(), one());
+            var g = gcd(numerator, denominator);
+            var num = divideExact(numerator, g);
+            var den = divideExact(denominator, g);
+            double c = content(den);
+            return new Fraction(num.multiplyIm(1 / c), den.multiplyIm(1 / c));
+        }
+
+        public Fraction add(Fraction o) {
+            var g = gcd(denominator, o.denominator);
+            var f1 = divideExact(o.denominator, g);
+            var f2 = divideExact(denominator, g);
+            return of(PolynomialGcd.multiply(numerator, f1).add(PolynomialGcd.multiply(o.numerator, f2)),
+                    PolynomialGcd.multiply(denominator, f1));
+        }
+
+        public Fraction multiply(Fraction o) {
+            var g1 = gcd(numerator, o.denominator);
+            var g2 = gcd(o.numerator, denominator);
+            return of(PolynomialGcd.multiply(divideExact(numerator, g1), divideExact(o.numerator, g2)),
+                    PolynomialGcd.multiply(divideExact(denominator, g2), divideExact(o.denominator, g1)));
+        }
+
+        @Override
+        public String toString() {
+            return "(" + numerator + ") / (" + denominator + ")";
+        }
+    }
+
+    /**
+     * Bareiss' fraction-free elimination: each step divides exactly by the previous pivot,
+     * so entries stay minors of the matrix instead of growing. Substitution rules are not applied
+     * (they break exact divisibility), apply them to the result.
+     */
+    static MVPolynomial determinantBareiss(MatrixView m) {
+        if (m.nCols() != m.nRows()) throw new IllegalStateException("Not square");
+        int n = m.nRows();
+        if (n == 0) return one();
+        var a = new MVPolynomial[n][n];
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                var cell = m.cell(row, col);
+                a[row][col] = cell == null ? new MVPolynomial() : cell;
+            }
+        }
+        var prev = one();
+        double sign = 1;
+        for (int k = 0; k < n - 1; k++) {
+            if (a[k][k].isZero()) {
+                int pivot = k + 1;
+                while (pivot < n && a[pivot][k].isZero()) pivot++;
+                if (pivot == n) return new MVPolynomial();
+                var t = a[k];
+                a[k] = a[pivot];
+                a[pivot] = t;
+                sign = -sign;
+            }
+            for (int i = k + 1; i < n; i++) {
+                for (int j = k + 1; j < n; j++) {
+                    var cross = multiply(a[k][k], a[i][j]).add(a[i][k].multiplyIm(a[k][j], -1, Truncation.NONE));
+                    a[i][j] = divideExact(cross, prev);
+                }
+            }
+            prev = a[k][k];
+        }
+        return a[n - 1][n - 1].multiplyIm(sign);
+    }
+
+    private static MVPolynomial one() {
+        return new MVPolynomial().add(1);
+    }
+
+    private static MVPolynomial multiply(MVPolynomial a, MVPolynomial b) {
+        return a.multiplyIm(b, 1, Truncation.NONE);
+    }
+
+    private static boolean isConstant(MVPolynomial p) {
+        return p.terms().stream().allMatch(t -> t.degree() == 0);
+    }
+
+    private static MVPolynomial normalize(MVPolynomial p) {
+        return isConstant(p) && !p.isZero() ? one() : primitivePart(p);
+    }
+
+    /**
+     * gcd of a single term with all terms of p: minimal exponents of the shared symbols
+     */
+    private static MVPolynomial monomialGcd(MVPolynomial monomial, MVPolynomial p) {
+        var exponents = exponents(monomial.terms().iterator().next());
+        for (var t : p.terms()) {
+            var e = exponents(t);
+            exponents.replaceAll((s, k) -> Math.min(k, e.getOrDefault(s, 0)));
+        }
+        var symbols = new ArrayList<String>();
+        exponents.forEach((s, k) -> symbols.addAll(Collections.nCopies(k, s)));
+        var term = new Term();
+        term.build(symbols.toArray(new String[0]));
+        return new MVPolynomial().add(term, 1);
+    }
+
+    private static Map<String, Integer> exponents(Term t) {
+        var out = new TreeMap<String, Integer>();
+        for (var s : t.symbols()) out.merge(s, 1, Integer::sum);
+        return out;
+    }
+
+    private static Set<String> variables(MVPolynomial p) {
+        var out = new TreeSet<String>();
+        p.terms().forEach(t -> out.addAll(t.symbols()));
+        return out;
+    }
+
+    /**
+     * Shared variable of least degree: the shortest remainder sequence
+     */
+    private static String mainVariable(MVPolynomial a, MVPolynomial b, Set<String> variables) {
+        String best = null;
+        int bestDegree = Integer.MAX_VALUE;
+        for (var x : variables) {
+            int d = Math.max(degree(a, x), degree(b, x));
+            if (d < bestDegree) {
+                best = x;
+                bestDegree = d;
+            }
+        }
+        return best;
+    }
+
+    static int degree(MVPolynomial p, String x) {
+        int max = 0;
+        for (var t : p.terms()) {
+            max = Math.max(max, Collections.frequency(t.symbols(), x));
+        }
+        return max;
+    }
+
+    /**
+     * p as polynomial in x: exponent -> coefficient free of x
+     */
+    private static Map<Integer, MVPolynomial> coefficients(MVPolynomial p, String x) {
+        var out = new TreeMap<Integer, MVPolynomial>();
+        for (var t : p.terms()) {
+            var rest = new ArrayList<String>();
+            int k = 0;
+            for (var s : t.symbols()) {
+                if (s.equals(x)) k++;
+                else rest.add(s);
+            }
+            var term = new Term();
+            term.build(rest.toArray(new String[0]));
+            out.computeIfAbsent(k, e -> new MVPolynomial()).add(term, p.coefficient(t));
+        }
+        return out;
+    }
+
+    private static MVPolynomial power(String x, int k) {
+        var term = new Term();
+        term.build(Collections.nCopies(k, x).toArray(new String[0]));
+        return new MVPolynomial().add(term, 1);
+    }
+
+    /**
+     * prem(a, b) = lc(b)^(deg a - deg b + 1) * a mod b, in x.
+     * The x^dr terms of each step cancel exactly only in exact arithmetic; they are removed, so the degree drops.
+     */
+    static MVPolynomial pseudoRemainder(MVPolynomial a, MVPolynomial b, String x) {
+        if (b.isZero()) throw new ArithmeticException("pseudo-remainder by 0");
+        int db = degree(b, x);
+        var lcB = coefficients(b, x).get(db);
+        var r = a;
+        int dr;
+        while (!r.isZero() && (dr = degree(r, x)) >= db) {
+            var lcR = coefficients(r, x).get(dr);
+            r = withoutDegree(multiply(lcB, r).add(multiply(multiply(lcR, power(x, dr - db)), b).multiplyIm(-1)), x, dr);
+        }
+        return r;
+    }
+
+    /**
+     * p without its terms of degree k in x
+     */
+    private static MVPolynomial withoutDegree(MVPolynomial p, String x, int k) {
+        var out = new MVPolynomial();
+        for (var t : p.terms()) {
+            if (Collections.frequency(t.symbols(), x) != k) out.add(t, p.coefficient(t));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,241 @@
+package org.torcb.math;
+
+import java.util.*;
+
+import static org.torcb.math.PolynomialDivision.*;
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Reduced Groebner bases by Buchberger's algorithm with the coprime (first) and chain (second) criteria,
+ * pairs selected by the normal strategy (smallest lcm of leading terms first).
+ * F4-style matrix reduction is not implemented: reductions use the geobucket division of PolynomialDivision.
+ */
+public interface PolynomialGroebner {
+    /**
+     * Guards against runaway bases from floating-point residues
+     */
+    int MAX_BASIS_SIZE = 1000;
+    /**
+     * Bases kept by GroebnerBasis.of, least recently used evicted first
+     */
+    int CACHE_SIZE = 64;
+    Map<CacheKey, GroebnerBasis> CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, GroebnerBasis> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    record CacheKey(List<MVPolynomial> generators, Comparator<Term> order) {
+    }
+
+    /**
+     * Least common multiple of two terms: maximal exponent per symbol
+     */
+    static Term lcm(Term a, Term b) {
+        var x = a.symbols();
+        var y = b.symbols();
+        var out = new ArrayList<String>();
+        int i = 0, j = 0;
+        while (i < x.size() || j < y.size()) {
+            int c = i == x.size() ? 1 : j == y.size() ? -1 : x.get(i).compareTo(y.get(j));
+            if (c <= 0) out.add(x.get(i++));
+            else out.add(y.get(j++));
+            if (c == 0) j++;
+        }
+        var t = new Term();
+        t.build(out.toArray(new String[0]));
+        return t;
+    }
+
+    final class GroebnerBasis {
+        private final List<MVPolynomial> basis; //monic, sorted by leading term, greatest first
+        private final List<Term> leads;
+        private final Comparator<Term> order;
+
+        private GroebnerBasis(List<MVPolynomial> basis, Comparator<Term> order) {
+            this.order = order;
+            var sorted = new ArrayList<>(basis);
+            sorted.sort((f, g) -> order.compare(leadingTerm(g, order), leadingTerm(f, order)));
+            this.basis = List.copyOf(sorted);
+            this.leads = sorted.stream().map(g -> leadingTerm(g, order)).toList();
+        }
+
+        /**
+         * Cached per generator list and order (CACHE_SIZE bases). Computed outside the cache lock,
+         * so concurrent callers of the same key may both compute; the first stored basis wins.
+         */
+        public static GroebnerBasis of(List<MVPolynomial> generators, Comparator<Term> order) {
+            var key = new CacheKey(generators.stream().map(MVPolynomial::copy).toList(), order);
+            var cached = CACHE.get(key);
+            if (cached != null) return cached;
+            var basis = compute(key.generators(), key.order());
+            var raced = CACHE.putIfAbsent(key, basis);
+            return raced != null ? raced : basis;
+        }
+
+        /**
+         * Basis of the constraints fromTerm - toExpression of the rules
+         */
+        public static GroebnerBasis of(SubstituteTerms rules, Comparator<Term> order) {
+            var generators = new ArrayList<MVPolynomial>();
+            for (var rule : rules.list) {
+                generators.add(new MVPolynomial().add(rule.fromTerm(), 1).minus(rule.toExpression()));
+            }
+            return of(generators, order);
+        }
+
+        public static GroebnerBasis compute(List<MVPolynomial> generators, Comparator<Term> order) {
+            var g = new ArrayList<MVPolynomial>();
+            var pairs = new PriorityQueue<Pair>((p, q) -> order.compare(p.lcm, q.lcm));
+            var pending = new HashSet<Long>();
+            for (var f : generators) {
+                var r = reduce(f, g, order);
+                if (!r.isZero()) addToBasis(monic(r, order), g, pairs, pending, order);
+            }
+            while (!pairs.isEmpty()) {
+                var pair = pairs.poll();
+                pending.remove(pair.key());
+                if (chainCriterion(pair, g, pending, order)) continue;
+                var r = reduce(sPolynomial(g.get(pair.i), g.get(pair.j), pair.lcm, order), g, order);
+                if (!r.isZero()) {
+                    if (g.size() >= MAX_BASIS_SIZE) throw new IllegalStateException("basis exceeds " + MAX_BASIS_SIZE);
+                    addToBasis(monic(r, order), g, pairs, pending, order);
+                }
+            }
+            return new GroebnerBasis(reduced(g, order), order);
+        }
+
+        private record Pair(int i, int j, Term lcm) {
+            long key() {return key(i, j);}
+
+            static long key(int i, int j) {
+                return ((long) Math.min(i, j) << 32) | Math.max(i, j);
+            }
+        }
+
+        private static void addToBasis(MVPolynomial f, List<MVPolynomial> g, Queue<Pair> pairs, Set<Long> pending,
+                                       Comparator<Term> order) {
+            int k = g.size();
+            g.add(f);
+            var lk = leadingTerm(f, order);
+            for (int i = 0; i < k; i++) {
+                var li = leadingTerm(g.get(i), order);
+                var lcm = lcm(li, lk);
+                if (lcm.degree() == li.degree() + lk.degree()) continue; //coprime leading terms: reduces to 0
+                pairs.add(new Pair(i, k, lcm));
+                pending.add(Pair.key(i, k));
+            }
+        }
+
+        /**
+         * Skip (i, j) if some LT(g_k) divides lcm(i, j) and neither (i, k) nor (j, k) is still pending
+         */
+        private static boolean chainCriterion(Pair p, List<MVPolynomial> g, Set<Long> pending, Comparator<Term> order) {
+            for (int k = 0; k < g.size(); k++) {
+                if (k == p.i || k == p.j) continue;
+                if (p.lcm.divideIm(leadingTerm(g.get(k), order)) == null) continue;
+                if (!pending.contains(Pair.key(p.i, k)) && !pending.contains(Pair.key(p.j, k))) return true;
+            }
+            return false;
+        }
+
+        private static MVPolynomial sPolynomial(MVPolynomial f, MVPolynomial g, Term lcm, Comparator<Term> order) {
+            var out = new MVPolynomial();
+            shiftAdd(out, f, lcm.divideIm(leadingTerm(f, order)), 1);
+            shiftAdd(out, g, lcm.divideIm(leadingTerm(g, order)), -1);
+            return out;
+        }
+
+        /**
+         * out += scale * term * p, not subject to the context truncation
+         */
+        private static void shiftAdd(MVPolynomial out, MVPolynomial p, Term term, double scale) {
+            for (var t : p.terms()) {
+                out.add(t.multiplyIm(term), scale * p.coefficient(t));
+            }
+        }
+
+        private static MVPolynomial monic(MVPolynomial f, Comparator<Term> order) {
+            return f.multiplyIm(1 / f.coefficient(leadingTerm(f, order)));
+        }
+
+        /**
+         * Minimal basis (no leading term divisible by another), each tail reduced by the others
+         */
+        private static List<MVPolynomial> reduced(List<MVPolynomial> g, Comparator<Term> order) {
+            var minimal = new ArrayList<MVPolynomial>();
+            for (int i = 0; i < g.size(); i++) {
+                var li = leadingTerm(g.get(i), order);
+                boolean redundant = false;
+                for (int j = 0; j < g.size() && !redundant; j++) {
+                    if (i == j) continue;
+                    var lj = leadingTerm(g.get(j), order);
+                    redundant = li.divideIm(lj) != null && (!li.equals(lj) || j < i);
+                }
+                if (!redundant) minimal.add(g.get(i));
+            }
+            var out = new ArrayList<MVPolynomial>();
+            for (int i = 0; i < minimal.size(); i++) {
+                var others = new ArrayList<>(minimal);
+                others.remove(i);
+                var f = minimal.get(i);
+                var lead = leadingTerm(f, order);
+                var tail = f.copy().add(lead, -f.coefficient(lead));
+                out.add(monic(reduce(tail, others, order).add(lead, f.coefficient(lead)), order));
+            }
+            return out;
+        }
+
+        /**
+         * @return copies: the basis is shared by every user of its cache entry
+         */
+        public List<MVPolynomial> polynomials() {
+            return basis.stream().map(MVPolynomial::copy).toList();
+        }
+
+        public List<Term> leadingTerms() {return leads;}
+
+        public Comparator<Term> order() {return order;}
+
+        /**
+         * Unique normal form: complete reduction by the basis
+         */
+        public MVPolynomial normalForm(MVPolynomial p) {
+            return reduce(p, basis, order);
+        }
+
+        public Matrix normalForm(Matrix m) {
+            var out = new Matrix(m.nRows, m.nCols);
+            m.iterateNonNull((pos, row, col, cell) -> out.cells[pos] = normalForm(cell));
+            return out;
+        }
+
+        public boolean contains(MVPolynomial p) {
+            return normalForm(p).isZero();
+        }
+
+        /**
+         * Rules leadingTerm -> -tail. substituteTermsIm applies each rule once per call,
+         * use normalForm for complete reduction.
+         */
+        public SubstituteTerms toSubstituteTerms() {
+            var rules = new SubstituteTerms().acceptAll(true);
+            for (int i = 0; i < basis.size(); i++) {
+                var lead = leads.get(i);
+                var tail = basis.get(i).copy().add(lead, -1);
+                rules.add(new SubstituteTerm(lead, tail.negateIm()));
+            }
+            return rules;
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder("GroebnerBasis{");
+            for (int i = 0; i < basis.size(); i++) {
+                sb.append(i > 0 ? ", " : "").append(basis.get(i));
+            }
+            return sb.append("}").toString();
+        }
+    }
+}
@@ -0,0 +1,598 @@
+package org.torcb.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import static org.torcb.math.PolynomialOrder.*;
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Polynomials in packed off-heap memory, for intermediates too large for TreeMap entries of Terms
+ * (expanded determinants of 8x8 symbolic matrices reach tens of millions of terms).
+ * A term is one record: its exponents as 16-bit fields in lex order (the keys of PolynomialOrder.MonomialOrder.lex),
+ * then the double coefficient; records are sorted ascending by key, so add is a merge
+ * and multiply a heap merge of sorted streams. No Term objects exist during arithmetic.
+ * Memory comes from an OffHeapArena of direct buffers with an explicit lifetime.
+ * Direct ByteBuffers instead of java.lang.foreign (MemorySegment, Arena): the latter is a preview API in Java 21.
+ */
+public interface PolynomialOffHeap {
+    int DEFAULT_CHUNK_BYTES = 1 << 26;
+
+    static int align8(long bytes) {
+        if (bytes < 0 || bytes > Integer.MAX_VALUE - 7) throw new IllegalArgumentException("block too large: " + bytes);
+        return (int) ((bytes + 7) & ~7L);
+    }
+
+    /**
+     * Region of an arena chunk
+     */
+    record Block(int chunk, int offset, int bytes) {
+    }
+
+    /**
+     * Bump allocator over direct buffer chunks. Closing drops all chunks and invalidates every polynomial
+     * allocated here (IllegalStateException on use); the native memory is returned once the buffers are collected.
+     * Thread-safe; polynomials are immutable and may be read from several threads.
+     */
+    final class OffHeapArena implements AutoCloseable {
+        private final int chunkBytes;
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private Block last;
+        private long used;
+        private boolean closed;
+
+        public OffHeapArena() {
+            this(DEFAULT_CHUNK_BYTES);
+        }
+
+        public OffHeapArena(int chunkBytes) {
+            this.chunkBytes = align8(Math.max(8, chunkBytes));
+        }
+
+        synchronized Block allocate(long bytes) {
+            ensureOpen();
+            int size = align8(bytes);
+            var current = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if (current == null || current.capacity() - current.position() < size) {
+                current = ByteBuffer.allocateDirect(Math.max(chunkBytes, size)).order(ByteOrder.nativeOrder());
+                chunks.add(current);
+            }
+            last = new Block(chunks.size() - 1, current.position(), size);
+            current.position(current.position() + size);
+            used += size;
+            return last;
+        }
+
+        /**
+         * Resize in place if block is the latest allocation and its chunk has room, else move (copy) it
+         */
+        synchronized Block resize(Block block, long bytes) {
+            ensureOpen();
+            int size = align8(bytes);
+            if (block.equals(last)) {
+                var chunk = chunks.get(block.chunk());
+                if (block.offset() + size <= chunk.capacity()) {
+                    chunk.position(block.offset() + size);
+                    used += size - block.bytes();
+                    return last = new Block(block.chunk(), block.offset(), size);
+                }
+            }
+            if (size <= block.bytes()) return new Block(block.chunk(), block.offset(), size);
+            var moved = allocate(size);
+            chunks.get(moved.chunk()).put(moved.offset(), chunks.get(block.chunk()), block.offset(), block.bytes());
+            return moved;
+        }
+
+        synchronized ByteBuffer chunk(int id) {
+            ensureOpen();
+            return chunks.get(id);
+        }
+
+        /**
+         * @return bytes handed out (including space left behind by moved blocks)
+         */
+        public synchronized long bytesUsed() {
+            return used;
+        }
+
+        /**
+         * @return capacity of the chunks held, 0 once closed. Closed chunks may still occupy native memory
+         * (and count against -XX:MaxDirectMemorySize) until the garbage collector frees them.
+         */
+        public synchronized long bytesReserved() {
+            return chunks.stream().mapToLong(ByteBuffer::capacity).sum();
+        }
+
+        public synchronized boolean isOpen() {
+            return !closed;
+        }
+
+        private void ensureOpen() {
+            if (closed) throw new IllegalStateException("arena closed");
+        }
+
+        /**
+         * Drops the chunks; does not free them. Direct buffers have no explicit release outside java.lang.foreign,
+         * so their native memory is returned when the collector reclaims them, which needs no polynomial
+         * of this arena to be reachable.
+         */
+        @Override
+        public synchronized void close() {
+            closed = true;
+            chunks.clear();
+            last = null;
+        }
+    }
+
+    /**
+     * Variables of off-heap polynomials; operands of one operation must have equal layouts
+     */
+    final class Layout {
+        private final MonomialOrder lex;
+        final int words, stride;
+
+        private Layout(MonomialOrder lex) {
+            this.lex = lex;
+            words = (lex.variables().size() + FIELDS_PER_LONG - 1) / FIELDS_PER_LONG;
+            stride = (words + 1) * Long.BYTES;
+        }
+
+        public static Layout of(String... variables) {
+            return new Layout(MonomialOrder.lex(variables));
+        }
+
+        /**
+         * Layout of all symbols of the polynomials
+         */
+        public static Layout of(MVPolynomial... polynomials) {
+            return of(MonomialOrder.variables(polynomials));
+        }
+
+        public List<String> variables() {
+            return lex.variables();
+        }
+
+        long[] key(Term term) {
+            return lex.key(term);
+        }
+
+        int exponent(long[] key, int variable) {
+            return field(key[variable / FIELDS_PER_LONG], variable);
+        }
+
+        static int field(long word, int variable) {
+            int shift = (FIELDS_PER_LONG - 1 - variable % FIELDS_PER_LONG) * FIELD_BITS;
+            return (int) (word >>> shift) & FIELD_MAX;
+        }
+
+        Term term(long[] key) {
+            var symbols = new ArrayList<String>();
+            var vars = variables();
+            for (int i = 0; i < vars.size(); i++) {
+                for (int e = exponent(key, i); e > 0; e--) symbols.add(vars.get(i));
+            }
+            var t = new Term();
+            t.build(symbols.toArray(new String[0]));
+            return t;
+        }
+
+        void requireSame(Layout other) {
+            if (this != other && !variables().equals(other.variables()))
+                throw new IllegalArgumentException("layouts differ: " + variables() + " vs " + other.variables());
+        }
+
+        @Override
+        public String toString() {
+            return "Layout" + variables();
+        }
+    }
+
+    /**
+     * Immutable polynomial as sorted records in an arena; results of operations are allocated in the same arena
+     */
+    final class OffHeapPolynomial {
+        private final Layout layout;
+        private final OffHeapArena arena;
+        private final Block block;
+        private final int size;
+
+        private OffHeapPolynomial(Layout layout, OffHeapArena arena, Block block, int size) {
+            this.layout = layout;
+            this.arena = arena;
+            this.block = block;
+            this.size = size;
+        }
+
+        public static OffHeapPolynomial of(MVPolynomial p, Layout layout, OffHeapArena arena) {
+            var terms = new ArrayList<>(p.terms());
+            terms.sort(layout.lex);
+            var w = new Writer(layout, arena, terms.size());
+            for (var t : terms) {
+                w.append(layout.key(t), p.coefficient(t));
+            }
+            return w.finish();
+        }
+
+        public static OffHeapPolynomial of(MVPolynomial p, OffHeapArena arena) {
+            return of(p, Layout.of(p), arena);
+        }
+
+        public MVPolynomial toMVPolynomial() {
+            var out = new MVPolynomial();
+            var in = buffer();
+            var key = new long[layout.words];
+            for (int i = 0; i < size; i++) {
+                int pos = readKey(in, i, key);
+                out.add(layout.term(key), in.getDouble(pos));
+            }
+            return out;
+        }
+
+        public Layout layout() {return layout;}
+
+        public int size() {return size;}
+
+        public boolean isZero() {return size == 0;}
+
+        /**
+         * @return off-heap bytes of the records
+         */
+        public long bytes() {return (long) size * layout.stride;}
+
+        public double coefficient(Term term) {
+            var key = layout.key(term);
+            var in = buffer();
+            var probe = new long[layout.words];
+            int lo = 0, hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int pos = readKey(in, mid, probe);
+                int c = compare(probe, key);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return in.getDouble(pos);
+            }
+            return 0;
+        }
+
+        /**
+         * One per term plus its degree, as MVPolynomial.approxSize
+         */
+        public long approxSize() {
+            var in = buffer();
+            long out = size;
+            for (int i = 0; i < size; i++) {
+                int pos = offset(i);
+                for (int w = 0; w < layout.words; w++) {
+                    long word = in.getLong(pos + w * Long.BYTES);
+                    for (int f = 0; f < FIELDS_PER_LONG; f++) out += Layout.field(word, f);
+                }
+            }
+            return out;
+        }
+
+        public OffHeapPolynomial addIm(OffHeapPolynomial other) {
+            return addIm(other, 1);
+        }
+
+        public OffHeapPolynomial minusIm(OffHeapPolynomial other) {
+            return addIm(other, -1);
+        }
+
+        public OffHeapPolynomial addIm(OffHeapPolynomial other, double scalar) {
+            layout.requireSame(other.layout);
+            var none = new long[layout.words];
+            return merge(layout, arena, size + other.size,
+                    List.of(new Stream(this, null, none, 1), new Stream(other, null, none, scalar)));
+        }
+
+        public OffHeapPolynomial multiplyIm(double scalar) {
+            if (zero(scalar)) return new Writer(layout, arena, 0).finish();
+            return merge(layout, arena, size, List.of(new Stream(this, null, new long[layout.words], scalar)));
+        }
+
+        /**
+         * Heap merge: one sorted stream per term of the smaller operand (the larger one shifted by that term)
+         */
+        public OffHeapPolynomial multiplyIm(OffHeapPolynomial other) {
+            layout.requireSame(other.layout);
+            var small = size <= other.size ? this : other;
+            var large = small == this ? other : this;
+            requireExponents(small.maxExponents(), large.maxExponents());
+            var in = small.buffer();
+            var streams = new ArrayList<Stream>(small.size);
+            for (int i = 0; i < small.size; i++) {
+                var key = new long[layout.words];
+                int pos = small.readKey(in, i, key);
+                streams.add(new Stream(large, null, key, in.getDouble(pos)));
+            }
+            return merge(layout, arena, small.size + large.size, streams);
+        }
+
+        /**
+         * Replace one occurrence of sub in every term (as MVPolynomial.substituteTermsIm(Term, ...)).
+         * Terms divisible by sub, shifted by r - sub, stay sorted: one stream per term r of repl.
+         */
+        public OffHeapPolynomial substituteTermsIm(Term sub, MVPolynomial repl) {
+            var subKey = layout.key(sub);
+            var in = buffer();
+            var key = new long[layout.words];
+            int[] divisible = new int[size], rest = new int[size];
+            int nd = 0, nr = 0;
+            for (int i = 0; i < size; i++) {
+                readKey(in, i, key);
+                if (divides(subKey, key)) divisible[nd++] = i;
+                else rest[nr++] = i;
+            }
+            if (nd == 0) return this;
+            divisible = Arrays.copyOf(divisible, nd);
+            var streams = new ArrayList<Stream>();
+            streams.add(new Stream(this, Arrays.copyOf(rest, nr), new long[layout.words], 1));
+            var replExponents = new int[layout.variables().size()];
+            for (var r : repl.terms()) {
+                var rKey = layout.key(r);
+                var delta = new long[layout.words];
+                for (int w = 0; w < delta.length; w++) {
+                    delta[w] = rKey[w] - subKey[w]; //exact per field: the shifted terms are divisible by sub
+                }
+                for (int v = 0; v < replExponents.length; v++) {
+                    replExponents[v] = Math.max(replExponents[v], layout.exponent(rKey, v));
+                }
+                streams.add(new Stream(this, divisible, delta, repl.coefficient(r)));
+            }
+            requireExponents(maxExponents(), replExponents);
+            return merge(layout, arena, nr + (long) nd * repl.terms().size(), streams);
+        }
+
+        /**
+         * Rules in order; a rule is kept only if approxSize shrinks, unless subst.all.
+         * Rejected intermediates stay allocated until the arena is closed.
+         */
+        public OffHeapPolynomial substituteTermsIm(SubstituteTerms subst) {
+            var r = this;
+            for (var s : subst.list) {
+                var r1 = r.substituteTermsIm(s.fromTerm(), s.toExpression());
+                if (subst.all || r1.approxSize() < r.approxSize()) r = r1;
+            }
+            return r;
+        }
+
+        public double evaluate(Map<String, Double> values) {
+            var vars = layout.variables();
+            var x = new Double[vars.size()];
+            for (int v = 0; v < x.length; v++) {
+                x[v] = values.get(vars.get(v));
+            }
+            var in = buffer();
+            var key = new long[layout.words];
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                int pos = readKey(in, i, key);
+                double t = in.getDouble(pos);
+                for (int v = 0; v < x.length; v++) {
+                    int e = layout.exponent(key, v);
+                    if (e == 0) continue;
+                    if (x[v] == null) throw new IllegalArgumentException("no value for " + vars.get(v));
+                    t *= pow(x[v], e);
+                }
+                sum += t;
+            }
+            return sum;
+        }
+
+        private static double pow(double x, int e) {
+            double r = 1;
+            for (; e > 0; e >>= 1, x *= x) {
+                if ((e & 1) != 0) r *= x;
+            }
+            return r;
+        }
+
+        int[] maxExponents() {
+            var out = new int[layout.variables().size()];
+            var in = buffer();
+            var key = new long[layout.words];
+            for (int i = 0; i < size; i++) {
+                readKey(in, i, key);
+                for (int v = 0; v < out.length; v++) {
+                    out[v] = Math.max(out[v], layout.exponent(key, v));
+                }
+            }
+            return out;
+        }
+
+        private static void requireExponents(int[] a, int[] b) {
+            for (int v = 0; v < a.length; v++) {
+                if (a[v] + b[v] > FIELD_MAX) throw new ArithmeticException("exponent overflow");
+            }
+        }
+
+        private boolean divides(long[] divisor, long[] key) {
+            for (int v = 0, n = layout.variables().size(); v < n; v++) {
+                if (layout.exponent(divisor, v) > layout.exponent(key, v)) return false;
+            }
+            return true;
+        }
+
+        private ByteBuffer buffer() {
+            return arena.chunk(block.chunk());
+        }
+
+        private int offset(int record) {
+            return block.offset() + record * layout.stride;
+        }
+
+        /**
+         * @return position of the coefficient
+         */
+        private int readKey(ByteBuffer in, int record, long[] key) {
+            int pos = offset(record);
+            for (int w = 0; w < key.length; w++, pos += Long.BYTES) {
+                key[w] = in.getLong(pos);
+            }
+            return pos;
+        }
+
+        static int compare(long[] a, long[] b) {
+            for (int w = 0; w < a.length; w++) {
+                int c = Long.compareUnsigned(a[w], b[w]);
+                if (c != 0) return c;
+            }
+            return 0;
+        }
+
+        /**
+         * Records src[indices[p]] (all records if indices is null), key + delta, coefficient * factor; ascending
+         */
+        private record Stream(OffHeapPolynomial src, int[] indices, long[] delta, double factor) {
+            int length() {
+                return indices == null ? src.size : indices.length;
+            }
+
+            int record(int p) {
+                return indices == null ? p : indices[p];
+            }
+        }
+
+        /**
+         * k-way merge over a binary heap of stream heads; equal keys are combined by the writer
+         */
+        private static OffHeapPolynomial merge(Layout layout, OffHeapArena arena, long expected, List<Stream> streams) {
+            int words = layout.words;
+            int k = streams.size();
+            var buffers = new ByteBuffer[k];
+            var heads = new long[k * words];
+            var pos = new int[k];
+            var heap = new int[k];
+            int n = 0;
+            for (int s = 0; s < k; s++) {
+                var st = streams.get(s);
+                if (st.length() == 0 || zero(st.factor())) continue;
+                buffers[s] = st.src().buffer();
+                loadHead(st, buffers[s], 0, heads, s, words);
+                heap[n] = s;
+                siftUp(heap, n++, heads, words);
+            }
+            var w = new Writer(layout, arena, (int) Math.min(expected, Integer.MAX_VALUE / layout.stride));
+            var key = new long[words];
+            while (n > 0) {
+                int s = heap[0];
+                var st = streams.get(s);
+                System.arraycopy(heads, s * words, key, 0, words);
+                int coefficientPos = st.src().offset(st.record(pos[s])) + words * Long.BYTES;
+                w.append(key, buffers[s].getDouble(coefficientPos) * st.factor());
+                if (++pos[s] < st.length()) {
+                    loadHead(st, buffers[s], pos[s], heads, s, words);
+                } else {
+                    heap[0] = heap[--n];
+                }
+                siftDown(heap, n, heads, words);
+            }
+            return w.finish();
+        }
+
+        private static void loadHead(Stream st, ByteBuffer in, int p, long[] heads, int s, int words) {
+            int at = st.src().offset(st.record(p));
+            for (int i = 0; i < words; i++) {
+                heads[s * words + i] = in.getLong(at + i * Long.BYTES) + st.delta()[i];
+            }
+        }
+
+        private static boolean less(long[] heads, int a, int b, int words) {
+            for (int i = 0; i < words; i++) {
+                int c = Long.compareUnsigned(heads[a * words + i], heads[b * words + i]);
+                if (c != 0) return c < 0;
+            }
+            return a < b; //stable: earlier stream first
+        }
+
+        private static void siftUp(int[] heap, int i, long[] heads, int words) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(heads, heap[i], heap[parent], words)) break;
+                int t = heap[i];
+                heap[i] = heap[parent];
+                heap[parent] = t;
+                i = parent;
+            }
+        }
+
+        private static void siftDown(int[] heap, int n, long[] heads, int words) {
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, min = i;
+                if (l < n && less(heads, heap[l], heap[min], words)) min = l;
+                if (r < n && less(heads, heap[r], heap[min], words)) min = r;
+                if (min == i) return;
+                int t = heap[i];
+                heap[i] = heap[min];
+                heap[min] = t;
+                i = min;
+            }
+        }
+
+        /**
+         * Appends records with non-decreasing keys into a growing arena block; equal keys are summed,
+         * cancelled terms dropped, the block trimmed on finish
+         */
+        private static final class Writer {
+            private final Layout layout;
+            private final OffHeapArena arena;
+            private final long[] lastKey;
+            private Block block;
+            private ByteBuffer out;
+            private int n, capacity;
+
+            Writer(Layout layout, OffHeapArena arena, int expected) {
+                this.layout = layout;
+                this.arena = arena;
+                lastKey = new long[layout.words];
+                capacity = Math.max(1, expected);
+                block = arena.allocate((long) capacity * layout.stride);
+                out = arena.chunk(block.chunk());
+            }
+
+            private int coefficientPos(int record) {
+                return block.offset() + record * layout.stride + layout.words * Long.BYTES;
+            }
+
+            void append(long[] key, double value) {
+                if (n > 0 && Arrays.equals(key, lastKey)) {
+                    int at = coefficientPos(n - 1);
+                    out.putDouble(at, out.getDouble(at) + value);
+                    return;
+                }
+                if (n > 0 && zero(out.getDouble(coefficientPos(n - 1)))) n--;
+                if (zero(value)) return;
+                if (n == capacity) grow();
+                int at = block.offset() + n * layout.stride;
+                for (int w = 0; w < key.length; w++, at += Long.BYTES) {
+                    out.putLong(at, key[w]);
+                }
+                out.putDouble(at, value);
+                System.arraycopy(key, 0, lastKey, 0, key.length);
+                n++;
+            }
+
+            private void grow() {
+                long max = Integer.MAX_VALUE / layout.stride;
+                if (capacity >= max) throw new IllegalStateException("polynomial too large for one block");
+                capacity = (int) Math.min(max, 2L * capacity);
+                block = arena.resize(block, (long) capacity * layout.stride);
+                out = arena.chunk(block.chunk());
+            }
+
+            OffHeapPolynomial finish() {
+                if (n > 0 && zero(out.getDouble(coefficientPos(n - 1)))) n--;
+                block = arena.resize(block, (long) n * layout.stride);
+                return new OffHeapPolynomial(layout, arena, block, n);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "OffHeapPolynomial{" + size + " terms, " + bytes() + " bytes, " + layout + "}";
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.torcb.math;
+
+import java.util.*;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface PolynomialOrder {
+    /**
+     * Bits per packed exponent or degree field
+     */
+    int FIELD_BITS = 16;
+    int FIELD_MAX = (1 << FIELD_BITS) - 1;
+    int FIELDS_PER_LONG = Long.SIZE / FIELD_BITS;
+
+    enum Kind {LEX, DEGLEX, DEGREVLEX}
+
+    /**
+     * Packed key of a term under an order, cached on the term
+     */
+    record OrderKey(MonomialOrder order, long[] key) {
+    }
+
+    /**
+     * Monomial order over declared variables (greater compares greater, leading term = maximum).
+     * A term is mapped once to a packed key of 16-bit fields (block degree, then exponents),
+     * after which comparing is a few unsigned long comparisons.
+     * A block order compares its blocks in turn, e.g. an elimination order block(lex(t), degrevlex(x, y)).
+     */
+    final class MonomialOrder implements Comparator<Term> {
+        /**
+         * The MVPolynomial map order: degree, then larger symbol names first; needs no declared variables
+         */
+        public static final MonomialOrder DEFAULT = new MonomialOrder("default", List.of(), new Kind[0], new int[0]);
+
+        private final String name;
+        private final List<String> variables; //decreasing priority
+        private final Map<String, Integer> index = new HashMap<>();
+        private final Kind[] kinds;
+        private final int[] blockStarts;
+        private final int fields;
+
+        private MonomialOrder(String name, List<String> variables, Kind[] kinds, int[] blockStarts) {
+            this.name = name;
+            this.variables = List.copyOf(variables);
+            for (int i = 0; i < variables.size(); i++) {
+                if (index.put(variables.get(i), i) != null)
+                    throw new IllegalArgumentException("duplicate variable " + variables.get(i));
+            }
+            this.kinds = kinds;
+            this.blockStarts = blockStarts;
+            int f = variables.size();
+            for (var k : kinds) if (k != Kind.LEX) f++;
+            this.fields = f;
+        }
+
+        public static MonomialOrder of(Kind kind, String... variables) {
+            return new MonomialOrder(kind.name().toLowerCase(), List.of(variables), new Kind[]{kind}, new int[]{0});
+        }
+
+        public static MonomialOrder lex(String... variables) {
+            return of(Kind.LEX, variables);
+        }
+
+        public static MonomialOrder deglex(String... variables) {
+            return of(Kind.DEGLEX, variables);
+        }
+
+        public static MonomialOrder degrevlex(String... variables) {
+            return of(Kind.DEGREVLEX, variables);
+        }
+
+        /**
+         * Blocks compared in turn, each by its own order
+         */
+        public static MonomialOrder block(MonomialOrder... blocks) {
+            var vars = new ArrayList<String>();
+            var kinds = new ArrayList<Kind>();
+            var starts = new ArrayList<Integer>();
+            var names = new StringJoiner(", ", "block(", ")");
+            for (var b : blocks) {
+                if (b == DEFAULT) throw new IllegalArgumentException("blocks need declared variables");
+                for (int i = 0; i < b.kinds.length; i++) {
+                    kinds.add(b.kinds[i]);
+                    starts.add(vars.size() + b.blockStarts[i]);
+                }
+                vars.addAll(b.variables);
+                names.add(b.toString());
+            }
+            return new MonomialOrder(names.toString(), vars, kinds.toArray(new Kind[0]),
+                    starts.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        /**
+         * Symbols of the polynomials, larger names first as in the DEFAULT order
+         */
+        public static String[] variables(MVPolynomial... polynomials) {
+            var set = new TreeSet<String>(Comparator.reverseOrder());
+            for (var p : polynomials) {
+                for (var t : p.terms()) set.addAll(t.symbols());
+            }
+            return set.toArray(new String[0]);
+        }
+
+        public List<String> variables() {return variables;}
+
+        public long[] key(Term term) {
+            var cached = term.orderKey;
+            if (cached != null && cached.order() == this) return cached.key();
+            var key = computeKey(term);
+            term.orderKey = new OrderKey(this, key);
+            return key;
+        }
+
+        private long[] computeKey(Term term) {
+            var exponents = new int[variables.size()];
+            for (var s : term.symbols()) {
+                var i = index.get(s);
+                if (i == null) throw new IllegalArgumentException("'" + s + "' not a variable of " + this);
+                if (++exponents[i] > FIELD_MAX) throw new IllegalArgumentException("exponent too large: " + term);
+            }
+            var packed = new long[(fields + FIELDS_PER_LONG - 1) / FIELDS_PER_LONG];
+            int f = 0;
+            for (int b = 0; b < kinds.length; b++) {
+                int from = blockStarts[b];
+                int to = b + 1 < kinds.length ? blockStarts[b + 1] : variables.size();
+                if (kinds[b] != Kind.LEX) {
+                    int degree = 0;
+                    for (int i = from; i < to; i++) degree += exponents[i];
+                    if (degree > FIELD_MAX) throw new IllegalArgumentException("degree too large: " + term);
+                    put(packed, f++, degree);
+                }
+                if (kinds[b] == Kind.DEGREVLEX) { //smaller exponent of the last variable is greater
+                    for (int i = to - 1; i >= from; i--) put(packed, f++, FIELD_MAX - exponents[i]);
+                } else {
+                    for (int i = from; i < to; i++) put(packed, f++, exponents[i]);
+                }
+            }
+            return packed;
+        }
+
+        private static void put(long[] packed, int field, int value) {
+            int shift = (FIELDS_PER_LONG - 1 - field % FIELDS_PER_LONG) * FIELD_BITS;
+            packed[field / FIELDS_PER_LONG] |= (long) value << shift;
+        }
+
+        @Override
+        public int compare(Term a, Term b) {
+            if (this == DEFAULT) return b.compareTo(a);
+            var x = key(a);
+            var y = key(b);
+            for (int i = 0; i < x.length; i++) {
+                int c = Long.compareUnsigned(x[i], y[i]);
+                if (c != 0) return c;
+            }
+            return 0;
+        }
+
+        /**
+         * Leading (greatest) term
+         */
+        public Term leadingTerm(MVPolynomial p) {
+            Term max = null;
+            for (var t : p.terms()) {
+                if (max == null || compare(t, max) > 0) max = t;
+            }
+            return max;
+        }
+
+        /**
+         * Terms greatest first
+         */
+        public List<Term> sorted(MVPolynomial p) {
+            var terms = new ArrayList<>(p.terms());
+            terms.sort(reversed());
+            return terms;
+        }
+
+        @Override
+        public String toString() {
+            return variables.isEmpty() || name.startsWith("block") ? name : name + variables;
+        }
+
+        /**
+         * Equal orders are built from equal kinds, variables and blocks, e.g. two calls of lex("x", "y")
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            return o instanceof MonomialOrder that && name.equals(that.name) && variables.equals(that.variables)
+                   && Arrays.equals(kinds, that.kinds) && Arrays.equals(blockStarts, that.blockStarts);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * name.hashCode() + variables.hashCode()) + Arrays.hashCode(kinds);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package org.torcb.math;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+import static org.torcb.math.SymbolMath.*;
+
+public interface PolynomialPersistent {
+
+    /**
+     * Immutable polynomial on a hash array mapped trie keyed by Term.fingerprint().
+     * Updates copy only the path to the changed entry (O(log n)), the rest of the trie is shared.
+     * Instances are hash-consed: equal content (exact coefficients) gives the same instance,
+     * so equals is a pointer comparison. Safe to share between threads.
+     */
+    final class PersistentPolynomial {
+        public static final PersistentPolynomial ZERO = INTERNER.intern(new PersistentPolynomial(null, 0, 0));
+
+        private final Node root; //null <=> 0
+        private final int size;
+        private final long fingerprint;
+
+        private PersistentPolynomial(Node root, int size, long fingerprint) {
+            this.root = root;
+            this.size = size;
+            this.fingerprint = fingerprint;
+        }
+
+        public static PersistentPolynomial of(MVPolynomial p) {
+            var out = new Transient(ZERO);
+            if (p != null) p.terms().forEach(t -> out.add(t, p.coefficient(t)));
+            return out.build();
+        }
+
+        public static PersistentPolynomial parse(String expression) {
+            return of(MVPolynomial.parse(expression));
+        }
+
+        public static PersistentPolynomial constant(double scalar) {
+            return ZERO.add(new Term(), scalar);
+        }
+
+        public int size() {return size;}
+
+        public boolean isZero() {return this == ZERO;}
+
+        /**
+         * Same as MVPolynomial.fingerprint() of equal content
+         */
+        public long fingerprint() {return fingerprint;}
+
+        /**
+         * @return coefficient of term, 0 if absent
+         */
+        public double coefficient(Term term) {
+            var e = root == null ? null : root.get(term, term.fingerprint(), 0);
+            return e == null ? 0 : e.value;
+        }
+
+        public void forEach(BiConsumer<Term, Double> action) {
+            if (root != null) root.forEach(action);
+        }
+
+        public PersistentPolynomial add(Term term, double scalar) {
+            if (zero(scalar) || term == null) return this;
+            return new Transient(this).add(term, scalar).build();
+        }
+
+        /**
+         * Adds the smaller polynomial into the larger: O(min size * log(max size))
+         */
+        public PersistentPolynomial add(PersistentPolynomial other) {
+            if (other.size > size) return other.add(this);
+            var out = new Transient(this);
+            other.forEach(out::add);
+            return out.build();
+        }
+
+        public PersistentPolynomial minus(PersistentPolynomial other) {
+            var out = new Transient(this);
+            other.forEach((t, v) -> out.add(t, -v));
+            return out.build();
+        }
+
+        public PersistentPolynomial multiply(double scalar) {
+            if (zero(scalar)) return ZERO;
+            var out = new Transient(ZERO);
+            forEach((t, v) -> out.add(t, v * scalar));
+            return out.build();
+        }
+
+        public PersistentPolynomial negate() {
+            return multiply(-1);
+        }
+
+        public PersistentPolynomial multiply(PersistentPolynomial other) {
+            var out = new Transient(ZERO);
+            forEach((t1, v1) -> other.forEach((t2, v2) -> out.add(t1.multiplyIm(t2), v1 * v2)));
+            return out.build();
+        }
+
+        public PersistentPolynomial substituteTerms(SubstituteTerms subst) {
+            return of(toMVPolynomial().substituteTermsIm(subst));
+        }
+
+        public MVPolynomial toMVPolynomial() {
+            var p = new MVPolynomial();
+            forEach(p::add);
+            return p;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return toMVPolynomial().toString();
+        }
+
+        private boolean sameContent(PersistentPolynomial o) {
+            if (this == o) return true;
+            if (size != o.size || fingerprint != o.fingerprint) return false;
+            boolean[] same = {true};
+            forEach((t, v) -> same[0] &= o.coefficient(t) == v);
+            return same[0];
+        }
+    }
+
+    /**
+     * Accumulates changes on a persistent root, single-threaded
+     */
+    final class Transient {
+        private Node root;
+        private int size;
+        private long fingerprint;
+
+        Transient(PersistentPolynomial from) {
+            root = from.root;
+            size = from.size;
+            fingerprint = from.fingerprint;
+        }
+
+        Transient add(Term term, double scalar) {
+            long hash = term.fingerprint();
+            var old = root == null ? null : root.get(term, hash, 0);
+            double value = old == null ? scalar : old.value + scalar;
+            if (old != null) {
+                fingerprint -= MVPolynomial.entryFingerprint(old.term, old.value);
+                size--;
+            }
+            if (zero(value)) {
+                if (old != null) root = root.remove(term, hash, 0);
+            } else {
+                var e = new Entry(old == null ? term : old.term, value + 0.0, hash);
+                root = root == null ? BitmapNode.EMPTY.put(e, 0) : root.put(e, 0);
+                fingerprint += MVPolynomial.entryFingerprint(e.term, e.value);
+                size++;
+            }
+            return this;
+        }
+
+        PersistentPolynomial build() {
+            return INTERNER.intern(new PersistentPolynomial(root, size, fingerprint));
+        }
+    }
+
+    record Entry(Term term, double value, long hash) {
+    }
+
+    abstract sealed class Node permits BitmapNode, CollisionNode {
+        abstract Entry get(Term term, long hash, int shift);
+
+        abstract Node put(Entry e, int shift);
+
+        /**
+         * @return node without term, null if empty
+         */
+        abstract Node remove(Term term, long hash, int shift);
+
+        abstract void forEach(BiConsumer<Term, Double> action);
+    }
+
+    /**
+     * 32-way branch on 5 hash bits per level, slots hold an Entry or a child Node
+     */
+    final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        private final int bitmap;
+        private final Object[] slots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private static int bit(long hash, int shift) {
+            return 1 << (int) ((hash >>> shift) & 31);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Entry get(Term term, long hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            var slot = slots[index(bit)];
+            if (slot instanceof Node child) return child.get(term, hash, shift + 5);
+            var e = (Entry) slot;
+            return e.hash == hash && e.term.equals(term) ? e : null;
+        }
+
+        @Override
+        Node put(Entry e, int shift) {
+            int bit = bit(e.hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                var out = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, out, 0, idx);
+                out[idx] = e;
+                System.arraycopy(slots, idx, out, idx + 1, slots.length - idx);
+                return new BitmapNode(bitmap | bit, out);
+            }
+            var slot = slots[idx];
+            Object replaced;
+            if (slot instanceof Node child) {
+                replaced = child.put(e, shift + 5);
+            } else {
+                var old = (Entry) slot;
+                if (old.hash == e.hash && old.term.equals(e.term)) {
+                    replaced = e;
+                } else if (old.hash == e.hash) {
+                    replaced = new CollisionNode(e.hash, new Entry[]{old, e});
+                } else {
+                    replaced = EMPTY.put(old, shift + 5).put(e, shift + 5);
+                }
+            }
+            var out = slots.clone();
+            out[idx] = replaced;
+            return new BitmapNode(bitmap, out);
+        }
+
+        @Override
+        Node remove(Term term, long hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int idx = index(bit);
+            var slot = slots[idx];
+            Object replaced = null;
+            if (slot instanceof Node child) {
+                var c = child.remove(term, hash, shift + 5);
+                if (c == child) return this;
+                replaced = c instanceof BitmapNode b && b.slots.length == 1 && b.slots[0] instanceof Entry single
+                        ? single : c; //pull a lone entry up
+            } else if (!((Entry) slot).term.equals(term)) {
+                return this;
+            }
+            if (replaced != null) {
+                var out = slots.clone();
+                out[idx] = replaced;
+                return new BitmapNode(bitmap, out);
+            }
+            if (slots.length == 1) return null;
+            var out = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, out, 0, idx);
+            System.arraycopy(slots, idx + 1, out, idx, out.length - idx);
+            return new BitmapNode(bitmap & ~bit, out);
+        }
+
+        @Override
+        void forEach(BiConsumer<Term, Double> action) {
+            for (var slot : slots) {
+                if (slot instanceof Node child) child.forEach(action);
+                else action.accept(((Entry) slot).term, ((Entry) slot).value);
+            }
+        }
+    }
+
+    /**
+     * Terms with equal 64-bit fingerprints
+     */
+    final class CollisionNode extends Node {
+        private final long hash;
+        private final Entry[] entries;
+
+        private CollisionNode(long hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        private int find(Term term) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].term.equals(term)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Entry get(Term term, long hash, int shift) {
+            int i = hash == this.hash ? find(term) : -1;
+            return i < 0 ? null : entries[i];
+        }
+
+        @Override
+        Node put(Entry e, int shift) {
+            int i = find(e.term);
+            Entry[] out;
+            if (i < 0) {
+                out = Arrays.copyOf(entries, entries.length + 1);
+                out[entries.length] = e;
+            } else {
+                out = entries.clone();
+                out[i] = e;
+            }
+            return new CollisionNode(hash, out);
+        }
+
+        @Override
+        Node remove(Term term, long hash, int shift) {
+            int i = hash == this.hash ? find(term) : -1;
+            if (i < 0) return this;
+            if (entries.length == 1) return null;
+            var out = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, out, 0, i);
+            System.arraycopy(entries, i + 1, out, i, out.length - i);
+            return new CollisionNode(hash, out);
+        }
+
+        @Override
+        void forEach(BiConsumer<Term, Double> action) {
+            for (var e : entries) action.accept(e.term, e.value);
+        }
+    }
+
+    Interner<PersistentPolynomial> INTERNER = new Interner<>(PersistentPolynomial::sameContent);
+
+    /**
+     * Weak hash-consing table: canonical instances stay alive only while referenced elsewhere.
+     * Values must be immutable with hashCode consistent with sameContent.
+     */
+    final class Interner<T> {
+        private final Map<WeakKey<T>, WeakKey<T>> table = new ConcurrentHashMap<>();
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+        private final BiPredicate<T, T> sameContent;
+
+        public Interner(BiPredicate<T, T> sameContent) {
+            this.sameContent = sameContent;
+        }
+
+        public T intern(T value) {
+            expunge();
+            var key = new WeakKey<>(value, queue, sameContent);
+            while (true) {
+                var existing = table.putIfAbsent(key, key);
+                if (existing == null) return value;
+                var canonical = existing.get();
+                if (canonical != null) return canonical;
+                table.remove(existing, existing); //cleared meanwhile, retry
+            }
+        }
+
+        public int size() {
+            expunge();
+            return table.size();
+        }
+
+        private void expunge() {
+            for (Object ref; (ref = queue.poll()) != null; ) {
+                table.remove(ref, ref);
+            }
+        }
+    }
+
+    final class WeakKey<T> extends WeakReference<T> {
+        private final int hash;
+        private final BiPredicate<T, T> sameContent;
+
+        WeakKey(T value, ReferenceQueue<T> queue, BiPredicate<T, T> sameContent) {
+            super(value, queue);
+            this.hash = value.hashCode();
+            this.sameContent = sameContent;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WeakKey<?> key) || hash != key.hash) return false;
+            var a = get();
+            var b = key.get();
+            @SuppressWarnings("unchecked") var other = (T) b;
+            return a != null && b != null && sameContent.test(a, other);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
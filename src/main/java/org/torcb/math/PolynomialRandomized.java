@@ -0,0 +1,345 @@
+package org.torcb.math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Probabilistic zero and identity tests (Schwartz-Zippel): evaluate at random points modulo the prime 2^61 - 1.
+ * A nonzero polynomial of total degree d vanishes at a uniform random point with probability at most d / p.
+ * Substitution rules of unit sphere type (e.g. cos cos -> 1 - sin sin, i i -> 1 - j j - k k)
+ * are respected by sampling points on the sphere through its rational stereographic parametrization,
+ * which at most doubles the degree. Other rules are applied symbolically (substituteTermsIm) before evaluation;
+ * occurrences they leave behind are evaluated off the variety, which may report nonzero for a true identity.
+ */
+public interface PolynomialRandomized {
+    long P = (1L << 61) - 1;
+    /**
+     * Rounds of a test run in parallel from this count, cells of a matrix from this size
+     */
+    int PARALLEL_MIN = 64;
+    static long mul(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        long r = (lo & P) + ((lo >>> 61) | (hi << 3));
+        r = (r & P) + (r >>> 61);
+        return r >= P ? r - P : r;
+    }
+
+    static long add(long a, long b) {
+        long r = a + b;
+        return r >= P ? r - P : r;
+    }
+
+    static long sub(long a, long b) {
+        long r = a - b;
+        return r < 0 ? r + P : r;
+    }
+
+    static long pow(long a, long e) {
+        long r = 1;
+        for (; e > 0; e >>= 1, a = mul(a, a)) {
+            if ((e & 1) != 0) r = mul(r, a);
+        }
+        return r;
+    }
+
+    static long inverse(long a) {
+        if (a == 0) throw new ArithmeticException("inverse of 0");
+        return pow(a, P - 2);
+    }
+
+    /**
+     * Residue of coefficient x: SymbolMath.rational(x) if found,
+     * so 1/3 computed in floating point maps to 1/3 mod p; otherwise the exact binary value.
+     */
+    static long residue(double x) {
+        if (Double.isNaN(x) || Double.isInfinite(x)) throw new ArithmeticException("not finite: " + x);
+        var q = rational(x);
+        if (q != null) return mul(Math.floorMod(q[0], P), inverse(q[1]));
+        var exact = new BigDecimal(x);
+        var prime = BigInteger.valueOf(P);
+        long num = exact.unscaledValue().mod(prime).longValue();
+        long den = BigInteger.TEN.modPow(BigInteger.valueOf(Math.abs(exact.scale())), prime).longValue();
+        return exact.scale() >= 0 ? mul(num, inverse(den)) : mul(num, den);
+    }
+
+    /**
+     * Variety sum x_i^2 = 1 over the given symbols
+     */
+    record Sphere(List<String> symbols) {
+        /**
+         * Stereographic parametrization: x_i = 2 u_i / (1 + |u|^2), x_n = (|u|^2 - 1) / (1 + |u|^2)
+         */
+        void sample(SplittableRandom random, Map<String, Long> values) {
+            int n = symbols.size();
+            long[] u = new long[n - 1];
+            long s, den;
+            do {
+                s = 0;
+                for (int i = 0; i < u.length; i++) {
+                    u[i] = random.nextLong(P);
+                    s = add(s, mul(u[i], u[i]));
+                }
+                den = add(1, s);
+            } while (den == 0);
+            long inv = inverse(den);
+            for (int i = 0; i < u.length; i++) {
+                values.put(symbols.get(i), mul(mul(2, u[i]), inv));
+            }
+            values.put(symbols.get(n - 1), mul(sub(s, 1), inv));
+        }
+
+        /**
+         * @return sphere for a rule v v -> 1 - w1 w1 - w2 w2 ..., null for other rules
+         */
+        static Sphere of(SubstituteTerm rule) {
+            var from = rule.fromTerm().symbols();
+            if (from.size() != 2 || !from.get(0).equals(from.get(1))) return null;
+            var symbols = new ArrayList<String>();
+            symbols.add(from.get(0));
+            boolean one = false;
+            for (var t : rule.toExpression().terms()) {
+                double c = rule.toExpression().coefficient(t);
+                var w = t.symbols();
+                if (w.isEmpty() && zero(c - 1)) {
+                    one = true;
+                } else if (w.size() == 2 && w.get(0).equals(w.get(1)) && zero(c + 1) && !symbols.contains(w.get(0))) {
+                    symbols.add(w.get(0));
+                } else {
+                    return null;
+                }
+            }
+            return one && symbols.size() > 1 ? new Sphere(List.copyOf(symbols)) : null;
+        }
+    }
+
+    /**
+     * @param errorBound upper bound on the probability of reporting zero for a nonzero expression
+     * @param seed       seeds the points of all rounds, equal seeds repeat a test
+     */
+    record Config(double errorBound, SubstituteTerms rules, long seed) {
+        public static Config defaults() {
+            return new Config(1e-12, SymbolMathContext.current().substituteTerms(), ThreadLocalRandom.current().nextLong());
+        }
+
+        public Config withRules(SubstituteTerms rules) {
+            return new Config(errorBound, rules, seed);
+        }
+
+        public Config withSeed(long seed) {
+            return new Config(errorBound, rules, seed);
+        }
+
+        public List<Sphere> spheres() {
+            var out = new ArrayList<Sphere>();
+            var used = new HashSet<String>();
+            for (var rule : rules.list) {
+                var sphere = Sphere.of(rule);
+                if (sphere != null && sphere.symbols().stream().noneMatch(used::contains)) {
+                    used.addAll(sphere.symbols());
+                    out.add(sphere);
+                }
+            }
+            return out;
+        }
+
+        /**
+         * @return rules not covered by sphere sampling
+         */
+        public SubstituteTerms symbolicRules() {
+            var spheres = spheres();
+            var out = new SubstituteTerms().acceptAll(rules.all);
+            for (var rule : rules.list) {
+                var sphere = Sphere.of(rule);
+                if (sphere == null || !spheres.contains(sphere)) out.add(rule);
+            }
+            return out;
+        }
+
+        /**
+         * Rounds r with (max(2, degree) * 2 / p)^r <= errorBound
+         */
+        public int rounds(int degree) {
+            double perRound = Math.min(0.5, 2.0 * Math.max(2, degree) / P);
+            return Math.max(1, (int) Math.ceil(Math.log(errorBound) / Math.log(perRound)));
+        }
+    }
+
+    /**
+     * Random point: symbols of spheres sampled on their sphere, others pseudo-random from the round seed
+     */
+    final class Point {
+        private final long seed;
+        private final Map<String, Long> values = new ConcurrentHashMap<>();
+
+        Point(long seed, List<Sphere> spheres) {
+            this.seed = seed;
+            var random = new SplittableRandom(seed);
+            for (var sphere : spheres) {
+                sphere.sample(random, values);
+            }
+        }
+
+        public long value(String symbol) {
+            return values.computeIfAbsent(symbol, s -> Long.remainderUnsigned(mix64(seed ^ new Term(s).fingerprint()), P));
+        }
+
+        public long eval(Term term) {
+            long r = 1;
+            for (var s : term.symbols()) {
+                r = mul(r, value(s));
+            }
+            return r;
+        }
+
+        public long eval(MVPolynomial p) {
+            if (p == null) return 0;
+            long r = 0;
+            for (var t : p.terms()) {
+                r = add(r, mul(residue(p.coefficient(t)), eval(t)));
+            }
+            return r;
+        }
+
+        public ModMatrix eval(MatrixView m) {
+            var values = new long[m.nRows() * m.nCols()];
+            IntFunction<long[]> row = r -> {
+                var out = new long[m.nCols()];
+                for (int c = 0; c < out.length; c++) out[c] = eval(m.cell(r, c));
+                return out;
+            };
+            var rows = values.length >= PARALLEL_MIN
+                       ? SymbolMathContext.current().map(m.nRows(), row)
+                       : IntStream.range(0, m.nRows()).mapToObj(row).toList();
+            for (int r = 0; r < rows.size(); r++) {
+                System.arraycopy(rows.get(r), 0, values, r * m.nCols(), m.nCols());
+            }
+            return new ModMatrix(m.nRows(), m.nCols(), values);
+        }
+    }
+
+    /**
+     * Matrix of residues mod P, row-major
+     */
+    record ModMatrix(int nRows, int nCols, long[] values) {
+        public static ModMatrix identity(int n) {
+            var values = new long[n * n];
+            for (int i = 0; i < n; i++) values[i * n + i] = 1;
+            return new ModMatrix(n, n, values);
+        }
+
+        public long get(int row, int col) {
+            return values[row * nCols + col];
+        }
+
+        public ModMatrix multiply(ModMatrix right) {
+            if (nCols != right.nRows) throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            var out = new long[nRows * right.nCols];
+            for (int row = 0; row < nRows; row++) {
+                for (int i = 0; i < nCols; i++) {
+                    long a = get(row, i);
+                    if (a == 0) continue;
+                    for (int col = 0; col < right.nCols; col++) {
+                        int pos = row * right.nCols + col;
+                        out[pos] = add(out[pos], mul(a, right.get(i, col)));
+                    }
+                }
+            }
+            return new ModMatrix(nRows, right.nCols, out);
+        }
+
+        public ModMatrix transpose() {
+            var out = new long[values.length];
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < nCols; col++) {
+                    out[col * nRows + row] = get(row, col);
+                }
+            }
+            return new ModMatrix(nCols, nRows, out);
+        }
+
+        public ModMatrix minus(ModMatrix other) {
+            if (nRows != other.nRows || nCols != other.nCols) throw new IllegalArgumentException("different sizes");
+            var out = new long[values.length];
+            for (int pos = 0; pos < out.length; pos++) {
+                out[pos] = sub(values[pos], other.values[pos]);
+            }
+            return new ModMatrix(nRows, nCols, out);
+        }
+
+        public boolean isZero() {
+            for (long v : values) {
+                if (v != 0) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Core test: isZeroAt must evaluate an expression of total degree <= degree at the point.
+     * Only sphere rules are honoured here, other rules throw IllegalArgumentException.
+     *
+     * @return false if the expression is certainly nonzero, true if zero with error below config.errorBound
+     */
+    static boolean holdsProbably(int degree, Config config, Predicate<Point> isZeroAt) {
+        if (!config.symbolicRules().list.isEmpty()) {
+            throw new IllegalArgumentException("rules not sampled as varieties: " + config.symbolicRules());
+        }
+        var spheres = config.spheres();
+        int rounds = config.rounds(degree);
+        IntPredicate zeroAt = round -> isZeroAt.test(new Point(mix64(config.seed() + round), spheres));
+        if (rounds < PARALLEL_MIN) return IntStream.range(0, rounds).allMatch(zeroAt);
+        if (!zeroAt.test(0)) return false; //a nonzero expression is almost always caught in the first round
+        return SymbolMathContext.current().map(rounds - 1, i -> zeroAt.test(i + 1)).stream().allMatch(z -> z);
+    }
+
+    static boolean isZeroProbably(MVPolynomial p, Config config) {
+        if (p == null) return true;
+        var reduced = p.substituteTermsIm(config.symbolicRules());
+        return holdsProbably(degree(reduced), config.withRules(sphereRules(config)), pt -> pt.eval(reduced) == 0);
+    }
+
+    static boolean equalsProbably(MVPolynomial a, MVPolynomial b, Config config) {
+        var diff = new MVPolynomial().add(a).minus(b);
+        return isZeroProbably(diff, config);
+    }
+
+    static boolean isZeroProbably(MatrixView m, Config config) {
+        var rules = config.symbolicRules();
+        var reduced = rules.list.isEmpty() ? m : m.toMatrix().substituteTermsIm(rules);
+        int degree = 0;
+        for (int row = 0; row < reduced.nRows(); row++) {
+            for (int col = 0; col < reduced.nCols(); col++) {
+                degree = Math.max(degree, degree(reduced.cell(row, col)));
+            }
+        }
+        return holdsProbably(degree, config.withRules(sphereRules(config)), pt -> pt.eval(reduced).isZero());
+    }
+
+    static boolean equalsProbably(MatrixView a, MatrixView b, Config config) {
+        if (a.nRows() != b.nRows() || a.nCols() != b.nCols()) return false;
+        var diff = new Matrix(a.nRows(), a.nCols());
+        diff.iterate((pos, row, col, cell) -> diff.cells[pos] = new MVPolynomial().add(a.cell(row, col)).minus(b.cell(row, col)));
+        return isZeroProbably(diff, config);
+    }
+
+    private static SubstituteTerms sphereRules(Config config) {
+        var out = new SubstituteTerms();
+        var symbolic = config.symbolicRules().list;
+        config.rules().list.stream().filter(r -> !symbolic.contains(r)).forEach(out::add);
+        return out;
+    }
+
+    private static int degree(MVPolynomial p) {
+        return p == null ? 0 : p.terms().stream().mapToInt(Term::degree).max().orElse(0);
+    }
+}
@@ -0,0 +1,667 @@
+package org.torcb.math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Polynomials and matrices over a pluggable coefficient ring. A ring works on a primitive coefficient array
+ * (double[], long[] or Rational[]) indexed per term, so double and modular arithmetic allocate nothing per operation.
+ */
+public interface PolynomialRing {
+
+    /**
+     * Coefficient backend over arrays of type A; operations address single elements by index
+     */
+    interface Ring<A> {
+        A allocate(int n);
+
+        A copyOf(A a, int n);
+
+        void fromDouble(A a, int i, double value);
+
+        boolean isZero(A a, int i);
+
+        /**
+         * dst[di] += src[si]
+         */
+        void add(A dst, int di, A src, int si);
+
+        /**
+         * dst[di] -= src[si]
+         */
+        void subtract(A dst, int di, A src, int si);
+
+        void negate(A a, int i);
+
+        /**
+         * dst[di] += a[ai] * b[bi]
+         */
+        void multiplyAdd(A dst, int di, A a, int ai, A b, int bi);
+
+        void copy(A src, int si, A dst, int di);
+
+        boolean equal(A a, int ai, A b, int bi);
+
+        double toDouble(A a, int i);
+
+        String format(A a, int i);
+    }
+
+    /**
+     * Same semantics as MVPolynomial: values below 1e-10 are zero
+     */
+    final class DoubleRing implements Ring<double[]> {
+        public static final DoubleRing INSTANCE = new DoubleRing();
+
+        private DoubleRing() {}
+
+        @Override
+        public double[] allocate(int n) {return new double[n];}
+
+        @Override
+        public double[] copyOf(double[] a, int n) {return Arrays.copyOf(a, n);}
+
+        @Override
+        public void fromDouble(double[] a, int i, double value) {a[i] = value;}
+
+        @Override
+        public boolean isZero(double[] a, int i) {return zero(a[i]);}
+
+        @Override
+        public void add(double[] dst, int di, double[] src, int si) {dst[di] += src[si];}
+
+        @Override
+        public void subtract(double[] dst, int di, double[] src, int si) {dst[di] -= src[si];}
+
+        @Override
+        public void negate(double[] a, int i) {a[i] = -a[i];}
+
+        @Override
+        public void multiplyAdd(double[] dst, int di, double[] a, int ai, double[] b, int bi) {dst[di] += a[ai] * b[bi];}
+
+        @Override
+        public void copy(double[] src, int si, double[] dst, int di) {dst[di] = src[si];}
+
+        @Override
+        public boolean equal(double[] a, int ai, double[] b, int bi) {return zero(a[ai] - b[bi]);}
+
+        @Override
+        public double toDouble(double[] a, int i) {return a[i];}
+
+        @Override
+        public String format(double[] a, int i) {return PolynomialFormat.Format.defaults().number(a[i]);}
+    }
+
+    /**
+     * Prime field Z/p, p odd below 2^63, values kept in Montgomery form (x * 2^64 mod p)
+     */
+    final class ModRing implements Ring<long[]> {
+        private final long p, negInverse, r2; //-p^-1 mod 2^64, 2^128 mod p
+
+        public ModRing(long p) {
+            if (p < 3 || p % 2 == 0) throw new IllegalArgumentException("odd prime expected: " + p);
+            this.p = p;
+            long inv = p; //Newton iteration for p^-1 mod 2^64
+            for (int i = 0; i < 5; i++) inv *= 2 - p * inv;
+            negInverse = -inv;
+            r2 = BigInteger.ONE.shiftLeft(128).mod(BigInteger.valueOf(p)).longValue();
+        }
+
+        public long prime() {return p;}
+
+        /**
+         * Montgomery reduction of a * b: a * b / 2^64 mod p
+         */
+        private long reduce(long a, long b) {
+            long hi = Math.unsignedMultiplyHigh(a, b);
+            long lo = a * b;
+            long m = lo * negInverse;
+            long mlo = m * p;
+            long t = hi + Math.unsignedMultiplyHigh(m, p) + (Long.compareUnsigned(lo + mlo, lo) < 0 ? 1 : 0);
+            return Long.compareUnsigned(t, p) >= 0 ? t - p : t;
+        }
+
+        private long addMod(long a, long b) {
+            long r = a + b; //a, b < p < 2^63: no unsigned overflow
+            return Long.compareUnsigned(r, p) >= 0 ? r - p : r;
+        }
+
+        public long toMontgomery(long standard) {
+            return reduce(Math.floorMod(standard, p), r2);
+        }
+
+        public long fromMontgomery(long x) {
+            return reduce(x, 1);
+        }
+
+        private long inverse(long standard) {
+            return BigInteger.valueOf(standard).modInverse(BigInteger.valueOf(p)).longValue();
+        }
+
+        /**
+         * @return standard residue of a coefficient, small rationals as num / den
+         */
+        public long residue(double x) {
+            var q = rational(x);
+            var prime = BigInteger.valueOf(p);
+            if (q != null) {
+                return BigInteger.valueOf(q[0]).multiply(BigInteger.valueOf(inverse(q[1] % p))).mod(prime).longValue();
+            }
+            var exact = new BigDecimal(x);
+            var scale = BigInteger.TEN.pow(Math.abs(exact.scale())).mod(prime);
+            var num = exact.unscaledValue().mod(prime);
+            return (exact.scale() >= 0 ? num.multiply(scale.modInverse(prime)) : num.multiply(scale)).mod(prime).longValue();
+        }
+
+        @Override
+        public long[] allocate(int n) {return new long[n];}
+
+        @Override
+        public long[] copyOf(long[] a, int n) {return Arrays.copyOf(a, n);}
+
+        @Override
+        public void fromDouble(long[] a, int i, double value) {a[i] = toMontgomery(residue(value));}
+
+        @Override
+        public boolean isZero(long[] a, int i) {return a[i] == 0;}
+
+        @Override
+        public void add(long[] dst, int di, long[] src, int si) {dst[di] = addMod(dst[di], src[si]);}
+
+        @Override
+        public void subtract(long[] dst, int di, long[] src, int si) {
+            long r = dst[di] - src[si];
+            dst[di] = r < 0 ? r + p : r;
+        }
+
+        @Override
+        public void negate(long[] a, int i) {a[i] = a[i] == 0 ? 0 : p - a[i];}
+
+        @Override
+        public void multiplyAdd(long[] dst, int di, long[] a, int ai, long[] b, int bi) {
+            dst[di] = addMod(dst[di], reduce(a[ai], b[bi]));
+        }
+
+        @Override
+        public void copy(long[] src, int si, long[] dst, int di) {dst[di] = src[si];}
+
+        @Override
+        public boolean equal(long[] a, int ai, long[] b, int bi) {return a[ai] == b[bi];}
+
+        /**
+         * Rational reconstruction: n / d with |n|, |d| <= sqrt(p / 2) if it exists,
+         * else the symmetric representative in (-p/2, p/2]
+         */
+        @Override
+        public double toDouble(long[] a, int i) {
+            long s = fromMontgomery(a[i]);
+            long bound = (long) Math.sqrt(p / 2.0);
+            long r0 = p, r1 = s, t0 = 0, t1 = 1;
+            while (r1 > bound) {
+                long q = r0 / r1;
+                long r = r0 - q * r1, t = t0 - q * t1;
+                r0 = r1;
+                r1 = r;
+                t0 = t1;
+                t1 = t;
+            }
+            if (t1 != 0 && Math.abs(t1) <= bound) return (double) r1 / t1;
+            return s > p / 2 ? -(double) (p - s) : s;
+        }
+
+        @Override
+        public String format(long[] a, int i) {return Long.toString(fromMontgomery(a[i]));}
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ModRing r && r.p == p;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(p);
+        }
+    }
+
+    /**
+     * Exact rational number in lowest terms, den > 0
+     */
+    record Rational(BigInteger num, BigInteger den) {
+        public static final Rational ZERO = new Rational(BigInteger.ZERO, BigInteger.ONE);
+
+        public static Rational of(BigInteger num, BigInteger den) {
+            if (den.signum() == 0) throw new ArithmeticException("zero denominator");
+            if (den.signum() < 0) {
+                num = num.negate();
+                den = den.negate();
+            }
+            var g = num.gcd(den);
+            return g.equals(BigInteger.ONE) ? new Rational(num, den) : new Rational(num.divide(g), den.divide(g));
+        }
+
+        /**
+         * Small rationals (SymbolMath.rational) as such, others as the exact binary value
+         */
+        public static Rational of(double x) {
+            var q = rational(x);
+            if (q != null) return of(BigInteger.valueOf(q[0]), BigInteger.valueOf(q[1]));
+            var exact = new BigDecimal(x);
+            return exact.scale() >= 0
+                    ? of(exact.unscaledValue(), BigInteger.TEN.pow(exact.scale()))
+                    : of(exact.unscaledValue().multiply(BigInteger.TEN.pow(-exact.scale())), BigInteger.ONE);
+        }
+
+        public Rational add(Rational o) {
+            if (den.equals(o.den)) return of(num.add(o.num), den);
+            return of(num.multiply(o.den).add(o.num.multiply(den)), den.multiply(o.den));
+        }
+
+        public Rational multiply(Rational o) {
+            return of(num.multiply(o.num), den.multiply(o.den));
+        }
+
+        public Rational negate() {
+            return new Rational(num.negate(), den);
+        }
+
+        @Override
+        public String toString() {
+            return den.equals(BigInteger.ONE) ? num.toString() : num + "/" + den;
+        }
+    }
+
+    final class RationalRing implements Ring<Rational[]> {
+        public static final RationalRing INSTANCE = new RationalRing();
+
+        private RationalRing() {}
+
+        @Override
+        public Rational[] allocate(int n) {
+            var a = new Rational[n];
+            Arrays.fill(a, Rational.ZERO);
+            return a;
+        }
+
+        @Override
+        public Rational[] copyOf(Rational[] a, int n) {
+            var out = Arrays.copyOf(a, n);
+            if (n > a.length) Arrays.fill(out, a.length, n, Rational.ZERO);
+            return out;
+        }
+
+        @Override
+        public void fromDouble(Rational[] a, int i, double value) {a[i] = Rational.of(value);}
+
+        @Override
+        public boolean isZero(Rational[] a, int i) {return a[i].num().signum() == 0;}
+
+        @Override
+        public void add(Rational[] dst, int di, Rational[] src, int si) {dst[di] = dst[di].add(src[si]);}
+
+        @Override
+        public void subtract(Rational[] dst, int di, Rational[] src, int si) {dst[di] = dst[di].add(src[si].negate());}
+
+        @Override
+        public void negate(Rational[] a, int i) {a[i] = a[i].negate();}
+
+        @Override
+        public void multiplyAdd(Rational[] dst, int di, Rational[] a, int ai, Rational[] b, int bi) {
+            dst[di] = dst[di].add(a[ai].multiply(b[bi]));
+        }
+
+        @Override
+        public void copy(Rational[] src, int si, Rational[] dst, int di) {dst[di] = src[si];}
+
+        @Override
+        public boolean equal(Rational[] a, int ai, Rational[] b, int bi) {return a[ai].equals(b[bi]);}
+
+        @Override
+        public double toDouble(Rational[] a, int i) {
+            return new BigDecimal(a[i].num()).divide(new BigDecimal(a[i].den()), java.math.MathContext.DECIMAL64).doubleValue();
+        }
+
+        @Override
+        public String format(Rational[] a, int i) {return a[i].toString();}
+    }
+
+    /**
+     * Immutable polynomial over a ring: terms in MVPolynomial order (highest degree first), nonzero coefficients
+     */
+    final class RingPolynomial<A> {
+        public final Ring<A> ring;
+        private final Term[] terms;
+        private final A coefficients;
+
+        private RingPolynomial(Ring<A> ring, Term[] terms, A coefficients) {
+            this.ring = ring;
+            this.terms = terms;
+            this.coefficients = coefficients;
+        }
+
+        public static <A> RingPolynomial<A> zero(Ring<A> ring) {
+            return new RingPolynomial<>(ring, new Term[0], ring.allocate(0));
+        }
+
+        public static <A> RingPolynomial<A> constant(Ring<A> ring, double value) {
+            return of(ring, new MVPolynomial().add(value));
+        }
+
+        public static <A> RingPolynomial<A> of(Ring<A> ring, MVPolynomial p) {
+            if (p == null) return zero(ring);
+            var terms = p.terms().toArray(new Term[0]);
+            var c = ring.allocate(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                ring.fromDouble(c, i, p.coefficient(terms[i]));
+            }
+            return compact(ring, terms, c, terms.length);
+        }
+
+        public static <A> RingPolynomial<A> parse(Ring<A> ring, String expression) {
+            return of(ring, MVPolynomial.parse(expression));
+        }
+
+        /**
+         * Drops zero coefficients of the first n entries
+         */
+        private static <A> RingPolynomial<A> compact(Ring<A> ring, Term[] terms, A c, int n) {
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (ring.isZero(c, i)) continue;
+                terms[k] = terms[i];
+                ring.copy(c, i, c, k++);
+            }
+            return new RingPolynomial<>(ring, Arrays.copyOf(terms, k), ring.copyOf(c, k));
+        }
+
+        public int size() {return terms.length;}
+
+        public boolean isZero() {return terms.length == 0;}
+
+        public Term term(int i) {return terms[i];}
+
+        public double coefficientAsDouble(int i) {return ring.toDouble(coefficients, i);}
+
+        public RingPolynomial<A> add(RingPolynomial<A> o) {
+            return merge(o, false);
+        }
+
+        public RingPolynomial<A> minus(RingPolynomial<A> o) {
+            return merge(o, true);
+        }
+
+        private RingPolynomial<A> merge(RingPolynomial<A> o, boolean negateOther) {
+            int n = terms.length + o.terms.length;
+            var t = new Term[n];
+            var c = ring.allocate(n);
+            int i = 0, j = 0, k = 0;
+            while (i < terms.length || j < o.terms.length) {
+                int cmp = i == terms.length ? 1 : j == o.terms.length ? -1 : terms[i].compareTo(o.terms[j]);
+                if (cmp <= 0) {
+                    t[k] = terms[i];
+                    ring.copy(coefficients, i++, c, k);
+                } else {
+                    t[k] = o.terms[j];
+                }
+                if (cmp >= 0) {
+                    if (negateOther) ring.subtract(c, k, o.coefficients, j++);
+                    else ring.add(c, k, o.coefficients, j++);
+                }
+                k++;
+            }
+            return compact(ring, t, c, k);
+        }
+
+        public RingPolynomial<A> negate() {
+            var c = ring.copyOf(coefficients, terms.length);
+            for (int i = 0; i < terms.length; i++) ring.negate(c, i);
+            return new RingPolynomial<>(ring, terms, c);
+        }
+
+        public RingPolynomial<A> multiply(RingPolynomial<A> o) {
+            var index = new HashMap<Term, Integer>();
+            var t = new Term[Math.max(4, terms.length + o.terms.length)];
+            var acc = ring.allocate(t.length);
+            for (int i = 0; i < terms.length; i++) {
+                for (int j = 0; j < o.terms.length; j++) {
+                    var product = terms[i].multiplyIm(o.terms[j]);
+                    var at = index.get(product);
+                    if (at == null) {
+                        at = index.size();
+                        index.put(product, at);
+                        if (at == t.length) {
+                            t = Arrays.copyOf(t, 2 * at);
+                            acc = ring.copyOf(acc, 2 * at);
+                        }
+                        t[at] = product;
+                    }
+                    ring.multiplyAdd(acc, at, coefficients, i, o.coefficients, j);
+                }
+            }
+            int n = index.size();
+            var order = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+            var unsorted = t;
+            Arrays.sort(order, (x, y) -> unsorted[x].compareTo(unsorted[y]));
+            var outTerms = new Term[n];
+            var out = ring.allocate(n);
+            for (int k = 0; k < n; k++) {
+                outTerms[k] = t[order[k]];
+                ring.copy(acc, order[k], out, k);
+            }
+            return compact(ring, outTerms, out, n);
+        }
+
+        public MVPolynomial toMVPolynomial() {
+            var p = new MVPolynomial();
+            for (int i = 0; i < terms.length; i++) {
+                p.add(terms[i], ring.toDouble(coefficients, i));
+            }
+            return p;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RingPolynomial<?> r) || !ring.equals(r.ring) || terms.length != r.terms.length) return false;
+            @SuppressWarnings("unchecked") var other = (RingPolynomial<A>) r;
+            for (int i = 0; i < terms.length; i++) {
+                if (!terms[i].equals(other.terms[i]) || !ring.equal(coefficients, i, other.coefficients, i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(terms);
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder();
+            for (int i = 0; i < terms.length; i++) {
+                String v = ring.format(coefficients, i);
+                String s = terms[i].toString();
+                sb.append(sb.isEmpty() ? "" : " + ")
+                  .append(s.isEmpty() || !"1".equals(v) ? v : "")
+                  .append(s);
+            }
+            return sb.isEmpty() ? "0" : sb.toString();
+        }
+    }
+
+    /**
+     * Row-major matrix of ring polynomials
+     */
+    final class RingMatrix<A> {
+        public final Ring<A> ring;
+        public final int nRows, nCols;
+        private final List<RingPolynomial<A>> cells;
+
+        private RingMatrix(Ring<A> ring, int nRows, int nCols, List<RingPolynomial<A>> cells) {
+            this.ring = ring;
+            this.nRows = nRows;
+            this.nCols = nCols;
+            this.cells = cells;
+        }
+
+        public static <A> RingMatrix<A> of(Ring<A> ring, MatrixView m) {
+            var cells = new ArrayList<RingPolynomial<A>>();
+            for (int row = 0; row < m.nRows(); row++) {
+                for (int col = 0; col < m.nCols(); col++) {
+                    cells.add(RingPolynomial.of(ring, m.cell(row, col)));
+                }
+            }
+            return new RingMatrix<>(ring, m.nRows(), m.nCols(), cells);
+        }
+
+        public RingPolynomial<A> cell(int row, int col) {
+            return cells.get(row * nCols + col);
+        }
+
+        public RingMatrix<A> multiply(RingMatrix<A> right) {
+            if (nCols != right.nRows) throw new IllegalArgumentException("multiply: nCols != other.nRows");
+            var out = new ArrayList<RingPolynomial<A>>();
+            for (int row = 0; row < nRows; row++) {
+                for (int col = 0; col < right.nCols; col++) {
+                    var sum = RingPolynomial.zero(ring);
+                    for (int i = 0; i < nCols; i++) {
+                        sum = sum.add(cell(row, i).multiply(right.cell(i, col)));
+                    }
+                    out.add(sum);
+                }
+            }
+            return new RingMatrix<>(ring, nRows, right.nCols, out);
+        }
+
+        /**
+         * Berkowitz' division-free algorithm, valid over any commutative ring
+         */
+        public RingPolynomial<A> determinant() {
+            if (nCols != nRows) throw new IllegalStateException("Not square");
+            var one = RingPolynomial.constant(ring, 1);
+            List<RingPolynomial<A>> q = List.of(one); //highest degree first
+            for (int k = 1; k <= nRows; k++) {
+                int m = k - 1;
+                var t = new ArrayList<RingPolynomial<A>>();
+                t.add(one);
+                t.add(cell(m, m).negate());
+                var v = new ArrayList<RingPolynomial<A>>();
+                for (int i = 0; i < m; i++) v.add(cell(m, i));
+                for (int j = 2; j <= k; j++) {
+                    var dot = RingPolynomial.zero(ring);
+                    for (int i = 0; i < m; i++) dot = dot.add(v.get(i).multiply(cell(i, m)));
+                    t.add(dot.negate());
+                    if (j < k) {
+                        var next = new ArrayList<RingPolynomial<A>>();
+                        for (int c = 0; c < m; c++) {
+                            var sum = RingPolynomial.zero(ring);
+                            for (int r = 0; r < m; r++) sum = sum.add(v.get(r).multiply(cell(r, c)));
+                            next.add(sum);
+                        }
+                        v = next;
+                    }
+                }
+                var out = new ArrayList<RingPolynomial<A>>();
+                for (int i = 0; i <= k; i++) {
+                    var sum = RingPolynomial.zero(ring);
+                    for (int j = 0; j <= i && j < q.size(); j++) sum = sum.add(t.get(i - j).multiply(q.get(j)));
+                    out.add(sum);
+                }
+                q = out;
+            }
+            var constant = q.get(nRows);
+            return nRows % 2 == 0 ? constant : constant.negate();
+        }
+
+        public Matrix toMatrix() {
+            var out = new Matrix(nRows, nCols);
+            for (int pos = 0; pos < cells.size(); pos++) {
+                out.cells[pos] = cells.get(pos).toMVPolynomial();
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Largest primes below 2^62, in decreasing order
+     */
+    static long[] primes(int count) {
+        var out = new long[count];
+        var candidate = BigInteger.ONE.shiftLeft(62);
+        for (int i = 0; i < count; i++) {
+            candidate = candidate.subtract(BigInteger.ONE);
+            while (!candidate.isProbablePrime(40)) candidate = candidate.subtract(BigInteger.ONE);
+            out[i] = candidate.longValueExact();
+        }
+        return out;
+    }
+
+    /**
+     * Chinese remaindering of standard residues, symmetric representative
+     */
+    static BigInteger crt(long[] residues, long[] primes) {
+        var x = BigInteger.ZERO;
+        var modulus = BigInteger.ONE;
+        for (int i = 0; i < primes.length; i++) {
+            var p = BigInteger.valueOf(primes[i]);
+            var diff = BigInteger.valueOf(residues[i]).subtract(x).mod(p);
+            x = x.add(modulus.multiply(diff.multiply(modulus.modInverse(p)).mod(p)));
+            modulus = modulus.multiply(p);
+        }
+        return x.compareTo(modulus.shiftRight(1)) > 0 ? x.subtract(modulus) : x;
+    }
+
+    /**
+     * Exact determinant of a matrix with integer coefficients: determinants modulo several primes
+     * computed in parallel, combined by CRT until one more prime no longer changes the result.
+     */
+    static RingPolynomial<Rational[]> determinantMultiPrime(MatrixView m, int maxPrimes) {
+        for (int row = 0; row < m.nRows(); row++) {
+            for (int col = 0; col < m.nCols(); col++) {
+                var cell = m.cell(row, col);
+                if (cell == null) continue;
+                for (var t : cell.terms()) {
+                    var q = rational(cell.coefficient(t));
+                    if (q == null || q[1] != 1) throw new IllegalArgumentException("integer coefficients expected: " + cell);
+                }
+            }
+        }
+        if (maxPrimes < 2) throw new IllegalArgumentException("at least 2 primes");
+        var primes = primes(maxPrimes);
+        var dets = new ArrayList<RingPolynomial<long[]>>();
+        for (int count = 2; ; count = Math.min(2 * count, maxPrimes)) {
+            int from = dets.size();
+            dets.addAll(SymbolMathContext.current()
+                                         .map(count - from, i -> RingMatrix.of(new ModRing(primes[from + i]), m).determinant()));
+            var current = combine(dets, Arrays.copyOf(primes, count));
+            if (combine(dets.subList(0, count - 1), Arrays.copyOf(primes, count - 1)).equals(current)) {
+                return current;
+            }
+            if (count == maxPrimes) throw new ArithmeticException("no stable result with " + maxPrimes + " primes");
+        }
+    }
+
+    private static RingPolynomial<Rational[]> combine(List<RingPolynomial<long[]>> dets, long[] primes) {
+        var allTerms = new TreeSet<Term>();
+        for (var d : dets) {
+            for (int i = 0; i < d.size(); i++) allTerms.add(d.term(i));
+        }
+        var terms = allTerms.toArray(new Term[0]);
+        var c = RationalRing.INSTANCE.allocate(terms.length);
+        var residues = new long[terms.length][dets.size()];
+        var index = new HashMap<Term, Integer>();
+        for (int k = 0; k < terms.length; k++) index.put(terms[k], k);
+        for (int i = 0; i < dets.size(); i++) {
+            var d = dets.get(i);
+            for (int j = 0; j < d.size(); j++) {
+                residues[index.get(d.term(j))][i] = ((ModRing) d.ring).fromMontgomery(d.coefficients[j]);
+            }
+        }
+        for (int k = 0; k < terms.length; k++) {
+            c[k] = Rational.of(crt(residues[k], primes), BigInteger.ONE);
+        }
+        return RingPolynomial.compact(RationalRing.INSTANCE, terms, c, terms.length);
+    }
+}
@@ -0,0 +1,192 @@
+package org.torcb.math;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Simplification as a search over rule applications. substituteTermsIm(false, ...) accepts a rule only
+ * if approxSize shrinks, in list order, so it misses results behind a temporarily larger expression.
+ * Here each state is an expression, each move applies one rule (all occurrences, as substituteTermsIm(Term, ...)).
+ * Best-first: the cheapest open states are expanded first, beamWidth of them per round, their successors
+ * forked under the caller's SymbolMathContext. States are memoized by content, keyed on MVPolynomial.fingerprint
+ * (terms and coefficients; hashCode covers the terms only), so rule cycles terminate.
+ */
+public interface PolynomialSimplify {
+    /**
+     * Successors of a round are computed in parallel from this count
+     */
+    int PARALLEL_MIN = 8;
+
+    /**
+     * Cost to minimize; lower is simpler
+     */
+    @FunctionalInterface
+    interface Cost {
+        double of(MVPolynomial p);
+
+        /**
+         * approxSize: one per term plus one per symbol, the measure of substituteTermsIm
+         */
+        Cost TERMS = MVPolynomial::approxSize;
+
+        /**
+         * Floating point operations of a naive evaluation: degree - 1 products per term,
+         * one more for a coefficient other than +-1, one addition between terms
+         */
+        Cost FLOPS = p -> {
+            double flops = -1;
+            for (var t : p.terms()) {
+                int degree = t.degree();
+                flops += 1 + Math.max(0, degree - 1);
+                if (degree > 0 && Math.abs(p.coefficient(t)) != 1) flops++;
+            }
+            return Math.max(0, flops);
+        };
+    }
+
+    /**
+     * @param beamWidth open states expanded per round; 1 is plain best-first
+     * @param maxSteps  limit of generated states
+     * @param timeLimit checked between rounds
+     * @param maxGrowth states with cost above maxGrowth * initial cost are not expanded
+     */
+    record Config(Cost cost, int beamWidth, int maxSteps, Duration timeLimit, double maxGrowth) {
+        public Config {
+            if (beamWidth < 1) throw new IllegalArgumentException("beamWidth < 1");
+            if (maxSteps < 0) throw new IllegalArgumentException("maxSteps < 0");
+            if (maxGrowth < 1) throw new IllegalArgumentException("maxGrowth < 1");
+        }
+
+        public static Config defaults() {
+            return new Config(Cost.TERMS, 4, 10_000, Duration.ofSeconds(10), 4);
+        }
+
+        public Config withCost(Cost cost) {
+            return new Config(cost, beamWidth, maxSteps, timeLimit, maxGrowth);
+        }
+
+        public Config withBeamWidth(int beamWidth) {
+            return new Config(cost, beamWidth, maxSteps, timeLimit, maxGrowth);
+        }
+
+        public Config withMaxSteps(int maxSteps) {
+            return new Config(cost, beamWidth, maxSteps, timeLimit, maxGrowth);
+        }
+
+        public Config withTimeLimit(Duration timeLimit) {
+            return new Config(cost, beamWidth, maxSteps, timeLimit, maxGrowth);
+        }
+
+        public Config withMaxGrowth(double maxGrowth) {
+            return new Config(cost, beamWidth, maxSteps, timeLimit, maxGrowth);
+        }
+    }
+
+    /**
+     * @param path      rules applied, in order, from the input to result
+     * @param steps     states generated
+     * @param exhausted true if every reachable state within maxGrowth was visited (result is optimal)
+     */
+    record Simplified(MVPolynomial result, double cost, List<SubstituteTerm> path, int steps, boolean exhausted) {
+    }
+
+    /**
+     * Search node; seq orders equal costs by discovery, which keeps the result independent of threads
+     */
+    record State(MVPolynomial poly, double cost, State parent, SubstituteTerm rule, int depth, long seq) {
+        static final Comparator<State> ORDER = Comparator.comparingDouble(State::cost)
+                                                         .thenComparingInt(State::depth)
+                                                         .thenComparingLong(State::seq);
+
+        List<SubstituteTerm> path() {
+            var out = new ArrayList<SubstituteTerm>();
+            for (var s = this; s.parent != null; s = s.parent) {
+                out.add(s.rule);
+            }
+            Collections.reverse(out);
+            return out;
+        }
+    }
+
+    record Move(State from, SubstituteTerm rule) {
+        /**
+         * @return successor, null if the rule does not apply
+         */
+        Successor apply(Cost cost) {
+            var poly = from.poly().substituteTermsIm(rule.fromTerm(), rule.toExpression());
+            return poly == from.poly() ? null : new Successor(from, rule, poly, cost.of(poly));
+        }
+    }
+
+    record Successor(State from, SubstituteTerm rule, MVPolynomial poly, double cost) {
+    }
+
+    static Simplified simplify(MVPolynomial p) {
+        return simplify(p, SymbolMathContext.current().substituteTerms(), Config.defaults());
+    }
+
+    static Simplified simplify(MVPolynomial p, SubstituteTerms rules) {
+        return simplify(p, rules, Config.defaults());
+    }
+
+    static Simplified simplify(MVPolynomial p, SubstituteTerms rules, Config config) {
+        long deadline = System.nanoTime() + config.timeLimit().toNanos();
+        var start = new State(p, config.cost().of(p), null, null, 0, 0);
+        double maxCost = start.cost() * config.maxGrowth();
+        var seen = new HashMap<Long, List<MVPolynomial>>();
+        firstVisit(seen, p);
+        var context = SymbolMathContext.current();
+        var open = new PriorityQueue<>(State.ORDER);
+        open.add(start);
+        var best = start;
+        int steps = 0;
+        boolean limited = false;
+        while (!open.isEmpty()) {
+            if (steps >= config.maxSteps() || System.nanoTime() > deadline) {
+                limited = true;
+                break;
+            }
+            var round = new ArrayList<State>();
+            while (round.size() < config.beamWidth() && !open.isEmpty()) {
+                round.add(open.poll());
+            }
+            var moves = round.stream()
+                             .flatMap(s -> rules.list.stream().map(r -> new Move(s, r)))
+                             .toList();
+            var next = moves.size() >= PARALLEL_MIN
+                       ? context.map(moves.size(), i -> moves.get(i).apply(config.cost())) //index order kept
+                       : moves.stream().map(m -> m.apply(config.cost())).toList();
+            for (var n : next) { //sequential, in move order: deterministic seq and memo
+                if (n == null || !firstVisit(seen, n.poly())) continue;
+                var state = new State(n.poly(), n.cost(), n.from(), n.rule(), n.from().depth() + 1, ++steps);
+                if (State.ORDER.compare(state, best) < 0) best = state;
+                if (state.cost() <= maxCost) open.add(state);
+            }
+        }
+        return new Simplified(best.poly(), best.cost(), best.path(), steps, !limited);
+    }
+
+    /**
+     * @return false if an equal polynomial was seen before
+     */
+    private static boolean firstVisit(Map<Long, List<MVPolynomial>> seen, MVPolynomial p) {
+        var bucket = seen.computeIfAbsent(p.fingerprint(), k -> new ArrayList<>(1));
+        if (bucket.contains(p)) return false;
+        bucket.add(p);
+        return true;
+    }
+
+    /**
+     * Cell-wise simplify; null cells stay null
+     */
+    static Matrix simplify(Matrix m, SubstituteTerms rules, Config config) {
+        var out = new Matrix(m.nRows, m.nCols);
+        var cells = Stream.of(m.cells)
+                          .map(c -> c == null ? null : simplify(c, rules, config).result())
+                          .toArray(MVPolynomial[]::new);
+        return out.init(cells);
+    }
+}
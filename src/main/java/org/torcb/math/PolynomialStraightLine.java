@@ -0,0 +1,315 @@
+package org.torcb.math;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.torcb.math.PolynomialPersistent.Interner;
+import static org.torcb.math.SymbolMath.*;
+
+public interface PolynomialStraightLine {
+    Interner<Slp> INTERNER = new Interner<>(Slp::sameNode);
+    /**
+     * toString prints the expression up to this many nodes, a summary above
+     */
+    int PRINT_MAX_NODES = 32;
+
+    enum Kind {LEAF, ADD, MUL, SCALE}
+
+    /**
+     * Straight-line program: immutable DAG of add/multiply/scale nodes over leaf polynomials, nothing expanded
+     * until expand(). Nodes are hash-consed, so equal sub-circuits are shared and equals is a pointer comparison.
+     * Memory grows with the number of operations, not with the expanded term count.
+     */
+    final class Slp {
+        private static final AtomicLong ids = new AtomicLong();
+        public static final Slp ZERO = leaf(new MVPolynomial());
+        public static final Slp ONE = constant(1);
+
+        private final Kind kind;
+        private final MVPolynomial leaf;
+        private final Slp left, right;
+        private final double scalar;
+        private final int degree, hash;
+        private final long id = ids.incrementAndGet(); //orders operands of commutative nodes on equal hash
+
+        private Slp(Kind kind, MVPolynomial leaf, Slp left, Slp right, double scalar, int degree, int hash) {
+            this.kind = kind;
+            this.leaf = leaf;
+            this.left = left;
+            this.right = right;
+            this.scalar = scalar;
+            this.degree = degree;
+            this.hash = hash;
+        }
+
+        public static Slp leaf(MVPolynomial p) {
+            var copy = p == null ? new MVPolynomial() : p.copy();
+            long fp = copy.fingerprint();
+            int degree = copy.terms().stream().mapToInt(Term::degree).max().orElse(0);
+            return intern(new Slp(Kind.LEAF, copy, null, null, 0, degree, (int) (fp ^ (fp >>> 32))));
+        }
+
+        public static Slp parse(String expression) {
+            return leaf(MVPolynomial.parse(expression));
+        }
+
+        public static Slp constant(double scalar) {
+            return leaf(new MVPolynomial().add(scalar));
+        }
+
+        private static Slp intern(Slp node) {
+            return INTERNER.intern(node);
+        }
+
+        private static Slp binary(Kind kind, Slp a, Slp b, int degree) {
+            if (a.hash > b.hash || a.hash == b.hash && a.id > b.id) { //commutative: canonical operand order
+                var t = a;
+                a = b;
+                b = t;
+            }
+            int hash = (int) mix64(((long) kind.ordinal() << 32) + 31L * a.hash + b.hash);
+            return intern(new Slp(kind, null, a, b, 0, degree, hash));
+        }
+
+        public Kind kind() {return kind;}
+
+        /**
+         * Upper bound of the total degree
+         */
+        public int degree() {return degree;}
+
+        public boolean isZero() {return this == ZERO;}
+
+        public Slp add(Slp other) {
+            if (isZero()) return other;
+            if (other.isZero()) return this;
+            return binary(Kind.ADD, this, other, Math.max(degree, other.degree));
+        }
+
+        public Slp add(MVPolynomial other) {
+            return add(leaf(other));
+        }
+
+        public Slp minus(Slp other) {
+            return add(other.multiply(-1));
+        }
+
+        public Slp negate() {
+            return multiply(-1);
+        }
+
+        public Slp multiply(Slp other) {
+            if (isZero() || other.isZero()) return ZERO;
+            if (this == ONE) return other;
+            if (other == ONE) return this;
+            return binary(Kind.MUL, this, other, degree + other.degree);
+        }
+
+        public Slp multiply(MVPolynomial other) {
+            return multiply(leaf(other));
+        }
+
+        public Slp multiply(double factor) {
+            if (zero(factor) || isZero()) return ZERO;
+            if (factor == 1) return this;
+            if (kind == Kind.SCALE) return left.multiply(scalar * factor);
+            if (kind == Kind.LEAF) return leaf(leaf.multiplyIm(factor));
+            int hash = (int) mix64(((long) Kind.SCALE.ordinal() << 32) + 31L * this.hash + Double.hashCode(factor));
+            return intern(new Slp(Kind.SCALE, null, this, null, factor, degree, hash));
+        }
+
+        /**
+         * Expands the DAG, each shared node once; rules applied after every operation
+         */
+        public MVPolynomial expand(SubstituteTerms subst) {
+            return fold((node, r) -> switch (node.kind) {
+                case LEAF -> node.leaf.substituteTermsIm(subst);
+                case ADD -> r.apply(node.left).addIm(r.apply(node.right)).substituteTermsIm(subst);
+                case MUL -> r.apply(node.left).multiplyIm(r.apply(node.right)).substituteTermsIm(subst);
+                case SCALE -> r.apply(node.left).multiplyIm(node.scalar);
+            });
+        }
+
+        public MVPolynomial expand() {
+            return expand(new SubstituteTerms());
+        }
+
+        public double evaluate(Map<String, Double> values) {
+            return fold((node, r) -> switch (node.kind) {
+                case LEAF -> evaluate(node.leaf, values);
+                case ADD -> r.apply(node.left) + r.apply(node.right);
+                case MUL -> r.apply(node.left) * r.apply(node.right);
+                case SCALE -> r.apply(node.left) * node.scalar;
+            });
+        }
+
+        /**
+         * Evaluation modulo PolynomialRandomized.P, e.g. for PolynomialRandomized.holdsProbably
+         */
+        public long evaluate(PolynomialRandomized.Point point) {
+            return fold((node, r) -> switch (node.kind) {
+                case LEAF -> point.eval(node.leaf);
+                case ADD -> PolynomialRandomized.add(r.apply(node.left), r.apply(node.right));
+                case MUL -> PolynomialRandomized.mul(r.apply(node.left), r.apply(node.right));
+                case SCALE -> PolynomialRandomized.mul(r.apply(node.left), PolynomialRandomized.residue(node.scalar));
+            });
+        }
+
+        public boolean isZeroProbably(PolynomialRandomized.Config config) {
+            return PolynomialRandomized.holdsProbably(degree, config, pt -> evaluate(pt) == 0);
+        }
+
+        /**
+         * Derivative as circuit, size at most linear in this circuit (product rule on shared nodes)
+         */
+        public Slp derive(String variable) {
+            return fold((node, r) -> switch (node.kind) {
+                case LEAF -> leaf(node.leaf.deriveIm(variable));
+                case ADD -> r.apply(node.left).add(r.apply(node.right));
+                case MUL -> r.apply(node.left).multiply(node.right)
+                                              .add(node.left.multiply(r.apply(node.right)));
+                case SCALE -> r.apply(node.left).multiply(node.scalar);
+            });
+        }
+
+        /**
+         * @return number of distinct nodes
+         */
+        public int size() {
+            return topologicalOrder().size();
+        }
+
+        private static double evaluate(MVPolynomial p, Map<String, Double> values) {
+            double sum = 0;
+            for (var t : p.terms()) {
+                double v = p.coefficient(t);
+                for (var s : t.symbols()) {
+                    var x = values.get(s);
+                    if (x == null) throw new IllegalArgumentException("no value for " + s);
+                    v *= x;
+                }
+                sum += v;
+            }
+            return sum;
+        }
+
+        /**
+         * Bottom-up fold, each node once, children before parents
+         *
+         * @param nodeFunction (node, result of child) -> result of node
+         */
+        private <R> R fold(BiFunction<Slp, Function<Slp, R>, R> nodeFunction) {
+            var results = new IdentityHashMap<Slp, R>();
+            for (var node : topologicalOrder()) {
+                results.put(node, nodeFunction.apply(node, results::get));
+            }
+            return results.get(this);
+        }
+
+        /**
+         * Iterative post-order, deep circuits don't overflow the stack
+         */
+        private List<Slp> topologicalOrder() {
+            var order = new ArrayList<Slp>();
+            var visited = Collections.newSetFromMap(new IdentityHashMap<Slp, Boolean>());
+            var stack = new ArrayDeque<Slp>();
+            var expanded = Collections.newSetFromMap(new IdentityHashMap<Slp, Boolean>());
+            stack.push(this);
+            while (!stack.isEmpty()) {
+                var node = stack.peek();
+                if (visited.contains(node)) {
+                    stack.pop();
+                } else if (expanded.add(node)) {
+                    if (node.right != null && !visited.contains(node.right)) stack.push(node.right);
+                    if (node.left != null && !visited.contains(node.left)) stack.push(node.left);
+                } else {
+                    stack.pop();
+                    visited.add(node);
+                    order.add(node);
+                }
+            }
+            return order;
+        }
+
+        private boolean sameNode(Slp o) {
+            if (kind != o.kind || hash != o.hash) return false;
+            return switch (kind) {
+                case LEAF -> leaf.fingerprint() == o.leaf.fingerprint() && leaf.equals(o.leaf);
+                case ADD, MUL -> left == o.left && right == o.right;
+                case SCALE -> left == o.left && Double.compare(scalar, o.scalar) == 0;
+            };
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            var order = topologicalOrder();
+            if (order.size() > PRINT_MAX_NODES) {
+                return "Slp{nodes=" + order.size() + ", degree<=" + degree + "}";
+            }
+            return fold((node, r) -> switch (node.kind) {
+                case LEAF -> node.leaf.terms().size() > 1 ? "(" + node.leaf + ")" : node.leaf.toString();
+                case ADD -> "(" + r.apply(node.left) + " + " + r.apply(node.right) + ")";
+                case MUL -> r.apply(node.left) + "*" + r.apply(node.right);
+                case SCALE -> PolynomialFormat.Format.defaults().number(node.scalar) + "*" + r.apply(node.left);
+            });
+        }
+    }
+
+    /**
+     * Determinant as circuit by Berkowitz' division-free algorithm: O(n^4) nodes, nothing expanded
+     */
+    static Slp determinant(MatrixView m) {
+        if (m.nCols() != m.nRows()) throw new IllegalStateException("Not square");
+        int n = m.nRows();
+        var a = new Slp[n][n];
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                var cell = m.cell(row, col);
+                a[row][col] = cell == null ? Slp.ZERO : Slp.leaf(cell);
+            }
+        }
+        Slp[] q = {Slp.ONE}; //characteristic coefficients, highest degree first
+        for (int k = 1; k <= n; k++) {
+            int dim = k - 1;
+            var t = new Slp[k + 1];
+            t[0] = Slp.ONE;
+            t[1] = a[dim][dim].negate();
+            var v = new Slp[dim];
+            for (int i = 0; i < dim; i++) v[i] = a[dim][i];
+            for (int j = 2; j <= k; j++) {
+                var dot = Slp.ZERO;
+                for (int i = 0; i < dim; i++) dot = dot.add(v[i].multiply(a[i][dim]));
+                t[j] = dot.negate();
+                if (j < k) {
+                    var next = new Slp[dim];
+                    for (int c = 0; c < dim; c++) {
+                        var sum = Slp.ZERO;
+                        for (int r = 0; r < dim; r++) sum = sum.add(v[r].multiply(a[r][c]));
+                        next[c] = sum;
+                    }
+                    v = next;
+                }
+            }
+            var out = new Slp[k + 1];
+            for (int i = 0; i <= k; i++) {
+                var sum = Slp.ZERO;
+                for (int j = 0; j <= i && j < q.length; j++) sum = sum.add(t[i - j].multiply(q[j]));
+                out[i] = sum;
+            }
+            q = out;
+        }
+        return n % 2 == 0 ? q[n] : q[n].negate();
+    }
+}
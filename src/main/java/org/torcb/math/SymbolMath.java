@@ -4,15 +4,51 @@ import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public interface SymbolMath {
+    /**
+     * Not thread-safe; output goes through PolynomialFormat, which formats numbers the same way
+     */
     DecimalFormat DF = new DecimalFormat("#.###", decSep());
-    ThreadLocal<SubstituteTerms> SubstituteRules = ThreadLocal.withInitial(SubstituteTerms::new);
+    /**
+     * Per-thread rules, read when no SymbolMathContext is bound and the thread has got or set them
+     */
+    ThreadRules<SubstituteTerms> SubstituteRules = new ThreadRules<>(SubstituteTerms::new);
+    ThreadRules<Truncation> TruncationRules = new ThreadRules<>(() -> Truncation.NONE);
+
+    /**
+     * ThreadLocal whose get creates the thread's value on first use; peek does not, so threads that never
+     * use the thread rules hold no value of them
+     */
+    final class ThreadRules<T> extends ThreadLocal<T> {
+        private final Supplier<T> initial;
+
+        ThreadRules(Supplier<T> initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public T get() {
+            var value = super.get();
+            if (value == null) set(value = initial.get());
+            return value;
+        }
+
+        /**
+         * @return value of this thread, null if it has not got or set one
+         */
+        public T peek() {
+            return super.get();
+        }
+    }
 
     private static DecimalFormatSymbols decSep() {
         var ds = DecimalFormatSymbols.getInstance();
@@ -24,9 +60,63 @@ public interface SymbolMath {
         return Math.abs(d) < 1e-10;
     }
 
+    /**
+     * Largest denominator tried when reading a coefficient as rational number
+     */
+    long MAX_DENOMINATOR = 1 << 20;
+
+    /**
+     * Closest rational num/den (den > 0, den <= MAX_DENOMINATOR) within 1e-12 relative, by continued fractions
+     *
+     * @return {num, den} or null if none found
+     */
+    static long[] rational(double x) {
+        double abs = Math.abs(x);
+        if (Double.isNaN(x) || abs >= 1L << 40) return null;
+        long h0 = 0, h1 = 1, k0 = 1, k1 = 0; //convergents h/k
+        double rest = abs;
+        while (true) {
+            long a = (long) Math.floor(rest);
+            long h = a * h1 + h0, k = a * k1 + k0;
+            if (k > MAX_DENOMINATOR) return null;
+            if (Math.abs(abs - (double) h / k) <= 1e-12 * Math.max(1, abs)) {
+                return new long[]{x < 0 ? -h : h, k};
+            }
+            h0 = h1;
+            h1 = h;
+            k0 = k1;
+            k1 = k;
+            double frac = rest - a;
+            if (frac == 0) return null;
+            rest = 1 / frac;
+        }
+    }
+
+    /**
+     * 64-bit finalizer of SplitMix64, spreads all input bits
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * FNV-1a of the chars, stable across JVM runs (unlike identity hashes)
+     */
+    private static long fnv64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
     class Term implements Comparable<Term> {
         public static final Pattern EXPECT_AZ_SYMBOL_PATTERN = Pattern.compile("[a-zA-Z_ ]+.*");
         private final List<String> product = new ArrayList<>();
+        private long fingerprint; //0 <=> not computed (or empty term)
+        PolynomialOrder.OrderKey orderKey; //key under the last order used, see MonomialOrder.key
 
         public Term() {}
 
@@ -57,6 +147,7 @@ public interface SymbolMath {
             t.product.addAll(product);
             t.product.addAll(o.product);
             t.sort();
+            t.fingerprint = fingerprint() + o.fingerprint();
             return t;
         }
 
@@ -69,30 +160,57 @@ public interface SymbolMath {
                 if (!t.product.remove(s)) return null;
             }
             t.sort();
+            t.fingerprint = fingerprint() - o.fingerprint();
             return t;
         }
 
-        void sort() {Collections.sort(product);}
+        void sort() {
+            Collections.sort(product);
+            fingerprint = 0;
+            orderKey = null;
+        }
+
+        /**
+         * Sum of hashed symbols: independent of symbol order, additive under multiplyIm
+         */
+        public long fingerprint() {
+            long fp = fingerprint;
+            if (fp == 0 && !product.isEmpty()) {
+                for (var s : product) {
+                    fp += mix64(fnv64(s));
+                }
+                fingerprint = fp;
+            }
+            return fp;
+        }
+
+        public int degree() {
+            return product.size();
+        }
+
+        /**
+         * @return sorted symbols, repeated by exponent
+         */
+        public List<String> symbols() {
+            return Collections.unmodifiableList(product);
+        }
 
         @Override
         public final boolean equals(Object o) {
             if (!(o instanceof Term term)) return false;
-            sort();
-            term.sort();
             return product.equals(term.product);
         }
 
         @Override
         public int hashCode() {
-            return product.size();
+            long fp = fingerprint();
+            return (int) (fp ^ (fp >>> 32));
         }
 
         @Override
         public int compareTo(Term o) {
             int diff = product.size() - o.product.size();
             if (diff != 0) return -diff;
-            sort();
-            o.sort();
             var a = product.iterator();
             var b = o.product.iterator();
             while (a.hasNext() && b.hasNext()) {
@@ -112,7 +230,9 @@ public interface SymbolMath {
      * Multivariate Polynomial
      */
     class MVPolynomial {
-        private final Map<Term, Double> map = new TreeMap<>();
+        private final TermMap map = new TermMap();
+        // sums over entries, updated together with the map
+        private long termsFingerprint, fingerprint;
         String label;
 
         public static MVPolynomial parse(String expression) {
@@ -133,17 +253,86 @@ public interface SymbolMath {
                       .reduce(Integer::sum).orElse(0);
         }
 
+        public Set<Term> terms() {
+            return Collections.unmodifiableSet(map.keySet());
+        }
+
+        /**
+         * @return coefficient of term, 0 if absent
+         */
+        public double coefficient(Term term) {
+            return map.getOrDefault(term, 0.0);
+        }
+
         public boolean isZero() {
             removeEmpty();
             return map.isEmpty();
         }
 
+        /**
+         * Numeric content, see PolynomialGcd.content
+         */
+        public double content() {
+            return PolynomialGcd.content(this);
+        }
+
+        public MVPolynomial primitivePart() {
+            return PolynomialGcd.primitivePart(this);
+        }
+
+        public MVPolynomial gcd(MVPolynomial other) {
+            return PolynomialGcd.gcd(this, other);
+        }
+
+        /**
+         * Randomized zero test respecting the rules of SymbolMathContext.current(), see PolynomialRandomized
+         */
+        public boolean isZeroProbably() {
+            return PolynomialRandomized.isZeroProbably(this, PolynomialRandomized.Config.defaults());
+        }
+
+        public boolean equalsProbably(MVPolynomial other) {
+            return PolynomialRandomized.equalsProbably(this, other, PolynomialRandomized.Config.defaults());
+        }
+
         public MVPolynomial copy() {
             var s = new MVPolynomial();
             s.map.putAll(map);
+            s.termsFingerprint = termsFingerprint;
+            s.fingerprint = fingerprint;
             return s;
         }
 
+        /**
+         * Content fingerprint: sum of hashed (term, exact coefficient) entries,
+         * so fingerprint(p + q) = fingerprint(p) + fingerprint(q) for disjoint terms.
+         * Stable across JVM runs; equal fingerprints mean equal content with high probability.
+         */
+        public long fingerprint() {
+            removeEmpty();
+            return fingerprint;
+        }
+
+        static long entryFingerprint(Term t, double value) {
+            long bits = Double.doubleToLongBits(value == 0 ? 0 : value); //-0.0 == 0.0
+            return mix64(t.fingerprint() * 0x9e3779b97f4a7c15L + mix64(bits));
+        }
+
+        private void account(Term t, Double value, int sign) {
+            if (value == null) return;
+            termsFingerprint += sign * mix64(t.fingerprint());
+            fingerprint += sign * entryFingerprint(t, value);
+        }
+
+        private void put(Term t, double value) {
+            account(t, map.put(t, value), -1);
+            account(t, value, 1);
+        }
+
+        private void remove(Term t) {
+            account(t, map.remove(t), -1);
+        }
+
         public MVPolynomial add(double scalar) {
             return add(new Term(), scalar);
         }
@@ -173,16 +362,19 @@ public interface SymbolMath {
         public MVPolynomial add(Term term, double scalar) {
             if (!zero(scalar) && term != null) {
                 map.compute(term, (t, s) -> {
-                    if (s == null) return scalar;
-                    double k = s + scalar;
-                    return zero(k) ? null : k;
+                    account(t, s, -1);
+                    Double k = s == null ? scalar : s + scalar;
+                    if (zero(k)) return null;
+                    account(t, k, 1);
+                    return k;
                 });
             }
             return this;
         }
 
         public MVPolynomial addIm(MVPolynomial other, double scalar) {
-            return new MVPolynomial().add(this).add(other, scalar);
+            removeEmpty();
+            return copy().add(other, scalar);
         }
 
         public MVPolynomial addIm(MVPolynomial other) {
@@ -202,11 +394,19 @@ public interface SymbolMath {
         }
 
         public MVPolynomial multiplyIm(Term term, double scalar) {
+            return multiplyIm(term, scalar, term == null ? Truncation.NONE : SymbolMathContext.current().truncation());
+        }
+
+        /**
+         * Product with a monomial: distinct terms stay distinct, so entries are put without merging
+         */
+        private MVPolynomial multiplyIm(Term term, double scalar, Truncation truncation) {
             var st = new MVPolynomial();
             if (zero(scalar)) return st;
-            map.forEach((t, s) ->
-                    st.map.put(t.multiplyIm(term), s * scalar)
-            );
+            map.forEach((t, s) -> {
+                var product = t.multiplyIm(term);
+                if (truncation.accepts(product)) st.put(product, s * scalar);
+            });
             st.removeEmpty();
             return st;
         }
@@ -223,8 +423,26 @@ public interface SymbolMath {
         }
 
         public MVPolynomial multiplyIm(MVPolynomial other, double factor) {
+            return multiplyIm(other, factor, SymbolMathContext.current().truncation());
+        }
+
+        /**
+         * Multiply, products above the truncation caps are skipped before they are built
+         */
+        public MVPolynomial multiplyIm(MVPolynomial other, double factor, Truncation truncation) {
             var res = new MVPolynomial(); //empty <=> 0
             if (other == null || zero(factor)) return res; //null <=> 0
+            if (other.map.size() == 1) { //constant or single term: no term merging
+                return multiplyIm(other.map.singleKey(), factor * other.map.singleValue(), truncation);
+            }
+            if (map.size() == 1) {
+                return other.multiplyIm(map.singleKey(), factor * map.singleValue(), truncation);
+            }
+            if (!truncation.isNone()) {
+                multiplyTruncated(other, factor, truncation, res);
+                res.removeEmpty();
+                return res;
+            }
             for (var e1 : map.entrySet()) {
                 double val = factor * e1.getValue();
                 for (var e2 : other.map.entrySet()) {
@@ -238,54 +456,178 @@ public interface SymbolMath {
             return res;
         }
 
-        public static MVPolynomial multiplyIm(MVPolynomial self, MVPolynomial other, double factor) {
-            if (self == null || other == null) return new MVPolynomial();
-            return self.multiplyIm(other, factor);
+        private void multiplyTruncated(MVPolynomial other, double factor, Truncation truncation, MVPolynomial res) {
+            int n = other.map.size();
+            var terms = new Term[n];
+            var values = new double[n];
+            var degrees = new int[n]; //non-increasing: map is ordered by degree, highest first
+            var exponents = new int[n][];
+            int k = 0;
+            for (var e : other.map.entrySet()) {
+                terms[k] = e.getKey();
+                values[k] = e.getValue();
+                degrees[k] = e.getKey().degree();
+                exponents[k++] = truncation.exponents(e.getKey());
+            }
+            for (var e1 : map.entrySet()) {
+                int d1 = e1.getKey().degree();
+                int[] x1 = truncation.exponents(e1.getKey());
+                double val = factor * e1.getValue();
+                for (int j = firstOfDegreeAtMost(degrees, truncation.maxDegree() - d1); j < n; j++) {
+                    if (truncation.withinCaps(x1, exponents[j])) {
+                        res.add(e1.getKey().multiplyIm(terms[j]), val * values[j]);
+                    }
+                }
+            }
         }
 
-        private record STerm(double scalar, Term term) {
-            STerm divide(STerm other) {
-                Term res = term.divideIm(other.term);
-                return res == null || zero(other.scalar()) ? null
-                        : new STerm(scalar / other.scalar(), res);
+        private static int firstOfDegreeAtMost(int[] degrees, long max) {
+            int lo = 0, hi = degrees.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (degrees[mid] > max) lo = mid + 1;
+                else hi = mid;
             }
+            return lo;
+        }
+
+        public MVPolynomial truncateIm(Truncation truncation) {
+            var out = new MVPolynomial();
+            map.forEach((t, s) -> {
+                if (truncation.accepts(t)) out.put(t, s);
+            });
+            return out;
         }
 
-        private static STerm highestDegreeTerm(MVPolynomial s) {
-            return s == null ? null :
-                    s.map.entrySet().stream().findFirst()
-                         .map(e -> new STerm(e.getValue(), e.getKey()))
-                         .orElse(null);
+        public static MVPolynomial multiplyIm(MVPolynomial self, MVPolynomial other, double factor) {
+            if (self == null || other == null) return new MVPolynomial();
+            return self.multiplyIm(other, factor);
         }
 
         public record Divided(MVPolynomial ans, MVPolynomial remain) {
         }
 
-        public Divided divideIm(MVPolynomial div) {
-            var ans = new MVPolynomial();
-            var remain = this;
-            STerm d = highestDegreeTerm(div);
-            if (d == null) return new Divided(ans, remain);
-            while (!remain.isZero()) {
-                STerm r = highestDegreeTerm(remain);
-                if (r == null) break;
-                STerm partial = r.divide(d);
-                if (partial == null) break;
-                ans.add(partial.term, partial.scalar);
-                remain = remain.minusIm(div.multiplyIm(partial.term, partial.scalar));
+        /**
+         * Term -> coefficient in TreeMap order. Most cells are zero, a constant or a single term:
+         * those keep their entry inline; the TreeMap is created when a second term arrives.
+         */
+        private static final class TermMap extends AbstractMap<Term, Double> {
+            private Term key; //the single entry, while tree == null
+            private double value;
+            private TreeMap<Term, Double> tree;
+
+            Term singleKey() {
+                return tree == null ? key : tree.firstKey();
+            }
+
+            double singleValue() {
+                return tree == null ? value : tree.firstEntry().getValue();
+            }
+
+            private void promote() {
+                tree = new TreeMap<>();
+                if (key != null) tree.put(key, value);
+                key = null;
+            }
+
+            @Override
+            public int size() {
+                return tree != null ? tree.size() : key == null ? 0 : 1;
+            }
+
+            @Override
+            public boolean containsKey(Object k) {
+                return tree != null ? tree.containsKey(k) : key != null && key.equals(k);
+            }
+
+            @Override
+            public Double get(Object k) {
+                if (tree != null) return tree.get(k);
+                return key != null && key.equals(k) ? value : null;
+            }
+
+            @Override
+            public Double put(Term k, Double v) {
+                if (tree != null) return tree.put(k, v);
+                if (key == null || key.equals(k)) {
+                    Double old = key == null ? null : value;
+                    key = k;
+                    value = v;
+                    return old;
+                }
+                promote();
+                return tree.put(k, v);
+            }
+
+            @Override
+            public Double remove(Object k) {
+                if (tree != null) return tree.remove(k);
+                if (key == null || !key.equals(k)) return null;
+                key = null;
+                return value;
+            }
+
+            @Override
+            public Double compute(Term k, BiFunction<? super Term, ? super Double, ? extends Double> fn) {
+                if (tree != null) return tree.compute(k, fn);
+                Double old = get(k);
+                Double v = fn.apply(k, old);
+                if (v == null) {
+                    if (old != null) key = null;
+                } else {
+                    put(k, v);
+                }
+                return v;
+            }
+
+            @Override
+            public void putAll(Map<? extends Term, ? extends Double> m) {
+                if (isEmpty() && m instanceof TermMap other) {
+                    key = other.key;
+                    value = other.value;
+                    tree = other.tree == null ? null : new TreeMap<>(other.tree); //linear copy of a sorted map
+                    return;
+                }
+                super.putAll(m);
+            }
+
+            @Override
+            public void forEach(BiConsumer<? super Term, ? super Double> action) {
+                if (tree != null) tree.forEach(action);
+                else if (key != null) action.accept(key, value);
+            }
+
+            @Override
+            public void clear() {
+                key = null;
+                tree = null;
+            }
+
+            @Override
+            public Set<Entry<Term, Double>> entrySet() {
+                if (tree != null) return tree.entrySet();
+                return key == null ? Set.of() : Set.of(new SimpleImmutableEntry<>(key, value));
             }
-            return new Divided(ans, remain);
+        }
+
+        /**
+         * Division with remainder in the map's term order (geobucket, see PolynomialDivision)
+         */
+        public Divided divideIm(MVPolynomial div) {
+            if (div == null || div.isZero()) return new Divided(new MVPolynomial(), this);
+            var d = PolynomialDivision.divide(this, div);
+            return new Divided(d.quotients().get(0), d.remainder());
         }
 
         void removeEmpty() {
             var toRemove = map.entrySet().stream()
                               .filter(e -> zero(e.getValue()))
                               .map(Map.Entry::getKey).toList();
-            toRemove.forEach(map::remove);
+            toRemove.forEach(this::remove);
         }
 
         public MVPolynomial substituteTermsIm() {
-            return substituteTermsIm(SubstituteRules.get());
+            return substituteTermsIm(SymbolMathContext.current().substituteTerms());
         }
 
         public MVPolynomial substituteTermsIm(String fromTerm, String toExpression) {
@@ -307,6 +649,13 @@ public interface SymbolMath {
             return r;
         }
 
+        /**
+         * Search for the smallest expression reachable by the rules, see PolynomialSimplify
+         */
+        public MVPolynomial simplifyIm(SubstituteTerms subst) {
+            return PolynomialSimplify.simplify(this, subst).result();
+        }
+
         public MVPolynomial substituteTermsIm(Term sub, MVPolynomial repl) {
             var out = new MVPolynomial();
             var replCount = new AtomicInteger();
@@ -359,19 +708,26 @@ public interface SymbolMath {
             return out;
         }
 
+        /**
+         * @return greatest term under order, null if zero
+         */
+        public Term leadingTerm(Comparator<Term> order) {
+            return map.keySet().stream().max(order).orElse(null);
+        }
+
+        /**
+         * PolynomialFormat.Format.defaults(); write to an Appendable there for large polynomials
+         */
         @Override
         public String toString() {
-            var sb = new StringBuilder();
-            map.forEach((term, value) -> {
-                String v = DF.format(Math.abs(value));
-                String s = term.toString();
-                sb.append(sb.isEmpty()
-                          ? (value < 0 ? "−" : "")
-                          : (value < 0 ? " − " : " + "))
-                  .append(s.isEmpty() || !"1".equals(v) ? v : "")
-                  .append(s);
-            });
-            return sb.isEmpty() ? "0" : sb.toString();
+            return PolynomialFormat.Format.defaults().toString(this);
+        }
+
+        /**
+         * Terms printed greatest first under order
+         */
+        public String toString(Comparator<Term> order) {
+            return PolynomialFormat.Format.defaults().toString(this, order);
         }
 
         @Override
@@ -397,9 +753,13 @@ public interface SymbolMath {
             return true;
         }
 
+        /**
+         * Hashes the term set only, consistent with equals (coefficients compared within tolerance)
+         */
         @Override
         public int hashCode() {
-            return map.hashCode();
+            removeEmpty();
+            return (int) (termsFingerprint ^ (termsFingerprint >>> 32));
         }
     }
 
@@ -440,8 +800,8 @@ public interface SymbolMath {
                 var op = getOp(matcher.group(1), pos++);
                 var poly = "(".equals(val) ? parse() : parseNumVal(val);
                 switch (op) {
-                    case "*-" -> prod = poly.multiplyIm(prod, -1);
-                    case "*" -> prod = poly.multiplyIm(prod);
+                    case "*-" -> prod = poly.multiplyIm(prod, -1, Truncation.NONE); //literals are never truncated
+                    case "*" -> prod = poly.multiplyIm(prod, 1, Truncation.NONE);
                     case "+", "--" -> {
                         sum.add(prod);
                         prod = poly;
@@ -514,6 +874,105 @@ public interface SymbolMath {
         }
     }
 
+    /**
+     * Degree caps for series arithmetic: products with total degree above maxDegree,
+     * or with a capped variable above its maximum exponent, are never created.
+     * Active through the current SymbolMathContext (or TruncationRules of a legacy thread), or passed to a single multiply.
+     */
+    final class Truncation {
+        public static final Truncation NONE = new Truncation(Integer.MAX_VALUE, new String[0], new int[0]);
+        private final int maxDegree;
+        private final String[] variables; //sorted
+        private final int[] maxExponents;
+
+        private Truncation(int maxDegree, String[] variables, int[] maxExponents) {
+            this.maxDegree = maxDegree;
+            this.variables = variables;
+            this.maxExponents = maxExponents;
+        }
+
+        public static Truncation totalDegree(int maxDegree) {
+            return NONE.withMaxDegree(maxDegree);
+        }
+
+        public Truncation withMaxDegree(int maxDegree) {
+            if (maxDegree < 0) throw new IllegalArgumentException("negative degree");
+            return new Truncation(maxDegree, variables, maxExponents);
+        }
+
+        public Truncation withMaxExponent(String variable, int maxExponent) {
+            if (maxExponent < 0) throw new IllegalArgumentException("negative exponent");
+            int i = Arrays.binarySearch(variables, variable);
+            if (i >= 0) {
+                var caps = maxExponents.clone();
+                caps[i] = maxExponent;
+                return new Truncation(maxDegree, variables, caps);
+            }
+            int at = -i - 1;
+            var vars = new String[variables.length + 1];
+            var caps = new int[vars.length];
+            System.arraycopy(variables, 0, vars, 0, at);
+            System.arraycopy(maxExponents, 0, caps, 0, at);
+            vars[at] = variable;
+            caps[at] = maxExponent;
+            System.arraycopy(variables, at, vars, at + 1, variables.length - at);
+            System.arraycopy(maxExponents, at, caps, at + 1, variables.length - at);
+            return new Truncation(maxDegree, vars, caps);
+        }
+
+        public int maxDegree() {return maxDegree;}
+
+        public boolean isNone() {
+            return maxDegree == Integer.MAX_VALUE && variables.length == 0;
+        }
+
+        /**
+         * @return exponents of the capped variables in term
+         */
+        int[] exponents(Term term) {
+            var out = new int[variables.length];
+            if (out.length == 0) return out;
+            for (var s : term.product) {
+                int i = Arrays.binarySearch(variables, s);
+                if (i >= 0) out[i]++;
+            }
+            return out;
+        }
+
+        boolean withinCaps(int[] a, int[] b) {
+            for (int i = 0; i < maxExponents.length; i++) {
+                if (a[i] + b[i] > maxExponents[i]) return false;
+            }
+            return true;
+        }
+
+        public boolean accepts(Term term) {
+            if (isNone()) return true;
+            return term.degree() <= maxDegree && withinCaps(exponents(term), new int[variables.length]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Truncation t && maxDegree == t.maxDegree
+                   && Arrays.equals(variables, t.variables) && Arrays.equals(maxExponents, t.maxExponents);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * maxDegree + Arrays.hashCode(variables)) + Arrays.hashCode(maxExponents);
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder("Truncation{");
+            if (maxDegree != Integer.MAX_VALUE) sb.append("degree<=").append(maxDegree);
+            for (int i = 0; i < variables.length; i++) {
+                sb.append(sb.length() > 11 ? ", " : "").append(variables[i]).append("<=").append(maxExponents[i]);
+            }
+            return sb.append("}").toString();
+        }
+    }
+
     static MVPolynomial dotProduct(MVPolynomial[] a, MVPolynomial... b) {
         var res = new MVPolynomial();
         if (a.length != b.length) throw new IllegalArgumentException("different vector lengths");
@@ -524,7 +983,7 @@ public interface SymbolMath {
         return res;
     }
 
-    class Matrix {
+    class Matrix implements MatrixView {
         public final int nRows, nCols;
         public final MVPolynomial[] cells;
         //Equivalent semantics: cells[i]=null <=> cells[i].isZero()
@@ -534,6 +993,8 @@ public interface SymbolMath {
         static final LinkedList<Matrix> logRingBuf = new LinkedList<>();
         private String label = "";
         private String opArgs;
+        private final Map<Integer, Matrix> powCache = new HashMap<>(); //guarded by itself
+        private PowKey powCacheKey;
         private static volatile Consumer<String> logConsumer;
 
         public static void setLogConsumer(Consumer<String> c) {
@@ -559,6 +1020,21 @@ public interface SymbolMath {
             }
         }
 
+        @Override
+        public int nRows() {
+            return nRows;
+        }
+
+        @Override
+        public int nCols() {
+            return nCols;
+        }
+
+        @Override
+        public MatrixView.IndexView indexView() {
+            return MatrixView.IndexView.of(this);
+        }
+
         public static Matrix parse(String fullMatrix) {
             int ix = fullMatrix.indexOf("}");
             if (ix >= 0) {
@@ -633,6 +1109,21 @@ public interface SymbolMath {
             return this;
         }
 
+        /**
+         * Computed from the cells: cells[] is public, so a stored flag could go stale
+         */
+        public boolean isSymmetric() {
+            if (nRows != nCols) return false;
+            for (int row = 0; row < nRows; row++) {
+                for (int col = row + 1; col < nCols; col++) {
+                    var a = cells[row * nCols + col];
+                    var b = cells[col * nCols + row];
+                    if (a == null ? b != null && !b.isZero() : !a.equals(b)) return false;
+                }
+            }
+            return true;
+        }
+
         public Matrix transposeIm() {
             var out = new Matrix(nCols, nRows);
             iterateNonNull((pos, row, col, cell) ->
@@ -657,8 +1148,7 @@ public interface SymbolMath {
             var out = new Matrix(nRows, nCols);
             iterate((pos, r, c, a) -> {
                 var b = right.cells[pos];
-                out.cells[pos] = (a == null && b == null) ?
-                        null : new MVPolynomial().add(a).add(b, scalar);
+                out.cells[pos] = (a == null && b == null) ? null : new MVPolynomial().add(a).add(b, scalar);
             });
             out.logOp(id + ".add(" + scalar + " * matrix " + right.id + ")");
             return out;
@@ -675,8 +1165,7 @@ public interface SymbolMath {
          */
         public Matrix multiplyIm(double scalar, Term term) {
             var out = new Matrix(nRows, nCols);
-            iterateNonNull((pos, row, col, cell) ->
-                    out.cells[pos] = cell.multiplyIm(term, scalar));
+            mapCellsTo(out, cell -> cell.multiplyIm(term, scalar));
             var t = term == null ? "" : " * " + term;
             out.logOp(id + ".multiplyIm(" + scalar + t + ")");
             return out;
@@ -689,8 +1178,7 @@ public interface SymbolMath {
         public Matrix multiplyIm(double scalar, MVPolynomial expression) {
             var out = new Matrix(nRows, nCols);
             if (expression == null || expression.isZero()) return out;
-            iterateNonNull((pos, row, col, cell) ->
-                    out.cells[pos] = cell.multiplyIm(expression, scalar));
+            mapCellsTo(out, cell -> cell.multiplyIm(expression, scalar));
             out.logOp(id + ".multiply(expr '" + expression + "')");
             return out;
         }
@@ -699,11 +1187,53 @@ public interface SymbolMath {
             return multiplyIm(1, right);
         }
 
+        /**
+         * Multiply with truncation applied to this operation only
+         */
+        public Matrix multiplyIm(Matrix right, Truncation truncation) {
+            return multiplyIm(right, SymbolMathContext.current().withTruncation(truncation));
+        }
+
+        public Matrix truncateIm(Truncation truncation) {
+            var out = new Matrix(nRows, nCols);
+            mapCellsTo(out, cell -> cell.truncateIm(truncation));
+            out.logOp(id + ".truncateIm(" + truncation + ")");
+            return out;
+        }
+
+        /**
+         * Multiply under context instead of the one of this thread
+         */
+        public Matrix multiplyIm(Matrix right, SymbolMathContext.Context context) {
+            return context.call(() -> multiplyIm(1, right));
+        }
+
+        /**
+         * Rules, truncation and tolerance of SymbolMathContext.current() apply
+         */
         public Matrix multiplyIm(double factor, Matrix right) {
             if (nCols != right.nRows) {
                 throw new IllegalArgumentException("multiply: nCols != other.nRows");
             }
+            var context = SymbolMathContext.current();
+            return context.traced("multiply", () -> multiplyIm(factor, right, context));
+        }
+
+        private Matrix multiplyIm(double factor, Matrix right, SymbolMathContext.Context context) {
             var out = new Matrix(nRows, right.nCols);
+            if (MatrixSparse.preferSparse(this, right)) {
+                MatrixSparse.SparseMatrix.from(this)
+                                         .multiplyIm(MatrixSparse.SparseMatrix.from(right), factor, context.truncation())
+                                         .copyTo(out);
+                out.logOp(id + ".multiply(sparse matrix " + right.id + ")");
+                return out.applyContext(context);
+            }
+            var strassen = MatrixMultiply.Strassen.ifPreferred(factor, context.truncation(), this, right);
+            if (strassen != null) {
+                strassen.multiply(this, right, out);
+                out.logOp(id + ".multiply(strassen matrix " + right.id + ")");
+                return out.applyContext(context);
+            }
             out.iterate((pos, row, col, cell) -> {
                 var elem = out.cells[pos] = new MVPolynomial();
                 int rightPos = col;
@@ -712,13 +1242,66 @@ public interface SymbolMath {
                     var l = cells[leftPos++];
                     var r = right.cells[rightPos];
                     if (l != null && r != null) { //null <=> 0
-                        elem.add(l.multiplyIm(r, factor));
+                        elem.add(l.multiplyIm(r, factor, context.truncation()));
                     }
                     rightPos += out.nCols;
                 }
             });
             out.logOp(id + ".multiply(matrix " + right.id + ")");
-            return out.substituteTermsIm(SubstituteRules.get());
+            return out.applyContext(context);
+        }
+
+        /**
+         * Gram matrix this * transpose(this), symmetric
+         */
+        public Matrix gramIm() {
+            return multiplyTransposeIm(this);
+        }
+
+        /**
+         * this * transpose(right), reading right by rows instead of building its transpose.
+         * For right == this only cells (i, j), i <= j are computed and reduced by the context; (j, i) gets a copy.
+         */
+        public Matrix multiplyTransposeIm(Matrix right) {
+            if (nCols != right.nCols) {
+                throw new IllegalArgumentException("multiplyTranspose: nCols != other.nCols");
+            }
+            boolean gram = right == this;
+            var context = SymbolMathContext.current();
+            //rule by rule, as Matrix.substituteTermsIm(SubstituteTerms)
+            var rules = context.substituteTerms().list.stream().map(st -> new SubstituteTerms().add(st)).toList();
+            var out = new Matrix(nRows, right.nRows);
+            for (int row = 0; row < nRows; row++) {
+                for (int col = gram ? row : 0; col < right.nRows; col++) {
+                    var elem = new MVPolynomial();
+                    int leftPos = row * nCols;
+                    int rightPos = col * nCols;
+                    for (int i = 0; i < nCols; i++) {
+                        var l = cells[leftPos + i];
+                        var r = right.cells[rightPos + i];
+                        if (l != null && r != null) { //null <=> 0
+                            elem.add(l.multiplyIm(r, 1, context.truncation()));
+                        }
+                    }
+                    for (var rule : rules) {
+                        elem = elem.substituteTermsIm(rule);
+                    }
+                    elem = context.clean(elem);
+                    out.cells[row * out.nCols + col] = elem;
+                    if (gram && col != row) out.cells[col * out.nCols + row] = elem.copy();
+                }
+            }
+            out.logOp(id + ".multiplyTranspose(matrix " + right.id + ")");
+            return out;
+        }
+
+        /**
+         * Rules of context, then its tolerance in place; only for a matrix just built by this thread
+         */
+        private Matrix applyContext(SymbolMathContext.Context context) {
+            var out = substituteTermsIm(context.substituteTerms());
+            context.clean(out.cells);
+            return out;
         }
 
         public Matrix substituteTermsIm(SubstituteTerms subst) {
@@ -741,10 +1324,10 @@ public interface SymbolMath {
         public Matrix substituteTermsCoreIm(SubstituteTerms st) {
             var out = new Matrix(nRows, nCols);
             var replCount = new AtomicInteger();
-            iterateNonNull((pos, row, col, cell) -> {
+            mapCellsTo(out, cell -> {
                 var replaced = cell.substituteTermsIm(st);
                 if (replaced != cell) replCount.incrementAndGet();
-                out.cells[pos] = replaced;
+                return replaced;
             });
             if (replCount.get() > 0) {
                 out.label(label);
@@ -758,20 +1341,25 @@ public interface SymbolMath {
 
         public Matrix deriveIm(String variable) {
             var out = new Matrix(nRows, nCols);
-            iterateNonNull((pos, row, col, cell) ->
-                    out.cells[pos] = cell.deriveIm(variable));
+            mapCellsTo(out, cell -> cell.deriveIm(variable));
             out.logOp(id + ".derive(" + variable + ")");
             return out;
         }
 
         public Matrix integrateIm(String variable) {
             var out = new Matrix(nRows, nCols);
-            iterateNonNull((pos, row, col, cell) ->
-                    out.cells[pos] = cell.integrateIm(variable));
+            mapCellsTo(out, cell -> cell.integrateIm(variable));
             out.logOp(id + ".integrate(" + variable + ")");
             return out;
         }
 
+        /**
+         * Cell-wise map into out (same dimensions)
+         */
+        private void mapCellsTo(Matrix out, Function<MVPolynomial, MVPolynomial> fn) {
+            iterateNonNull((pos, row, col, cell) -> out.cells[pos] = fn.apply(cell));
+        }
+
         public double[] getAllScalars() {
             double[] scalars = new double[cells.length];
             for (int l = 0; l < cells.length; l++) {
@@ -795,35 +1383,158 @@ public interface SymbolMath {
             return res;
         }
 
-        public MVPolynomial determinant(SubstituteTerms subst) {
-            if (subst.list.isEmpty()) {
-                subst = SubstituteRules.get();
+        public MVPolynomial determinant(SubstituteTerm... st) {
+            return determinant(new SubstituteTerms().add(st));
+        }
+
+        public Matrix powIm(int exponent, SubstituteTerms subst) {
+            return powIm(exponent, subst, false);
+        }
+
+        /**
+         * Everything a cached power depends on: cell content, rules, and the context products read
+         */
+        private record PowKey(List<MVPolynomial> cells, List<SubstituteTerm> rules, boolean all,
+                              List<SubstituteTerm> contextRules, boolean contextAll,
+                              Truncation truncation, double tolerance) {
+            static PowKey of(Matrix m, SubstituteTerms subst, SymbolMathContext.Context context) {
+                var cells = new ArrayList<MVPolynomial>(m.cells.length);
+                for (var cell : m.cells) cells.add(cell == null ? null : cell.copy());
+                return new PowKey(cells, List.copyOf(subst.list), subst.all, context.rules(), context.allRules(),
+                                  context.truncation(), context.tolerance());
+            }
+
+            /**
+             * Same as of(m, subst, context).equals(this), without copying the cells
+             */
+            boolean matches(Matrix m, SubstituteTerms subst, SymbolMathContext.Context context) {
+                if (all != subst.all || !rules.equals(subst.list) || contextAll != context.allRules()
+                    || !contextRules.equals(context.rules()) || !Objects.equals(truncation, context.truncation())
+                    || tolerance != context.tolerance() || cells.size() != m.cells.length) return false;
+                for (int i = 0; i < m.cells.length; i++) {
+                    if (!Objects.equals(cells.get(i), m.cells[i])) return false;
+                }
+                return true;
             }
+        }
+
+        /**
+         * Matrix power by repeated squaring; all intermediate powers are cached on this matrix.
+         * The cache is cleared when cells, rules, truncation or tolerance differ from the previous call;
+         * callers get a copy, so mutating the result leaves the cache intact.
+         *
+         * @param cayleyHamilton reduce x^exponent modulo the characteristic polynomial,
+         *                       so only powers below the dimension are multiplied out
+         */
+        public Matrix powIm(int exponent, SubstituteTerms subst, boolean cayleyHamilton) {
             if (nCols != nRows) throw new IllegalStateException("Not square");
-            var mvp = new MVPolynomial();
-            if (nCols == 0) return mvp.add(0);
-            if (nCols == 1) return mvp.add(cells[0]);
-            if (nCols == 2) return mvp.add(MVPolynomial.multiplyIm(cells[0], cells[3], 1))
-                                      .add(MVPolynomial.multiplyIm(cells[1], cells[2], -1))
-                                      .substituteTermsIm(subst);
-            double sign = 1;
-            for (int col = 0; col < nCols; col++, sign = -sign) {
-                var cell = cells[col]; //row = 0
-                if (cell != null && !cell.isZero()) {
-                    mvp = mvp.add(subMatrixSkipRowCol(0, col).determinant(subst).multiplyIm(cell, sign))
-                             .substituteTermsIm(subst);
+            if (exponent < 0) throw new IllegalArgumentException("negative exponent");
+            if (exponent == 0) return identity(nRows);
+            Matrix out;
+            synchronized (powCache) {
+                var context = SymbolMathContext.current();
+                if (powCacheKey == null || !powCacheKey.matches(this, subst, context)) { //copies cells only on a miss
+                    powCache.clear();
+                    powCacheKey = PowKey.of(this, subst, context);
+                }
+                if (cayleyHamilton && exponent >= nRows) {
+                    out = powCache.get(exponent);
+                    if (out == null) {
+                        out = powCayleyHamilton(exponent, subst);
+                        powCache.put(exponent, out);
+                    }
+                } else {
+                    out = powCached(exponent, subst);
                 }
             }
-            return mvp;
+            return out.copy();
         }
 
-        public MVPolynomial determinant(SubstituteTerm... st) {
-            return determinant(new SubstituteTerms().add(st));
+        /**
+         * Deep copy, same label
+         */
+        public Matrix copy() {
+            var out = new Matrix(nRows, nCols);
+            iterateNonNull((pos, row, col, cell) -> out.cells[pos] = cell.copy());
+            return out.label(label);
+        }
+
+        private Matrix powCached(int exponent, SubstituteTerms subst) {
+            if (exponent == 1) return this;
+            var out = powCache.get(exponent);
+            if (out != null) return out;
+            if (exponent % 2 == 0) {
+                var half = powCached(exponent / 2, subst);
+                out = half.multiplyIm(half);
+            } else {
+                out = powCached(exponent - 1, subst).multiplyIm(this);
+            }
+            out = out.substituteTermsIm(subst).label(isEmpty(label) ? null : label + "^" + exponent);
+            powCache.put(exponent, out);
+            return out;
+        }
+
+        private Matrix powCayleyHamilton(int exponent, SubstituteTerms subst) {
+            var p = characteristicCoefficients(subst);
+            var r = powModCharPoly(exponent, p, subst);
+            var out = diagonal(nRows, r[0]);
+            for (int i = 1; i < nRows; i++) {
+                if (!r[i].isZero()) {
+                    out = out.addIm(powCached(i, subst).multiplyIm(1, r[i]));
+                }
+            }
+            out.logOp(id + ".pow(" + exponent + ", Cayley-Hamilton)");
+            return out.substituteTermsIm(subst).label(isEmpty(label) ? null : label + "^" + exponent);
+        }
+
+        /**
+         * Coefficients of x^exponent mod p(x), p monic of degree n = p.length - 1 (p[k] = coefficient of x^k)
+         */
+        private static MVPolynomial[] powModCharPoly(int exponent, MVPolynomial[] p, SubstituteTerms subst) {
+            int n = p.length - 1;
+            var base = new MVPolynomial[n];
+            for (int i = 0; i < n; i++) base[i] = new MVPolynomial();
+            if (n == 1) base[0].add(p[0], -1);
+            else base[1].add(1);
+            var result = new MVPolynomial[n];
+            for (int i = 0; i < n; i++) result[i] = new MVPolynomial();
+            result[0].add(1);
+            for (int e = exponent; e > 0; e >>= 1) {
+                if ((e & 1) != 0) result = multiplyModCharPoly(result, base, p, subst);
+                if (e > 1) base = multiplyModCharPoly(base, base, p, subst);
+            }
+            return result;
+        }
+
+        private static MVPolynomial[] multiplyModCharPoly(MVPolynomial[] a, MVPolynomial[] b,
+                                                          MVPolynomial[] p, SubstituteTerms subst) {
+            int n = p.length - 1;
+            var prod = new MVPolynomial[2 * n - 1];
+            for (int k = 0; k < prod.length; k++) prod[k] = new MVPolynomial();
+            for (int i = 0; i < n; i++) {
+                if (a[i].isZero()) continue;
+                for (int j = 0; j < n; j++) {
+                    prod[i + j].add(a[i].multiplyIm(b[j]));
+                }
+            }
+            for (int k = prod.length - 1; k >= n; k--) {
+                var top = prod[k];
+                if (top.isZero()) continue;
+                for (int i = 0; i < n; i++) {
+                    prod[k - n + i].add(top.multiplyIm(p[i], -1));
+                }
+            }
+            var out = new MVPolynomial[n];
+            for (int i = 0; i < n; i++) {
+                out[i] = prod[i].substituteTermsIm(subst);
+            }
+            return out;
         }
 
         @Override
         public final boolean equals(Object o) {
-            if (!(o instanceof Matrix matrix)) return false;
+            if (!(o instanceof MatrixView view)) return false;
+            if (!(o instanceof Matrix matrix)) return MatrixView.equalCells(this, view);
             if (nRows != matrix.nRows || nCols != matrix.nCols) {
                 return false;
             }
@@ -841,7 +1552,7 @@ public interface SymbolMath {
 
         @Override
         public int hashCode() {
-            return id;
+            return MatrixView.hashCells(this);
         }
 
         public String str() {
@@ -852,13 +1563,7 @@ public interface SymbolMath {
         @Override
         public String toString() {
             var lb = isEmpty(label) ? "" : " " + label;
-            var sb = new StringBuilder(" Matrix{" + id + lb + "}\n  ");
-            iterate((pos, row, col, cell) -> {
-                if (pos > 0 && col == 0) sb.append("\n  ");
-                sb.append(cell == null ? "0" : cell)
-                  .append(col < nCols - 1 ? ",  " : ";");
-            });
-            return sb.toString();
+            return " Matrix{" + id + lb + "}\n  " + PolynomialFormat.Format.defaults().toString(this);
         }
 
         public static void printMatrixRingBufAndClear() {
@@ -889,6 +1594,7 @@ public interface SymbolMath {
             }
         }
 
+        @Override
         public MVPolynomial cell(int row, int col) {
             if (col < 0 || col >= nCols)
                 throw new IllegalArgumentException("Col outside [0.." + nCols + ")");
@@ -897,6 +1603,9 @@ public interface SymbolMath {
 
         public void setCell(int row, int col, MVPolynomial poly) {
             cells[index(row, col)] = poly;
+            synchronized (powCache) {
+                powCache.clear();
+            }
         }
 
         public int index(int row, int col) {
@@ -915,10 +1624,10 @@ public interface SymbolMath {
          * @param matrix source (immutable)
          * @return SumOfTerms
          */
-        public static MVPolynomial trace(Matrix matrix) {
+        public static MVPolynomial trace(MatrixView matrix) {
             var st = new MVPolynomial();
             if (matrix == null) return st;
-            int N = Math.min(matrix.nRows, matrix.nCols);
+            int N = Math.min(matrix.nRows(), matrix.nCols());
             for (int i = 0; i < N; i++) {
                 st.add(matrix.cell(i, i));
             }
@@ -0,0 +1,238 @@
+package org.torcb.math;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Immutable settings of a computation: substitution rules, truncation, coefficient tolerance, parallelism and tracing.
+ * SubstituteRules and TruncationRules are per thread, so pool and virtual threads do not see the caller's rules.
+ * A Context is passed explicitly or bound for the extent of call/run; forked subtasks inherit it through
+ * map, wrap and executor. The polynomial products read their truncation from current().
+ * An unbound thread gets the defaults, unless it has itself set or read SubstituteRules or TruncationRules:
+ * only such legacy threads hold and snapshot thread rules.
+ */
+public interface SymbolMathContext {
+    /**
+     * Receives the duration of traced operations, called from the thread that ran them
+     */
+    @FunctionalInterface
+    interface Trace {
+        Trace NONE = (op, nanos) -> {};
+
+        void accept(String op, long nanos);
+    }
+
+    /**
+     * @param rules       applied after products and determinants, see SubstituteTerms
+     * @param allRules    SubstituteTerms.all
+     * @param tolerance   coefficients below are dropped from results; at least the 1e-10 of zero(double),
+     *                    which the core arithmetic always applies, so smaller tolerances are rejected
+     * @param parallelism worker threads of forked subtasks, 1 runs them in the calling thread
+     */
+    record Context(List<SubstituteTerm> rules, boolean allRules, Truncation truncation,
+                   double tolerance, int parallelism, Trace trace) {
+        public static final double DEFAULT_TOLERANCE = 1e-10;
+        private static final Context DEFAULT = new Context(List.of(), false, Truncation.NONE, DEFAULT_TOLERANCE,
+                                                           ForkJoinPool.getCommonPoolParallelism(), Trace.NONE);
+        private static final ThreadLocal<Context> BOUND = new ThreadLocal<>(); //no initial value: unbound threads hold nothing
+        private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+        public Context {
+            rules = List.copyOf(rules);
+            Objects.requireNonNull(truncation);
+            Objects.requireNonNull(trace);
+            if (!(tolerance >= DEFAULT_TOLERANCE)) throw new IllegalArgumentException("tolerance < " + DEFAULT_TOLERANCE);
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism < 1");
+        }
+
+        public static Context defaults() {
+            return DEFAULT;
+        }
+
+        /**
+         * Snapshot of SubstituteRules and TruncationRules of the current thread, created if absent
+         */
+        public static Context ofThread() {
+            return snapshot(SubstituteRules.get(), TruncationRules.get());
+        }
+
+        /**
+         * @return context bound to this thread; else a snapshot of the thread rules if the thread has any,
+         * else defaults() without creating thread rules
+         */
+        public static Context current() {
+            var bound = BOUND.get();
+            if (bound != null) return bound;
+            return snapshot(SubstituteRules.peek(), TruncationRules.peek());
+        }
+
+        private static Context snapshot(SubstituteTerms subst, Truncation truncation) {
+            boolean noRules = subst == null || subst.list.isEmpty() && !subst.all;
+            if (truncation == null) truncation = Truncation.NONE;
+            if (noRules && truncation == Truncation.NONE) return DEFAULT;
+            return (noRules ? DEFAULT : DEFAULT.withRules(subst)).withTruncation(truncation);
+        }
+
+        public Context withRules(SubstituteTerms subst) {
+            return new Context(subst.list, subst.all, truncation, tolerance, parallelism, trace);
+        }
+
+        public Context withTruncation(Truncation truncation) {
+            return new Context(rules, allRules, truncation, tolerance, parallelism, trace);
+        }
+
+        public Context withTolerance(double tolerance) {
+            return new Context(rules, allRules, truncation, tolerance, parallelism, trace);
+        }
+
+        public Context withParallelism(int parallelism) {
+            return new Context(rules, allRules, truncation, tolerance, parallelism, trace);
+        }
+
+        public Context withTrace(Trace trace) {
+            return new Context(rules, allRules, truncation, tolerance, parallelism, trace);
+        }
+
+        /**
+         * @return new mutable copy of the rules
+         */
+        public SubstituteTerms substituteTerms() {
+            return new SubstituteTerms().acceptAll(allRules).add(rules.toArray(new SubstituteTerm[0]));
+        }
+
+        public boolean zero(double d) {
+            return Math.abs(d) < tolerance;
+        }
+
+        /**
+         * Rules, then tolerance
+         */
+        public MVPolynomial apply(MVPolynomial p) {
+            return clean(rules.isEmpty() ? p : p.substituteTermsIm(allRules, rules.toArray(new SubstituteTerm[0])));
+        }
+
+        /**
+         * @return p without coefficients below tolerance, p itself if none is
+         */
+        public MVPolynomial clean(MVPolynomial p) {
+            if (p == null || tolerance == DEFAULT_TOLERANCE) return p;
+            MVPolynomial out = null;
+            for (var t : p.terms()) {
+                if (zero(p.coefficient(t))) {
+                    if (out == null) out = p.copy();
+                    out.add(t, -p.coefficient(t));
+                }
+            }
+            return out == null ? p : out;
+        }
+
+        /**
+         * clean, in place
+         */
+        public void clean(MVPolynomial[] cells) {
+            if (tolerance == DEFAULT_TOLERANCE) return;
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = clean(cells[i]);
+            }
+        }
+
+        /**
+         * Runs task with this context bound to the current thread
+         */
+        public <T> T call(Supplier<T> task) {
+            var saved = bind();
+            try {
+                return task.get();
+            } finally {
+                restore(saved);
+            }
+        }
+
+        public void run(Runnable task) {
+            var saved = bind();
+            try {
+                task.run();
+            } finally {
+                restore(saved);
+            }
+        }
+
+        /**
+         * @return task that runs with this context bound, in whichever thread
+         */
+        public Runnable wrap(Runnable task) {
+            return () -> run(task);
+        }
+
+        public <T> Callable<T> wrap(Callable<T> task) {
+            return () -> {
+                var saved = bind();
+                try {
+                    return task.call();
+                } finally {
+                    restore(saved);
+                }
+            };
+        }
+
+        /**
+         * @return context bound before, to restore
+         */
+        private Context bind() {
+            var saved = BOUND.get();
+            BOUND.set(this);
+            return saved;
+        }
+
+        private static void restore(Context saved) {
+            if (saved == null) BOUND.remove();
+            else BOUND.set(saved);
+        }
+
+        /**
+         * @return executor running every task with this context bound, e.g. over Executors.newVirtualThreadPerTaskExecutor()
+         */
+        public Executor executor(Executor executor) {
+            return task -> executor.execute(wrap(task));
+        }
+
+        /**
+         * fn(0..n-1) as forked subtasks that inherit this context, results in index order.
+         * Runs on the common pool, or a shared pool of this parallelism if smaller.
+         */
+        public <R> List<R> map(int n, IntFunction<R> fn) {
+            if (parallelism == 1 || n < 2) {
+                return call(() -> IntStream.range(0, n).mapToObj(fn).toList());
+            }
+            Supplier<List<R>> forked = () -> IntStream.range(0, n).parallel()
+                                                      .mapToObj(i -> call(() -> fn.apply(i)))
+                                                      .toList();
+            if (parallelism >= ForkJoinPool.getCommonPoolParallelism()) return forked.get();
+            var pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+            if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) return forked.get();
+            return pool.submit(forked::get).join();
+        }
+
+        /**
+         * body, reporting its duration to trace under op
+         */
+        public <T> T traced(String op, Supplier<T> body) {
+            if (trace == Trace.NONE) return body.get();
+            long start = System.nanoTime();
+            try {
+                return body.get();
+            } finally {
+                trace.accept(op, System.nanoTime() - start);
+            }
+        }
+    }
+
+    static Context current() {
+        return Context.current();
+    }
+}
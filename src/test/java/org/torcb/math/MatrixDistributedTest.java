@@ -0,0 +1,135 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.MatrixDistributed.*;
+import static org.torcb.math.SymbolMath.*;
+import static org.torcb.math.TestMatrices.*;
+
+public class MatrixDistributedTest {
+    private static final SubstituteTerms NO_RULES = new SubstituteTerms();
+
+    @Test
+    void testCodec() throws IOException {
+        var cells = new MVPolynomial[]{MVPolynomial.parse("x x y - 2.5 z + 3"), null, new MVPolynomial().add(1),
+                MVPolynomial.parse("y y y y")};
+        var bytes = new ByteArrayOutputStream();
+        var rules = new SubstituteTerms().acceptAll(true).add("x x", "1 - y y").add("z", "0");
+        try (var out = new DataOutputStream(bytes)) {
+            writeCells(out, cells);
+            writeRules(out, rules);
+            writeVarInt(out, 300);
+        }
+        var in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertArrayEquals(cells, readCells(in));
+        var read = readRules(in);
+        assertTrue(read.all);
+        assertEquals(rules.toString(), read.toString());
+        assertEquals(300, readVarInt(in));
+        assertTrue(bytes.size() < 200, "compact: " + bytes.size());
+    }
+
+    @Test
+    void testCodecRejectsHostileSizes() throws IOException {
+        var huge = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(huge)) {
+            writeVarInt(out, Integer.MAX_VALUE); //cells
+        }
+        assertThrows(IOException.class, () -> readCells(new DataInputStream(new ByteArrayInputStream(huge.toByteArray()))));
+        var exponent = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(exponent)) {
+            writeVarInt(out, 1);
+            writeVarInt(out, 1);
+            out.writeUTF("x");
+            writeVarInt(out, 2); //one term
+            writeVarInt(out, 1); //one run
+            writeVarInt(out, 0);
+            writeVarInt(out, Integer.MAX_VALUE); //x^(2^31-1)
+        }
+        assertThrows(IOException.class, () -> readCells(new DataInputStream(new ByteArrayInputStream(exponent.toByteArray()))));
+        var badIndex = exponent.toByteArray();
+        badIndex[7] = 3; //symbol index past the table
+        assertThrows(IOException.class, () -> readCells(new DataInputStream(new ByteArrayInputStream(badIndex))));
+    }
+
+    @Test
+    void testInProcess() throws IOException {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var a = symbolic(7, 1);
+        var b = symbolic(7, 2);
+        var rules = new SubstituteTerms().add("a a", "1 - b b");
+        try (var pool = WorkerPool.inProcess(3)) {
+            assertEquals(3, pool.size());
+            assertEquals(a.multiplyIm(b), pool.multiply(a, b, NO_RULES));
+            var substituted = pool.multiply(a, b, rules);
+            var expected = a.multiplyIm(b);
+            expected.iterate((pos, row, col, cell) ->
+                    assertEquals(cell == null ? null : cell.substituteTermsIm(rules), substituted.cells[pos]));
+            var c = symbolic(5, 3);
+            assertEquals(c.determinantBerkowitz(NO_RULES), pool.determinant(c, NO_RULES));
+            assertThrows(IllegalArgumentException.class, () -> pool.multiply(a, symbolic(3, 1), NO_RULES));
+        }
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testWorkerDeathRetried() throws IOException {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var a = symbolic(6, 4);
+        try (var pool = WorkerPool.inProcess(2, 1)) { //every connection serves one task, then drops
+            assertEquals(a.multiplyIm(a), pool.multiply(a, a, NO_RULES));
+            assertEquals(a.determinantBerkowitz(NO_RULES), pool.determinant(a, NO_RULES));
+        }
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testStaleConnectionsCostNoAttempt() throws IOException {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var row = new Matrix(1, 3).init("a", "b", "1");
+        var b = symbolic(3, 7);
+        try (var pool = WorkerPool.inProcess(4, 1)) { //each worker drops after one task: every connection goes stale
+            for (int job = 0; job < 20; job++) {
+                assertEquals(row.multiplyIm(b), pool.multiply(row, b, NO_RULES)); //one task, up to 4 stale connections
+            }
+        }
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testHungWorkerTimesOut() throws IOException {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var a = symbolic(3, 6);
+        //accepts connections in its backlog, never answers
+        try (var hung = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             var pool = WorkerPool.connect(List.of((InetSocketAddress) hung.getLocalSocketAddress()))) {
+            pool.setTaskTimeout(100);
+            var e = assertThrows(IllegalStateException.class, () -> pool.multiply(a, a, NO_RULES));
+            assertTrue(e.getCause().getMessage().contains("timed out"), e.getCause().toString());
+        }
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testProcesses() throws IOException {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var a = symbolic(5, 5);
+        try (var pool = WorkerPool.processes(2)) {
+            assertEquals(a.multiplyIm(a), pool.multiply(a, a, NO_RULES));
+            assertEquals(a.determinantBerkowitz(NO_RULES), pool.determinant(a, NO_RULES));
+        }
+        Matrix.logRingBuf.clear();
+    }
+}
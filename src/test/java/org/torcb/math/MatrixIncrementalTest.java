@@ -0,0 +1,84 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.MatrixIncremental.*;
+import static org.torcb.math.SymbolMath.*;
+import static org.torcb.math.TestMatrices.*;
+
+public class MatrixIncrementalTest {
+    private static final SubstituteTerms NO_RULES = new SubstituteTerms();
+
+    @Test
+    void testIncrementalProduct() {
+        Matrix.logRingBuf.clear();
+        var inc = new IncrementalProduct(sample(), sample().transposeIm(), NO_RULES);
+        inc.setLeftCell(1, 2, MVPolynomial.parse("x + 1"))
+           .setRightCell(3, 0, MVPolynomial.parse("y y"))
+           .setLeftCell(0, 0, null)
+           .setRightCell(2, 2, MVPolynomial.parse("-c"));
+        assertEquals(inc.left().multiplyIm(inc.right()), inc.product());
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testIncrementalProductUnderContext() {
+        Matrix.logRingBuf.clear();
+        var context = SymbolMathContext.Context.defaults().withTruncation(Truncation.totalDegree(2))
+                                               .withRules(new SubstituteTerms().add("a a", "1 - c"))
+                                               .withTolerance(1e-3);
+        var inc = new IncrementalProduct(sample(), sample().transposeIm(), context);
+        assertEquals(sample().multiplyIm(sample().transposeIm(), context), inc.product());
+        inc.setLeftCell(1, 2, MVPolynomial.parse("x y + 1"))
+           .setRightCell(3, 0, MVPolynomial.parse("0.0004 y + b"))
+           .setLeftCell(3, 3, MVPolynomial.parse("0.0007"))
+           .setRightCell(2, 2, MVPolynomial.parse("-c"));
+        assertEquals(inc.left().multiplyIm(inc.right(), context), inc.product());
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testIncrementalDeterminant() {
+        Matrix.logRingBuf.clear();
+        var inc = new IncrementalDeterminant(sample(), NO_RULES);
+        assertEquals(sample().determinant(), inc.determinant());
+        inc.setCell(0, 0, MVPolynomial.parse("x"))
+           .setCell(0, 3, MVPolynomial.parse("y"))
+           .setCell(2, 1, null)
+           .setCell(3, 3, MVPolynomial.parse("x y"));
+        assertEquals(inc.matrix().determinant(), inc.determinant());
+        inc.setRow(1, MVPolynomial.parse("1"), null, MVPolynomial.parse("z"), MVPolynomial.parse("2"));
+        assertEquals(inc.matrix().determinant(), inc.determinant());
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testIncrementalDeterminant6x6Cost() {
+        Matrix.logRingBuf.clear();
+        String[] vars = {"a", "b", "c", "d", "e", "f", "g", "h"};
+        var m = new Matrix(6, 6);
+        m.iterate((pos, row, col, cell) -> {
+            if (pos % 5 != 3) m.cells[pos] = MVPolynomial.parse(vars[(row + 2 * col) % 8] + " + " + (row * col % 3 + 1) + " " + vars[(row + col + 3) % 8]);
+        });
+        long full = System.nanoTime();
+        var expected = m.determinantBerkowitz(NO_RULES);
+        full = System.nanoTime() - full;
+        var inc = new IncrementalDeterminant(m, NO_RULES);
+        assertEquals(expected, inc.determinant());
+        assertEquals(0, inc.minorsComputed());
+        inc.setCell(2, 1, MVPolynomial.parse("x"));
+        assertEquals(1, inc.minorsComputed());
+        inc.setCell(2, 4, MVPolynomial.parse("y")).setCell(5, 1, MVPolynomial.parse("z")); //same row, same column
+        assertEquals(3, inc.minorsComputed()); //(2,4) and (5,1) were not cached yet
+        inc.setCell(2, 1, MVPolynomial.parse("x x")).setCell(5, 1, null);
+        assertEquals(3, inc.minorsComputed()); //column 1 was edited last: its cofactors are cached
+        long edit = System.nanoTime();
+        inc.setCell(4, 3, MVPolynomial.parse("w")); //elsewhere: one 5x5 minor
+        edit = System.nanoTime() - edit;
+        assertEquals(4, inc.minorsComputed());
+        assertEquals(inc.matrix().determinantBerkowitz(NO_RULES), inc.determinant());
+        assertTrue(edit < full, "edit " + edit / 1000 + "us vs full determinant " + full / 1000 + "us");
+        Matrix.logRingBuf.clear();
+    }
+}
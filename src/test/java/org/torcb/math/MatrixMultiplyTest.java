@@ -0,0 +1,69 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.SymbolMath.*;
+import static org.torcb.math.TestMatrices.*;
+
+public class MatrixMultiplyTest {
+
+    private static Matrix classicProduct(Matrix a, Matrix b) {
+        var out = new Matrix(a.nRows, b.nCols);
+        out.iterate((pos, row, col, cell) -> {
+            var sum = out.cells[pos] = new MVPolynomial();
+            for (int i = 0; i < a.nCols; i++) {
+                sum.add(a.cell(row, i).multiplyIm(b.cell(i, col)));
+            }
+        });
+        return out;
+    }
+
+    @Test
+    void testStrassen() {
+        Matrix.logRingBuf.clear();
+        for (int dim : new int[]{3, 8, 16}) {
+            var a = dense(dim, 1);
+            var b = dense(dim, 2);
+            var strassen = MatrixMultiply.Strassen.of(1, a, b);
+            var out = new Matrix(dim, dim);
+            strassen.multiply(a, b, out);
+            assertEquals(classicProduct(a, b), out);
+            if (dim >= 8) {
+                assertTrue(MatrixMultiply.preferStrassen(a, b));
+                long classic = MatrixMultiply.classicMultiplyCount(a, b);
+                double expectRatio = dim == 8 ? 0.9 : 0.8;
+                assertTrue(strassen.multiplies() < classic * expectRatio,
+                        strassen.multiplies() + " vs classic " + classic);
+            }
+        }
+        var rect = new Matrix(5, 3).init(Arrays.copyOf(dense(4, 3).cells, 15));
+        assertEquals(classicProduct(rect, dense(3, 4)), rect.multiplyIm(dense(3, 4)));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testCostModelPrefersClassicForDistinctTerms() {
+        Matrix.logRingBuf.clear();
+        int dim = 8;
+        var a = new Matrix(dim, dim);
+        a.iterate((pos, row, col, cell) -> a.cells[pos] = MVPolynomial.parse("x" + pos + " + y" + pos));
+        assertFalse(MatrixMultiply.preferStrassen(a, a));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testNoStatsBelowMinDim() {
+        var small = new MatrixMultiply.SizeStats(1, 1); //sums as small as a cell: most favorable to Strassen
+        for (double size : new double[]{1, 10, 1e3, 1e6}) {
+            for (int n = 2; n < MatrixMultiply.STRASSEN_MIN_DIM; n++) {
+                assertTrue(MatrixMultiply.strassenCost(n, size, size, small, small) >= MatrixMultiply.classicCost(n, size, size));
+            }
+        }
+        assertNull(MatrixMultiply.Strassen.ifPreferred(1, Truncation.NONE, dense(3, 1), dense(3, 2)));
+        var big = dense(16, 1);
+        assertNotNull(MatrixMultiply.Strassen.ifPreferred(1, Truncation.NONE, big, big));
+    }
+}
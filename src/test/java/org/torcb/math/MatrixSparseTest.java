@@ -0,0 +1,64 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.MatrixSparse.SparseMatrix;
+import static org.torcb.math.SymbolMath.*;
+
+public class MatrixSparseTest {
+
+    private static Matrix bandMatrix(int dim, String diag, String upper) {
+        var m = new Matrix(dim, dim);
+        for (int i = 0; i < dim; i++) {
+            m.setCell(i, i, MVPolynomial.parse(diag));
+            if (i + 1 < dim) m.setCell(i, i + 1, MVPolynomial.parse(upper));
+        }
+        return m;
+    }
+
+    @Test
+    void testSparseOps() {
+        Matrix.logRingBuf.clear();
+        var a = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        var b = Matrix.init3x3(
+                "x", "0", "0",
+                "0", "0", "y",
+                "0", "z", "0");
+        var sa = SparseMatrix.from(a);
+        var sb = SparseMatrix.from(b);
+        assertEquals(6, sa.nonZeros());
+        assertEquals(MVPolynomial.parse("-i"), sa.cell(1, 2));
+        assertNull(sa.cell(1, 1));
+        assertEquals(a.transposeIm(), sa.transposeIm().toDense());
+        assertEquals(a.addIm(b, -2), sa.addIm(sb, -2).toDense());
+        assertEquals(a.multiplyIm(b), sa.multiplyIm(sb).toDense());
+        assertEquals(b.multiplyIm(a), sb.multiplyIm(sa).toDense());
+        assertEquals(0, sa.addIm(sa, -1).nonZeros());
+        assertEquals(a.substituteTermsIm("k", "2 i"), sa.substituteTermsIm("k", "2 i").toDense());
+        assertEquals(a.hashCode(), sa.hashCode());
+        assertEquals(sa.transposeIm().transposeIm().hashCode(), sa.hashCode());
+        assertNotEquals(sa.addIm(sb).hashCode(), sa.hashCode()); //same shape, other content
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testAutoSparseMultiply() {
+        Matrix.logRingBuf.clear();
+        int dim = 40;
+        var a = bandMatrix(dim, "x", "y");
+        assertTrue(MatrixSparse.preferSparse(a, a));
+        var aa = a.multiplyIm(a);
+        for (int i = 0; i < dim; i++) {
+            assertEquals(MVPolynomial.parse("x x"), aa.cell(i, i));
+            if (i + 1 < dim) assertEquals(MVPolynomial.parse("2 x y"), aa.cell(i, i + 1));
+            if (i + 2 < dim) assertEquals(MVPolynomial.parse("y y"), aa.cell(i, i + 2));
+            if (i > 0) assertNull(aa.cell(i, i - 1));
+        }
+        assertEquals(3 * dim - 3, MatrixSparse.nonZeroCount(aa));
+        Matrix.logRingBuf.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.MatrixTensor.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class MatrixTensorTest {
+
+    private static Matrix rotation() {
+        var L = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        var I = Matrix.identity(3);
+        return I.addIm(L.multiplyIm("sin")).addIm(L.multiplyIm(L).multiplyIm("1 - cos"));
+    }
+
+    @Test
+    void testConversionAndArithmetic() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var m = rotation();
+        var t = CoefficientTensor.of(m);
+        assertEquals(m, t.toMatrix());
+        assertEquals(m.cell(1, 2), t.cell(1, 2));
+        assertTrue(t.basis().size() < 20);
+
+        var mt = m.transposeIm();
+        var tt = t.transposeIm();
+        assertEquals(mt, tt.toMatrix());
+        assertEquals(m.addIm(mt, -2), t.addIm(tt, -2).toMatrix());
+        assertEquals(m.minusIm(m), t.minusIm(t).toMatrix());
+        assertTrue(t.minusIm(t).basis().isEmpty());
+        assertEquals(m.multiplyIm(0.5), t.multiplyIm(0.5).toMatrix());
+        assertEquals(m.multiplyIm(mt), t.multiplyIm(tt).toMatrix());
+        assertEquals(MVPolynomial.parse("1 + x"), CoefficientTensor.of(MVPolynomial.parse("1 + x")).cell(0, 0));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testSubstituteAndEvaluate() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var rules = new SubstituteTerms()
+                .add("i i", "1 - j j - k k")
+                .add("cos cos", "1 - sin sin");
+        var m = rotation();
+        var product = m.multiplyIm(m.transposeIm());
+        var t = CoefficientTensor.of(product);
+        assertEquals(product.substituteTermsIm(rules), t.substituteTermsIm(rules).toMatrix());
+        var all = new SubstituteTerms().acceptAll(true).add("sin", "s + 1");
+        var substitutedAll = t.substituteTermsIm(all);
+        product.iterateNonNull((pos, row, col, cell) ->
+                assertEquals(cell.substituteTermsIm(all), substitutedAll.cell(row, col)));
+
+        var values = Map.of("i", 0.6, "j", 0.0, "k", 0.8, "sin", 0.28, "cos", 0.96);
+        var eval = CoefficientTensor.of(m).evaluate(values);
+        var slp = PolynomialStraightLine.Slp.leaf(m.cell(2, 1));
+        assertEquals(slp.evaluate(values), eval[2 * 3 + 1], 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> t.evaluate(Map.of("i", 1.0)));
+        Matrix.logRingBuf.clear();
+    }
+}
@@ -0,0 +1,65 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class MatrixViewTest {
+
+    @Test
+    void testViews() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var m = new Matrix(3, 4).init(
+                "a", "1", "b", "0",
+                "2", "c", "0", "a",
+                "0", "b", "1", "c");
+        int logged = Matrix.logRingBuf.size();
+        var tr = m.transpose();
+        var minor = m.minor(1, 2);
+        var block = m.block(1, 1, 2, 3);
+        var trMinor = tr.minor(new int[]{0, 3}, new int[]{2});
+        assertEquals(logged, Matrix.logRingBuf.size());
+
+        assertEquals(m.transposeIm(), tr);
+        assertEquals(tr, m.transposeIm());
+        assertEquals(m.subMatrixSkipRowCol(1, 2), minor);
+        assertEquals(new Matrix(2, 3).init("c", "0", "a", "b", "1", "c"), block);
+        assertEquals(new Matrix(2, 2).init("1", "c", "b", "0"), trMinor);
+        assertEquals(new Matrix(1, 4).init("2", "c", "0", "a"), m.row(1));
+        assertEquals(new Matrix(3, 1).init("b", "0", "1"), tr.row(2).transpose());
+        assertEquals(MVPolynomial.parse("c"), block.transpose().cell(0, 0));
+
+        assertEquals(m.multiplyIm(m.transposeIm()), m.multiplyIm(tr));
+        assertEquals(m.transposeIm().multiplyIm(m), tr.multiplyIm(m));
+        var square = m.block(0, 0, 3, 3);
+        assertEquals(square.toMatrix().determinant(), square.determinant(new SubstituteTerms()));
+        assertEquals(MVPolynomial.parse("a + c + 1"), Matrix.trace(square));
+        assertEquals(MVPolynomial.parse("a + c + 1"), Matrix.trace(square.transpose()));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testViewProductAndDeterminant() {
+        var band = new Matrix(20, 20);
+        for (int i = 0; i < 20; i++) {
+            band.setCell(i, i, MVPolynomial.parse("x"));
+            if (i + 1 < 20) band.setCell(i, i + 1, MVPolynomial.parse("1"));
+        }
+        var ops = new ArrayList<String>();
+        var context = SymbolMathContext.Context.defaults().withTrace((op, nanos) -> ops.add(op));
+        var product = context.call(() -> band.transpose().multiplyIm(band)); //dispatched like Matrix.multiplyIm
+        assertEquals(List.of("multiply"), ops);
+        assertEquals(band.transposeIm().multiplyIm(band), product);
+
+        var m = new Matrix(6, 6);
+        for (int i = 0; i < 36; i++) m.cells[i] = MVPolynomial.parse(i % 7 == 0 ? "a" : i % 5 == 0 ? "0" : "1");
+        var fingerprint = m.fingerprint();
+        assertEquals(m.transposeIm().determinant(), m.transpose().determinant(new SubstituteTerms()));
+        assertEquals(fingerprint, m.fingerprint());
+    }
+}
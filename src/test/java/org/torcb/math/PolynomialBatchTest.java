@@ -0,0 +1,159 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialBatch.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialBatchTest {
+
+    private static String run(String input, Config config, Stats[] stats) throws IOException {
+        var out = new StringWriter();
+        stats[0] = PolynomialBatch.run(new BufferedReader(new StringReader(input)), out, config);
+        return out.toString();
+    }
+
+    @Test
+    void testOrderedLines() throws IOException {
+        var rules = new SubstituteTerms().add("cos cos", "1 - sin sin");
+        var lines = IntStream.range(0, 500)
+                             .mapToObj(i -> "(" + i + " + cos) (cos - sin) x" + (i % 7))
+                             .toList();
+        var input = String.join("\n", lines) + "\n\n# comment\nx + y [&& z\n";
+        var expected = lines.stream()
+                            .map(l -> MVPolynomial.parse(l).substituteTermsIm(rules).toString())
+                            .collect(Collectors.joining("\n", "", "\n"));
+        var stats = new Stats[1];
+        for (var config : List.of(Config.defaults().withRules(rules).withWindow(3),
+                Config.defaults().withRules(rules).withVirtualThreads(false).withParallelism(4))) {
+            var out = run(input, config, stats);
+            assertEquals(expected, out.substring(0, Math.min(out.length(), expected.length())));
+            assertTrue(out.substring(expected.length()).startsWith("error: "));
+            assertEquals(501, stats[0].items(Stage.WRITE));
+            assertEquals(500, stats[0].items(Stage.SUBSTITUTE));
+            assertEquals(1, stats[0].errors());
+            assertEquals(0, stats[0].items(Stage.EVALUATE));
+            assertTrue(stats[0].toString().contains("substitute"));
+        }
+    }
+
+    @Test
+    void testWriterFailureStopsReader() throws Exception {
+        var input = new Reader() { //first line at once, the rest once the writer has failed
+            private final Reader lines = new StringReader("x\n" + "y\n".repeat(100));
+            private boolean first = true;
+
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                if (!first) {
+                    for (long until = System.nanoTime() + 300_000_000L; System.nanoTime() < until; ) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException ignored) {
+                            //outlive the interrupt, so the reader submits to a shut down executor
+                        }
+                    }
+                }
+                first = false;
+                return lines.read(buf, off, Math.min(len, 2));
+            }
+
+            @Override
+            public void close() {}
+        };
+        var failing = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        var uncaught = new AtomicReference<Throwable>();
+        var saved = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((t, e) -> uncaught.set(e));
+        try {
+            assertThrows(IOException.class, () -> PolynomialBatch.run(new BufferedReader(input, 2), failing, Config.defaults()));
+            for (var t : Thread.getAllStackTraces().keySet()) {
+                if (t.getName().equals("batch-reader")) t.join();
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(saved);
+        }
+        assertNull(uncaught.get());
+    }
+
+    @Test
+    void testErrorInRecordStopsBatch() {
+        var evaluated = new AtomicInteger();
+        var values = new HashMap<String, Double>() { //"boom" fails outside the RuntimeException handling of process
+            @Override
+            public Double get(Object key) {
+                try {
+                    Thread.sleep(key.equals("boom") ? 200 : 5); //boom: the reader has queued every record
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (key.equals("boom")) throw new StackOverflowError();
+                evaluated.incrementAndGet();
+                return 1.0;
+            }
+        };
+        var config = Config.defaults().withParallelism(1).withWindow(256).withEvaluateAt(values);
+        var e = assertThrows(IllegalStateException.class, () -> run("boom\n" + "x\n".repeat(200), config, new Stats[1]));
+        assertInstanceOf(StackOverflowError.class, e.getCause());
+        assertTrue(evaluated.get() < 20, evaluated + " records evaluated after the failure");
+    }
+
+    @Test
+    void testRecordsMatricesEvaluate() throws IOException {
+        var input = """
+                a, b;
+                c, a b
+
+                x x - 1
+                + 2 x
+                """;
+        var stats = new Stats[1];
+        var out = run(input, Config.defaults().withRecords(true), stats);
+        assertEquals("a, b;\nc, a*b\n\nx*x + 2x − 1\n\n", out);
+
+        var values = Map.of("a", 2.0, "b", 3.0, "c", -1.0, "x", 0.5);
+        out = run(input, Config.defaults().withRecords(true).withEvaluateAt(values), stats);
+        assertEquals("2.0, 3.0;\n-1.0, 6.0\n\n0.25\n\n", out);
+        assertEquals(2, stats[0].items(Stage.EVALUATE));
+
+        out = run("a, b; c, d\nx y\n", Config.defaults().withEvaluateAt(Map.of("x", 1.0)), stats);
+        assertEquals("error: no value for a\nerror: no value for y\n", out);
+    }
+
+    @Test
+    void testSimplifyAndCli() throws IOException {
+        var dir = Files.createTempDirectory("batch");
+        var in = dir.resolve("in.txt");
+        var rulesFile = dir.resolve("rules.txt");
+        var out = dir.resolve("out.txt");
+        Files.writeString(in, "a + 5\n2 a\n");
+        Files.writeString(rulesFile, "# rules\n'a' -> 'b + c'\nb -> - c\n");
+        PolynomialBatch.Cli.main(new String[]{"--rules", rulesFile.toString(), "--simplify", "--quiet",
+                "--parallelism", "2", in.toString(), out.toString()});
+        assertEquals(List.of("5", "0"), Files.readAllLines(out));
+        assertThrows(IllegalArgumentException.class, () -> PolynomialBatch.Cli.main(new String[]{"--bogus"}));
+        assertThrows(IllegalArgumentException.class, () -> parseRules(List.of("a = b"), new SubstituteTerms()));
+    }
+}
@@ -0,0 +1,66 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialDivision.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialDivisionTest {
+
+    private static void assertDivision(MVPolynomial p, List<MVPolynomial> divisors, Division d) {
+        var sum = d.remainder().copy();
+        for (int i = 0; i < divisors.size(); i++) {
+            sum.add(d.quotients().get(i).multiplyIm(divisors.get(i)));
+        }
+        assertEquals(p, sum);
+    }
+
+    @Test
+    void testDivideBySet() {
+        var circle = MVPolynomial.parse("cos cos + sin sin - 1");
+        var sphere = MVPolynomial.parse("i i + j j + k k - 1");
+        var divisors = List.of(circle, sphere);
+        var p = MVPolynomial.parse("(cos cos + sin sin) (cos cos + sin sin) + (i i + j j + k k) x + cos sin");
+        var d = divide(p, divisors, DEFAULT_ORDER);
+        assertDivision(p, divisors, d);
+        assertEquals(MVPolynomial.parse("1 + x + cos sin"), d.remainder());
+        assertEquals(d.remainder(), reduce(p, divisors, DEFAULT_ORDER));
+        for (var t : d.remainder().terms()) {
+            assertNull(t.divideIm(leadingTerm(circle, DEFAULT_ORDER)));
+            assertNull(t.divideIm(leadingTerm(sphere, DEFAULT_ORDER)));
+        }
+    }
+
+    @Test
+    void testLargeExactDivision() {
+        var f = MVPolynomial.parse("x + y + z + 1");
+        var q = MVPolynomial.parse("1");
+        for (int i = 0; i < 6; i++) q = q.multiplyIm(f);
+        var p = q.multiplyIm(MVPolynomial.parse("x y - 2 z"));
+        var d = p.divideIm(MVPolynomial.parse("x y - 2 z"));
+        assertEquals(q, d.ans());
+        assertTrue(d.remain().isZero());
+
+        var withRemainder = p.addIm(MVPolynomial.parse("3 z + 5"));
+        var d2 = divide(withRemainder, List.of(f), DEFAULT_ORDER);
+        assertDivision(withRemainder, List.of(f), d2);
+        assertEquals(MVPolynomial.parse("2 - 3 x - 3 y"), d2.remainder()); //leading term of f is z
+    }
+
+    @Test
+    void testGeobucket() {
+        var bucket = new Geobucket(DEFAULT_ORDER);
+        var p = MVPolynomial.parse("a a + 2 a b + 3");
+        for (int i = 0; i < 50; i++) bucket.add(Tail.of(p, null), new Term("c"), 1);
+        bucket.add(Tail.of(p, null), null, -1);
+        var lead = bucket.popLeading();
+        assertEquals(new Term("a b c"), lead.getKey());
+        assertEquals(100, lead.getValue());
+        var sum = new MVPolynomial();
+        for (var e = bucket.popLeading(); e != null; e = bucket.popLeading()) sum.add(e.getKey(), e.getValue());
+        assertEquals(MVPolynomial.parse("50 a a c + 150 c - a a - 2 a b - 3"), sum);
+    }
+}
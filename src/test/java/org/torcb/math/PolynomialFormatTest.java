@@ -0,0 +1,107 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialFormat.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialFormatTest {
+
+    @Test
+    void testNumbersAsDecimalFormat() {
+        var format = Format.defaults();
+        double[] fixed = {0, -0.0, 0.5, 0.0004, 0.0005, 0.0015, 0.0025, 2.0005, -2.0005, 1e20, 1e-20, 1234567.8915,
+                1.2345678901234568E17, 9.953740911083235E16, 1e19, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double d : fixed) {
+            assertEquals(DF.format(d), format.number(d), () -> Double.toString(d));
+        }
+        var random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            double d = switch (i % 4) {
+                case 0 -> random.nextGaussian() * 1000;
+                case 1 -> random.nextInt(100_000) / 10_000.0; //many ties in the shortest digits
+                case 2 -> Math.scalb(random.nextDouble(), random.nextInt(120) - 60);
+                default -> random.nextInt(2000) - 1000;
+            };
+            assertEquals(DF.format(d), format.number(d), () -> Double.toString(d));
+        }
+        var symbols = DecimalFormatSymbols.getInstance();
+        symbols.setDecimalSeparator('.');
+        for (int decimals : new int[]{0, 1, 6}) {
+            var df = new DecimalFormat(decimals == 0 ? "#" : "#." + "#".repeat(decimals), symbols);
+            for (int i = 0; i < 5000; i++) {
+                double d = random.nextInt(1_000_000) / 1e4 - 50;
+                assertEquals(df.format(d), format.withDecimals(decimals).number(d), () -> Double.toString(d));
+            }
+        }
+    }
+
+    @Test
+    void testToStringAndRoundTrip() {
+        var p = MVPolynomial.parse("2 x y - x x + 1.23456789 z - 1 + 0.5");
+        assertEquals("2x*y − x*x + 1.235z − 0.5", p.toString());
+        var exact = Format.defaults().withRoundTrip().toString(p);
+        assertEquals("2x*y − x*x + 1.23456789z − 0.5", exact);
+        var thirds = MVPolynomial.parse("x").multiplyIm(1.0 / 3).add(Math.PI);
+        var back = MVPolynomial.parse(Format.defaults().withRoundTrip().toString(thirds));
+        for (var t : thirds.terms()) {
+            assertEquals(thirds.coefficient(t), back.coefficient(t), 0); //bit exact
+        }
+        var m = new Matrix(2, 2).init("a", "0", "b b", "−c + 1");
+        assertEquals(" Matrix{" + m.id + "}\n  a,  0;\n  b*b,  −c + 1;", m.toString());
+        assertEquals("0", new MVPolynomial().toString());
+    }
+
+    @Test
+    void testSyntaxes() {
+        var p = MVPolynomial.parse("x x y - 2 y + 0.5");
+        var java = Format.defaults().withSyntax(Syntax.JAVA);
+        assertEquals("x*x*y - 2.0*y + 0.5", java.toString(p, PolynomialOrder.MonomialOrder.lex("x", "y")));
+        assertEquals("{{x, 0.0},\n {1.0, -y}}", java.toString(new Matrix(2, 2).init("x", "0", "1", "−y")));
+        assertEquals("1.0E-9*x", java.withRoundTrip().toString(MVPolynomial.parse("x").multiplyIm(1e-9)));
+        var latex = Format.defaults().withSyntax(Syntax.LATEX);
+        assertEquals("x^{2} y - 2 y + 0.5", latex.toString(p, PolynomialOrder.MonomialOrder.lex("x", "y")));
+        assertEquals("3 \\cdot 10^{-9} \\mathit{cos}^{3}",
+                     latex.withRoundTrip().toString(MVPolynomial.parse("cos cos cos").multiplyIm(3e-9)));
+        assertEquals("\\begin{pmatrix}\nx & 0\n\\end{pmatrix}", latex.toString(new Matrix(1, 2).init("x", "0")));
+    }
+
+    @Test
+    void testStreamingConcurrent() throws IOException {
+        var p = new MVPolynomial();
+        for (int i = 0; i < 2000; i++) {
+            p.add(new Term("x" + i), i + 0.0625);
+        }
+        var expected = p.toString();
+        var chars = new AtomicLong();
+        var counting = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) {chars.addAndGet(len);}
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        Format.defaults().write(counting, p);
+        assertEquals(expected.length(), chars.get());
+        var bytes = new ByteArrayOutputStream();
+        Format.defaults().write(bytes, p);
+        assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+        assertTrue(IntStream.range(0, 64).parallel()
+                            .mapToObj(i -> Format.defaults().toString(p))
+                            .allMatch(expected::equals));
+    }
+}
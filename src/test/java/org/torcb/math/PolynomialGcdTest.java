@@ -0,0 +1,97 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialGcd.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialGcdTest {
+
+    @Test
+    void testContent() {
+        var p = MVPolynomial.parse("0.6666666666666666 x + 1.3333333333333333");
+        assertEquals(2.0 / 3, p.content(), 1e-15);
+        assertEquals(MVPolynomial.parse("x + 2"), p.primitivePart());
+        assertEquals(MVPolynomial.parse("2 x y - 3"), MVPolynomial.parse("-4 x y + 6").primitivePart());
+        assertEquals(MVPolynomial.parse("a + 1"), content(MVPolynomial.parse("(a + 1) (x x + 2 x) + 3 a + 3"), "x"));
+    }
+
+    @Test
+    void testGcd() {
+        var common = MVPolynomial.parse("a b + c");
+        var a = common.multiplyIm(MVPolynomial.parse("(a - c) (b + 2)"));
+        var b = common.multiplyIm(MVPolynomial.parse("(a + c) (b c - 1)")).multiplyIm(3);
+        assertEquals(common, a.gcd(b));
+        assertEquals(MVPolynomial.parse("x + y"),
+                gcd(MVPolynomial.parse("(x + y) (x - y) (z + 1)"), MVPolynomial.parse("2 (x + y) (x + y) (z + 2)")));
+        assertEquals(MVPolynomial.parse("x"), gcd(MVPolynomial.parse("6 x x y + 4 x"), MVPolynomial.parse("9 x y")));
+        assertEquals(MVPolynomial.parse("1"), gcd(MVPolynomial.parse("x + 1"), MVPolynomial.parse("y + 1")));
+        assertEquals(MVPolynomial.parse("x - 1"), gcd(MVPolynomial.parse("x x - 1"), MVPolynomial.parse("3 x - 3")));
+        assertEquals(MVPolynomial.parse("(x + 1) (x + y) (y - x)"), //leading term x y y positive
+                lcm(MVPolynomial.parse("x x - y y"), MVPolynomial.parse("x y + y + x x + x")));
+    }
+
+    private static MVPolynomial randomPolynomial(Random random, int degreeX) {
+        var p = new MVPolynomial();
+        for (int i = 0; i <= degreeX; i++) {
+            for (int j = 0; j <= 4; j++) {
+                for (int k = 0; k <= 2; k++) {
+                    var term = new Term(("x ".repeat(i) + "y ".repeat(j) + "z ".repeat(k)).trim());
+                    p.add(term, (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12)));
+                }
+            }
+        }
+        return p;
+    }
+
+    @Test
+    void testPseudoRemainderTerminates() {
+        var random = new Random(1);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int i = 0; i < 30; i++) { //large coefficients leave rounding residues in the cancelled x^k terms
+                var a = randomPolynomial(random, 3);
+                var b = randomPolynomial(random, 2);
+                assertTrue(degree(pseudoRemainder(a, b, "x"), "x") < 2);
+            }
+            //lc(b) * lc(a) overflows, the cancelled x^3 coefficient is NaN
+            var a = new MVPolynomial().add(new Term("x x x"), 1e200).add(new Term("y"), 1);
+            var b = new MVPolynomial().add(new Term("x"), 1e200).add(1);
+            assertEquals(0, degree(pseudoRemainder(a, b, "x"), "x"));
+        });
+        assertThrows(ArithmeticException.class, () -> pseudoRemainder(MVPolynomial.parse("x"), new MVPolynomial(), "x"));
+    }
+
+    @Test
+    void testFraction() {
+        var f = Fraction.of(MVPolynomial.parse("x x - y y"), MVPolynomial.parse("2 x + 2 y"));
+        assertEquals(MVPolynomial.parse("0.5 x - 0.5 y"), f.numerator());
+        assertEquals(MVPolynomial.parse("1"), f.denominator());
+        var sum = Fraction.of(MVPolynomial.parse("1"), MVPolynomial.parse("x - 1"))
+                          .add(Fraction.of(MVPolynomial.parse("-1"), MVPolynomial.parse("x + 1")));
+        assertEquals(MVPolynomial.parse("2"), sum.numerator());
+        assertEquals(MVPolynomial.parse("x x - 1"), sum.denominator());
+        var product = sum.multiply(Fraction.of(MVPolynomial.parse("x + 1"), MVPolynomial.parse("4")));
+        assertEquals(MVPolynomial.parse("0.5"), product.numerator());
+        assertEquals(MVPolynomial.parse("x - 1"), product.denominator());
+    }
+
+    @Test
+    void testBareiss() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var m = new Matrix(4, 4).init(
+                "a", "1", "b", "0",
+                "2", "c", "0", "a",
+                "0", "b", "1", "c",
+                "a b", "0", "3", "a");
+        assertEquals(m.determinant(), determinantBareiss(m));
+        var zeroPivot = new Matrix(3, 3).init("0", "x", "1", "y", "0", "2", "1", "1", "z");
+        assertEquals(zeroPivot.determinant(), determinantBareiss(zeroPivot));
+        assertEquals(new MVPolynomial(), determinantBareiss(new Matrix(2, 2).init("x", "y", "2 x", "2 y")));
+        Matrix.logRingBuf.clear();
+    }
+}
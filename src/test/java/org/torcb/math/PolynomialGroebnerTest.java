@@ -0,0 +1,59 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialDivision.DEFAULT_ORDER;
+import static org.torcb.math.PolynomialGroebner.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialGroebnerTest {
+
+    @Test
+    void testBasis() {
+        var f1 = MVPolynomial.parse("x x y - 1");
+        var f2 = MVPolynomial.parse("x y y - x");
+        var gb = GroebnerBasis.compute(List.of(f1, f2), DEFAULT_ORDER);
+        assertTrue(gb.contains(f1));
+        assertTrue(gb.contains(f2));
+        assertTrue(gb.contains(MVPolynomial.parse("x x y - 1").multiplyIm(MVPolynomial.parse("y + 3"))
+                                            .addIm(f2.multiplyIm(MVPolynomial.parse("x x")))));
+        assertFalse(gb.contains(MVPolynomial.parse("x - 1")));
+        // reduced basis: leading terms don't divide each other, coefficients monic
+        var leads = gb.leadingTerms();
+        for (int i = 0; i < leads.size(); i++) {
+            assertEquals(1, gb.polynomials().get(i).coefficient(leads.get(i)));
+            for (int j = 0; j < leads.size(); j++) {
+                if (i != j) assertNull(leads.get(i).divideIm(leads.get(j)));
+            }
+        }
+        assertSame(GroebnerBasis.of(List.of(f1, f2), DEFAULT_ORDER), GroebnerBasis.of(List.of(f1, f2), DEFAULT_ORDER));
+        var shared = GroebnerBasis.of(List.of(f1, f2), DEFAULT_ORDER);
+        shared.polynomials().get(0).add(new Term("q"), 1);
+        assertEquals(gb.polynomials(), GroebnerBasis.of(List.of(f1, f2), DEFAULT_ORDER).polynomials()); //same cached basis, unchanged
+        for (int i = 0; i <= CACHE_SIZE; i++) {
+            GroebnerBasis.of(List.of(MVPolynomial.parse("x - " + i)), DEFAULT_ORDER);
+        }
+        assertEquals(CACHE_SIZE, CACHE.size()); //least recently used evicted
+        var lex = GroebnerBasis.of(List.of(f1, f2), PolynomialOrder.MonomialOrder.lex("x", "y"));
+        assertSame(lex, GroebnerBasis.of(List.of(f1, f2), PolynomialOrder.MonomialOrder.lex("x", "y")));
+        assertNotSame(lex, GroebnerBasis.of(List.of(f1, f2), PolynomialOrder.MonomialOrder.lex("y", "x")));
+    }
+
+    @Test
+    void testRotationConstraints() {
+        var rules = new SubstituteTerms()
+                .add("i i", "1 - j j - k k")
+                .add("cos cos", "1 - sin sin");
+        var gb = GroebnerBasis.of(rules, DEFAULT_ORDER);
+        assertEquals(2, gb.polynomials().size());
+        var a = MVPolynomial.parse("(i i + j j) (cos cos + 2 sin sin) + k k sin sin");
+        var b = MVPolynomial.parse("(1 - k k) (1 + sin sin) + k k sin sin");
+        assertEquals(gb.normalForm(a), gb.normalForm(b));
+        assertEquals(gb.normalForm(a), gb.normalForm(gb.normalForm(a)));
+        var reduced = a.substituteTermsIm(gb.toSubstituteTerms());
+        assertEquals(gb.normalForm(a), gb.normalForm(reduced));
+    }
+}
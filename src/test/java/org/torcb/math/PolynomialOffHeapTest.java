@@ -0,0 +1,68 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialOffHeap.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialOffHeapTest {
+
+    @Test
+    void testArithmetic() {
+        var a = MVPolynomial.parse("x x y - 2 x z + 3 + 0.5 y y y y");
+        var b = MVPolynomial.parse("x - y + 2 z z - 1");
+        var layout = Layout.of("x", "y", "z", "w");
+        try (var arena = new OffHeapArena(64)) { //tiny chunks: blocks move while they grow
+            var oa = OffHeapPolynomial.of(a, layout, arena);
+            var ob = OffHeapPolynomial.of(b, layout, arena);
+            assertEquals(a, oa.toMVPolynomial());
+            assertEquals(a.terms().size(), oa.size());
+            assertEquals(a.approxSize(), oa.approxSize());
+            assertEquals(-2, oa.coefficient(new Term("x z")));
+            assertEquals(0, oa.coefficient(new Term("w")));
+
+            assertEquals(a.addIm(b), oa.addIm(ob).toMVPolynomial());
+            assertTrue(oa.minusIm(oa).isZero());
+            assertEquals(a.multiplyIm(-3), oa.multiplyIm(-3).toMVPolynomial());
+            var product = a.multiplyIm(b).multiplyIm(b);
+            var oProduct = oa.multiplyIm(ob).multiplyIm(ob);
+            assertEquals(product, oProduct.toMVPolynomial());
+            assertEquals(product.multiplyIm(product), oProduct.multiplyIm(oProduct).toMVPolynomial());
+
+            var rules = new SubstituteTerms().add("x x", "1 - y y").add("z z", "w");
+            assertEquals(product.substituteTermsIm(rules), oProduct.substituteTermsIm(rules).toMVPolynomial());
+            var all = new SubstituteTerms().acceptAll(true).add("x y", "z - w").add("y", "2");
+            assertEquals(product.substituteTermsIm(all), oProduct.substituteTermsIm(all).toMVPolynomial());
+            assertSame(ob, ob.substituteTermsIm(new Term("w"), MVPolynomial.parse("x")));
+
+            var values = Map.of("x", 0.5, "y", -1.25, "z", 2.0, "w", 3.0);
+            assertEquals(PolynomialStraightLine.Slp.leaf(product).evaluate(values), oProduct.evaluate(values), 1e-9);
+            assertThrows(IllegalArgumentException.class, () -> oa.evaluate(Map.of("x", 1.0)));
+            assertThrows(IllegalArgumentException.class, () -> OffHeapPolynomial.of(MVPolynomial.parse("v"), layout, arena));
+            assertThrows(IllegalArgumentException.class, () -> oa.addIm(OffHeapPolynomial.of(b, arena)));
+            assertTrue(arena.bytesUsed() <= arena.bytesReserved());
+        }
+        var closed = new OffHeapArena();
+        var oa = OffHeapPolynomial.of(a, layout, closed);
+        assertTrue(closed.bytesReserved() > 0);
+        closed.close();
+        assertFalse(closed.isOpen());
+        assertEquals(0, closed.bytesReserved());
+        assertThrows(IllegalStateException.class, oa::toMVPolynomial);
+    }
+
+    @Test
+    void testPacking() {
+        try (var arena = new OffHeapArena()) {
+            var p = MVPolynomial.parse("a b c d e f g - 4 a a a a a a a a a a + 7");
+            var op = OffHeapPolynomial.of(p, arena);
+            assertEquals(7, op.layout().variables().size());
+            assertEquals(3 * op.layout().stride, op.bytes());
+            assertEquals(p, op.toMVPolynomial());
+            assertEquals(p.multiplyIm(p), op.multiplyIm(op).toMVPolynomial());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialOrder.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialOrderTest {
+
+    private static void assertGreater(MonomialOrder order, String a, String b) {
+        assertTrue(order.compare(new Term(a), new Term(b)) > 0, a + " > " + b + " in " + order);
+        assertTrue(order.compare(new Term(b), new Term(a)) < 0);
+    }
+
+    @Test
+    void testOrders() {
+        var lex = MonomialOrder.lex("x", "y", "z");
+        var deglex = MonomialOrder.deglex("x", "y", "z");
+        var degrevlex = MonomialOrder.degrevlex("x", "y", "z");
+        assertGreater(lex, "x x", "x y y z");
+        assertGreater(lex, "y", "z z z z");
+        assertGreater(deglex, "x y y z", "x x");
+        assertGreater(deglex, "x z", "y y");
+        assertGreater(degrevlex, "y y", "x z");
+        assertGreater(degrevlex, "x y y", "x x z");
+        assertGreater(deglex, "x x z", "x y y");
+        assertEquals(0, degrevlex.compare(new Term("x y"), new Term("y x")));
+
+        var elimination = MonomialOrder.block(MonomialOrder.lex("t"), MonomialOrder.degrevlex("x", "y"));
+        assertGreater(elimination, "t", "x x x x x");
+        assertGreater(elimination, "t y y", "t x");
+        assertGreater(elimination, "y y", "x");
+        var same = MonomialOrder.block(MonomialOrder.lex("t"), MonomialOrder.degrevlex("x", "y"));
+        assertEquals(elimination, same);
+        assertEquals(elimination.hashCode(), same.hashCode());
+        assertNotEquals(elimination, MonomialOrder.block(MonomialOrder.lex("t"), MonomialOrder.deglex("x", "y")));
+        assertNotEquals(MonomialOrder.lex("x", "y"), MonomialOrder.deglex("x", "y"));
+
+        var p = MVPolynomial.parse("z z z + x y + x");
+        assertEquals(new Term("x y"), p.leadingTerm(lex));
+        assertEquals(new Term("z z z"), p.leadingTerm(deglex));
+        assertEquals("x*y + x + z*z*z", p.toString(lex));
+        assertEquals(List.of(new Term("z z z"), new Term("x y"), new Term("x")), degrevlex.sorted(p));
+        assertThrows(IllegalArgumentException.class, () -> lex.compare(new Term("w"), new Term("x")));
+        assertArrayEquals(new String[]{"z", "y", "x"}, MonomialOrder.variables(p));
+    }
+
+    @Test
+    void testOrderedAlgorithms() {
+        var order = MonomialOrder.lex("t", "x", "y");
+        var curve = List.of(MVPolynomial.parse("x - t t"), MVPolynomial.parse("y - t t t"));
+        var gb = PolynomialGroebner.GroebnerBasis.compute(curve, order);
+        assertTrue(gb.contains(MVPolynomial.parse("x x x - y y")));
+        assertTrue(gb.polynomials().stream().anyMatch(g -> g.terms().stream().noneMatch(t -> t.symbols().contains("t"))));
+
+        var d = PolynomialDivision.divide(MVPolynomial.parse("x x y + x y y + y y"),
+                List.of(MVPolynomial.parse("x y - 1"), MVPolynomial.parse("y y - 1")), MonomialOrder.lex("x", "y"));
+        assertEquals(MVPolynomial.parse("x + y + 1"), d.remainder());
+        assertEquals(MVPolynomial.parse("x + y"), d.quotients().get(0));
+        assertEquals(MVPolynomial.parse("1"), d.quotients().get(1));
+    }
+}
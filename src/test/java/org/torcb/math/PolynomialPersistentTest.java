@@ -0,0 +1,57 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialPersistent.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialPersistentTest {
+
+    @Test
+    void testPersistentUpdates() {
+        var large = PersistentPolynomial.ZERO;
+        var reference = new MVPolynomial();
+        for (int i = 0; i < 500; i++) {
+            var term = new Term("x" + i + " y" + (i % 7));
+            large = large.add(term, i + 1);
+            reference.add(term, i + 1);
+        }
+        assertEquals(500, large.size());
+        assertEquals(reference, large.toMVPolynomial());
+        assertEquals(reference.fingerprint(), large.fingerprint());
+
+        var changed = large.add(new Term("x3 y3"), -4).add(new Term("z"), 2);
+        assertEquals(500, large.size());
+        assertEquals(4, large.coefficient(new Term("x3 y3")));
+        assertEquals(500, changed.size());
+        assertEquals(0, changed.coefficient(new Term("x3 y3")));
+        assertEquals(2, changed.coefficient(new Term("z")));
+        assertSame(large, changed.add(new Term("z"), -2).add(new Term("y3 x3"), 4));
+        assertTrue(large.minus(large).isZero());
+        assertSame(PersistentPolynomial.ZERO, large.minus(large));
+    }
+
+    @Test
+    void testHashConsing() {
+        var p = PersistentPolynomial.parse("2 a b + c - 1");
+        var q = PersistentPolynomial.parse("c + 2 b a").add(PersistentPolynomial.constant(-1));
+        assertSame(p, q);
+        assertSame(p.multiply(p), PersistentPolynomial.of(p.toMVPolynomial().multiplyIm(p.toMVPolynomial())));
+        assertNotSame(p, p.multiply(2));
+        assertEquals(MVPolynomial.parse("-4 a b - 2 c + 2"), p.negate().multiply(2).toMVPolynomial());
+
+        var rules = new SubstituteTerms().add("c", "1 - a b");
+        assertSame(PersistentPolynomial.parse("a b"), p.substituteTerms(rules));
+
+        var basis = PersistentPolynomial.parse("x + y");
+        var results = IntStream.range(0, 64).parallel()
+                               .mapToObj(i -> basis.multiply(basis).add(new Term("z"), i % 2))
+                               .toList();
+        assertSame(results.get(0), results.get(2));
+        assertSame(results.get(1), results.get(63));
+        assertNotSame(results.get(0), results.get(1));
+    }
+}
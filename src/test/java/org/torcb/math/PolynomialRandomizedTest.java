@@ -0,0 +1,71 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialRandomized.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialRandomizedTest {
+    private static final SubstituteTerms ROTATION_RULES = new SubstituteTerms()
+            .add("i i", "1 - j j - k k")
+            .add("cos cos", "1 - sin sin");
+
+    @Test
+    void testModArithmetic() {
+        var random = new SplittableRandom(1);
+        var prime = BigInteger.valueOf(P);
+        for (int n = 0; n < 1000; n++) {
+            long a = random.nextLong(P), b = random.nextLong(P);
+            assertEquals(BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(prime).longValue(), mul(a, b));
+        }
+        assertEquals(1, mul(residue(1.0 / 3), 3));
+        assertEquals(sub(0, 5), mul(residue(-2.5), 2));
+        assertEquals(residue(0.1 * 3), residue(0.3));
+        assertEquals(residue(2e15 + 1), mul(residue(1e15 + 0.5), 2));
+        assertEquals(0, residue(1e-30));
+    }
+
+    @Test
+    void testPolynomialIdentities() {
+        var config = Config.defaults().withSeed(7);
+        var noRules = config.withRules(new SubstituteTerms());
+        var circle = MVPolynomial.parse("sin sin + cos cos - 1");
+        assertFalse(isZeroProbably(circle, noRules));
+        assertTrue(isZeroProbably(circle, config.withRules(ROTATION_RULES)));
+        assertTrue(equalsProbably(MVPolynomial.parse("(a + b) (a - b)"), MVPolynomial.parse("a a - b b"), noRules));
+        assertFalse(equalsProbably(MVPolynomial.parse("(a + b) (a + b)"), MVPolynomial.parse("a a + b b"), noRules));
+        assertTrue(isZeroProbably(MVPolynomial.parse("(i i + j j + k k) (i i + j j + k k) - 1"), config.withRules(ROTATION_RULES)));
+
+        var mixed = new SubstituteTerms().add("cos cos", "1 - sin sin").add("x y", "z");
+        assertEquals(1, config.withRules(mixed).spheres().size());
+        assertEquals(1, config.withRules(mixed).symbolicRules().list.size());
+        assertTrue(isZeroProbably(MVPolynomial.parse("x y cos cos + sin sin z - z"), config.withRules(mixed)));
+    }
+
+    @Test
+    void testRotationMatrix() {
+        var config = Config.defaults().withRules(ROTATION_RULES);
+        var L = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        SubstituteRules.remove();
+        var rotateM = Matrix.identity(3).addIm(L.multiplyIm("sin")).addIm(L.multiplyIm(L).multiplyIm("1 - cos"));
+        var identity = ModMatrix.identity(3);
+        assertTrue(holdsProbably(6, config, pt -> {
+            var r = pt.eval(rotateM);
+            return r.multiply(r.transpose()).minus(identity).isZero();
+        }));
+        assertFalse(holdsProbably(6, config, pt -> {
+            var r = pt.eval(rotateM);
+            return r.multiply(r).minus(identity).isZero();
+        }));
+        assertTrue(equalsProbably(rotateM.multiplyIm(rotateM.transpose()), Matrix.identity(3), config));
+        assertFalse(rotateM.multiplyIm(rotateM.transpose()).minusIm(Matrix.identity(3)).isZeroProbably());
+        Matrix.logRingBuf.clear();
+    }
+}
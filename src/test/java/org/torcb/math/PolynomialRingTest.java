@@ -0,0 +1,56 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialRing.*;
+import static org.torcb.math.SymbolMath.*;
+import static org.torcb.math.TestMatrices.*;
+
+public class PolynomialRingTest {
+    private static final ModRing MOD = new ModRing(primes(1)[0]);
+
+    @Test
+    void testRings() {
+        var p = MVPolynomial.parse("(a + 2 b) (a - 3 c) + 0.5");
+        var q = MVPolynomial.parse("a b - 7");
+        var expected = p.multiplyIm(q).addIm(p);
+        for (Ring<?> ring : new Ring<?>[]{DoubleRing.INSTANCE, MOD, RationalRing.INSTANCE}) {
+            assertProduct(ring, p, q, expected);
+        }
+        var third = RingPolynomial.parse(RationalRing.INSTANCE, "0.3333333333333333 x");
+        assertEquals("1/3x", third.toString());
+        assertEquals(RingPolynomial.parse(RationalRing.INSTANCE, "x"), third.add(third).add(third));
+        assertTrue(RingPolynomial.parse(MOD, "0.3333333333333333 x").multiply(RingPolynomial.constant(MOD, 3))
+                                 .minus(RingPolynomial.parse(MOD, "x")).isZero());
+    }
+
+    private static <A> void assertProduct(Ring<A> ring, MVPolynomial p, MVPolynomial q, MVPolynomial expected) {
+        var rp = RingPolynomial.of(ring, p);
+        var product = rp.multiply(RingPolynomial.of(ring, q)).add(rp);
+        assertEquals(RingPolynomial.of(ring, expected), product);
+        assertEquals(expected, product.toMVPolynomial());
+        assertTrue(product.minus(product).isZero());
+    }
+
+    @Test
+    void testDeterminants() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var det = sample().determinant();
+        assertEquals(det, RingMatrix.of(MOD, sample()).determinant().toMVPolynomial());
+        assertEquals(det, RingMatrix.of(RationalRing.INSTANCE, sample()).determinant().toMVPolynomial());
+        assertEquals(det, determinantMultiPrime(sample(), 8).toMVPolynomial());
+        var m = sample();
+        assertEquals(m.multiplyIm(m), RingMatrix.of(MOD, m).multiply(RingMatrix.of(MOD, m)).toMatrix());
+
+        long[] primes = primes(3);
+        var big = BigInteger.TWO.pow(150).add(BigInteger.valueOf(12345)).negate();
+        var residues = new long[3];
+        for (int i = 0; i < 3; i++) residues[i] = big.mod(BigInteger.valueOf(primes[i])).longValue();
+        assertEquals(big, crt(residues, primes));
+        Matrix.logRingBuf.clear();
+    }
+}
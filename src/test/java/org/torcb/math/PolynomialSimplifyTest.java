@@ -0,0 +1,70 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialSimplify.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialSimplifyTest {
+
+    @Test
+    void testSearchPassesLargerIntermediate() {
+        var rules = new SubstituteTerms().add("a", "b + c").add("b", "- c");
+        var p = MVPolynomial.parse("a + 5");
+        assertEquals(p, p.substituteTermsIm(rules)); //greedy rejects the growing first step
+        var s = simplify(p, rules);
+        assertEquals(MVPolynomial.parse("5"), s.result());
+        assertEquals(2, s.path().size());
+        assertTrue(s.exhausted());
+        assertEquals(MVPolynomial.parse("5"), p.simplifyIm(rules));
+    }
+
+    @Test
+    void testRotation() {
+        var rotMat = MVPolynomial.parse("1 - cos").multiplyIm("L L").add("I + L sin");
+        var rotMatTranspose = MVPolynomial.parse("1 - cos").multiplyIm("L L").add("I - L sin");
+        var prod = rotMatTranspose.multiplyIm(rotMat);
+        var rules = new SubstituteTerms()
+                .add("cos cos", "1 - sin sin")
+                .add("L L L L", "- L L")
+                .add("I L", "L")
+                .add("I I", "I");
+        var s = simplify(prod, rules);
+        assertEquals(MVPolynomial.parse("I"), s.result());
+        var flops = simplify(prod, rules, Config.defaults().withCost(Cost.FLOPS).withBeamWidth(1));
+        assertEquals(MVPolynomial.parse("I"), flops.result());
+        assertEquals(0, flops.cost());
+    }
+
+    @Test
+    void testLimitsAndCycles() {
+        var rules = new SubstituteTerms().add("x", "y").add("y", "x").add("x", "x x");
+        var p = MVPolynomial.parse("x + 1");
+        var s = simplify(p, rules, Config.defaults().withMaxGrowth(2));
+        assertTrue(s.exhausted());
+        assertEquals(p.approxSize(), s.cost());
+        var limited = simplify(p, rules, Config.defaults().withMaxGrowth(100).withMaxSteps(5));
+        assertFalse(limited.exhausted());
+        assertTrue(limited.steps() <= 5 + rules.list.size() * Config.defaults().beamWidth());
+        var timed = simplify(p, rules, Config.defaults().withMaxGrowth(100).withTimeLimit(Duration.ZERO));
+        assertFalse(timed.exhausted());
+        assertEquals(p, timed.result());
+        assertEquals(3, Cost.FLOPS.of(MVPolynomial.parse("2 x y + 1")));
+    }
+
+    @Test
+    void testForkedMovesUseContext() {
+        var rules = new SubstituteTerms().add("a", "x x x").add("b", "y");
+        for (int i = 0; i < PARALLEL_MIN; i++) rules.add("c" + i, "d");
+        var p = MVPolynomial.parse("a + b");
+        var degree2 = SymbolMathContext.Context.defaults().withTruncation(Truncation.totalDegree(2));
+        var sequential = degree2.withParallelism(1).call(() -> simplify(p, rules));
+        var forked = degree2.withParallelism(4).call(() -> simplify(p, rules));
+        assertEquals(sequential.result(), forked.result());
+        assertEquals(sequential.steps(), forked.steps());
+        assertEquals(MVPolynomial.parse("b"), forked.result()); //a -> x x x is truncated away
+    }
+}
@@ -0,0 +1,65 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.PolynomialStraightLine.*;
+import static org.torcb.math.SymbolMath.*;
+
+public class PolynomialStraightLineTest {
+    private static final SubstituteTerms NO_RULES = new SubstituteTerms();
+
+    @Test
+    void testSharingAndExpand() {
+        var ab = Slp.parse("a + b");
+        var c = Slp.parse("c");
+        assertSame(ab.multiply(c), c.multiply(Slp.parse("b + a")));
+        assertSame(ab.multiply(c).add(c), c.add(c.multiply(ab)));
+        var square = ab.multiply(ab);
+        var expr = square.multiply(square).minus(c.multiply(2));
+        assertEquals(3, square.multiply(square).size());
+        assertEquals(MVPolynomial.parse("(a + b) (a + b) (a + b) (a + b) - 2 c"), expr.expand());
+        assertEquals(4, expr.degree());
+        assertTrue(square.minus(square).isZeroProbably(PolynomialRandomized.Config.defaults().withRules(NO_RULES)));
+        assertEquals(MVPolynomial.parse("4 (a + b) (a + b) (a + b)"), square.multiply(square).derive("a").expand());
+        assertEquals(MVPolynomial.parse("1 - b b"), Slp.parse("a a").add(Slp.parse("b b").negate()).expand(
+                new SubstituteTerms().add("a a", "1")));
+    }
+
+    @Test
+    void testDeepChain() {
+        var chain = Slp.ONE;
+        var values = new HashMap<String, Double>();
+        double expected = 1, derivative = 1;
+        for (int i = 0; i < 40; i++) {
+            chain = chain.multiply(Slp.parse("1 + x" + i));
+            values.put("x" + i, 0.01 * i);
+            expected *= 1 + 0.01 * i;
+            if (i > 0) derivative *= 1 + 0.01 * i;
+        }
+        assertEquals(40, chain.degree());
+        assertTrue(chain.size() < 100);
+        assertEquals(expected, chain.evaluate(values), 1e-12);
+        assertEquals(derivative, chain.derive("x0").evaluate(values), 1e-12);
+        assertFalse(chain.isZeroProbably(PolynomialRandomized.Config.defaults().withRules(NO_RULES)));
+    }
+
+    @Test
+    void testDeterminant() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var m = new Matrix(4, 4).init(
+                "a", "1", "b", "0",
+                "2", "c", "0", "a",
+                "0", "b", "1", "c",
+                "a b", "0", "3", "a");
+        var det = PolynomialStraightLine.determinant(m);
+        assertEquals(m.determinant(), det.expand());
+        var config = PolynomialRandomized.Config.defaults().withRules(NO_RULES);
+        assertTrue(det.minus(PolynomialStraightLine.determinant(m.transpose())).isZeroProbably(config));
+        assertFalse(det.minus(PolynomialStraightLine.determinant(m.block(0, 0, 3, 3))).isZeroProbably(config));
+        Matrix.logRingBuf.clear();
+    }
+}
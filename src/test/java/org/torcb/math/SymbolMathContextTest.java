@@ -0,0 +1,127 @@
+package org.torcb.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.torcb.math.SymbolMath.*;
+import static org.torcb.math.SymbolMathContext.*;
+import static org.torcb.math.TestMatrices.*;
+
+public class SymbolMathContextTest {
+
+    @Test
+    void testInheritedByForkedSubtasks() throws Exception {
+        var context = Context.defaults().withRules(new SubstituteTerms().add("a a", "b")).withParallelism(2);
+        var square = MVPolynomial.parse("a a + 1");
+        try (var virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            var bound = CompletableFuture.supplyAsync(square::substituteTermsIm, context.executor(virtual)).get();
+            assertEquals(MVPolynomial.parse("b + 1"), bound);
+            var unbound = CompletableFuture.supplyAsync(square::substituteTermsIm, virtual).get();
+            assertEquals(square, unbound);
+        }
+        var seen = context.map(32, i -> current());
+        assertTrue(seen.stream().allMatch(c -> c == context));
+        assertSame(Context.defaults(), current()); //binding ends with the call
+        assertEquals(MVPolynomial.parse("b + 1"), context.call(square::substituteTermsIm));
+    }
+
+    @Test
+    void testUnboundThreadHoldsNoRules() throws Exception {
+        var m = new Matrix(2, 2).init("x", "y", "y", "x");
+        try (var virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            var untouched = virtual.submit(() -> {
+                m.multiplyIm(m);
+                MVPolynomial.parse("x + 1").multiplyIm(MVPolynomial.parse("y"));
+                Context.defaults().withTruncation(Truncation.totalDegree(1)).run(() -> m.multiplyIm(m));
+                return current() == Context.defaults() && SubstituteRules.peek() == null && TruncationRules.peek() == null;
+            }).get();
+            assertTrue(untouched);
+        }
+    }
+
+    @Test
+    void testFallbackToThreadRules() {
+        var m = new Matrix(1, 1).init("x");
+        try {
+            SubstituteRules.get().add("x x", "y");
+            assertEquals(new Matrix(1, 1).init("y"), m.multiplyIm(m));
+            var explicit = Context.defaults().withRules(new SubstituteTerms().add("x x", "z"));
+            assertEquals(new Matrix(1, 1).init("z"), m.multiplyIm(m, explicit));
+        } finally {
+            SubstituteRules.remove();
+        }
+        assertEquals(new Matrix(1, 1).init("x x"), m.multiplyIm(m));
+    }
+
+    @Test
+    void testForkedDeterminant() {
+        var m = symbolic(MatrixView.PARALLEL_MIN_DET + 1, 0);
+        var sequential = m.determinant(Context.defaults().withParallelism(1));
+        assertEquals(PolynomialGcd.determinantBareiss(m), sequential);
+        assertEquals(sequential, m.determinant(Context.defaults().withParallelism(4)));
+        var rules = new SubstituteTerms().add("a a", "1 - b b");
+        var withRules = Context.defaults().withRules(rules);
+        assertEquals(m.determinant(withRules.withParallelism(1)), m.determinant(withRules.withParallelism(3)));
+        assertEquals(m.determinant(rules), m.determinant(withRules.withParallelism(3)));
+    }
+
+    @Test
+    void testTruncationToleranceTrace() {
+        var left = new Matrix(1, 2).init("a", "0.000001 b");
+        var right = new Matrix(2, 1).init("a + 1", "1");
+        var ops = Collections.synchronizedList(new ArrayList<String>());
+        var context = Context.defaults().withTolerance(1e-3).withTrace((op, nanos) -> ops.add(op));
+        assertEquals(new Matrix(1, 1).init("a a + a"), left.multiplyIm(right, context));
+        assertEquals(new Matrix(1, 1).init("a"), left.multiplyIm(right, context.withTruncation(Truncation.totalDegree(1))));
+        assertEquals(List.of("multiply", "multiply"), ops);
+        assertSame(Truncation.NONE, TruncationRules.get());
+        context.run(() -> assertEquals(MVPolynomial.parse("a"), current().clean(MVPolynomial.parse("a + 0.0001"))));
+        assertThrows(IllegalArgumentException.class, () -> context.withTolerance(1e-14));
+        var degree2 = Context.defaults().withTruncation(Truncation.totalDegree(2));
+        assertEquals(new Term("a b c"), degree2.call(() -> MVPolynomial.parse("a b c")).terms().iterator().next());
+    }
+
+    @Test
+    void testGramUnderContext() {
+        var m = new Matrix(3, 2).init("a", "0.0001 b", "a + 1", "c", "b", "a c");
+        var context = Context.defaults().withRules(new SubstituteTerms().add("a a", "b")).withTolerance(1e-3);
+        var gram = context.call(m::gramIm);
+        assertTrue(gram.isSymmetric());
+        assertNotSame(gram.cell(0, 1), gram.cell(1, 0));
+        assertEquals(context.call(() -> m.multiplyIm(m.transposeIm())), gram);
+        assertEquals(MVPolynomial.parse("b"), gram.cell(0, 0));
+        assertEquals(MVPolynomial.parse("b + 2 a + 1 + c c"), gram.cell(1, 1));
+    }
+
+    @Test
+    void testTruncationOnEveryPath() throws Exception {
+        var degree1 = Truncation.totalDegree(1);
+        var degree2 = Context.defaults().withTruncation(Truncation.totalDegree(2));
+        var dense = new Matrix(2, 2).init("x", "y", "y", "x");
+        var explicit = degree2.call(() -> dense.multiplyIm(dense, degree1)); //explicit truncation wins
+        assertTrue(Stream.of(explicit.cells).allMatch(c -> c == null || c.isZero()));
+        var sparse = new Matrix(4, 4);
+        for (int i = 0; i < 4; i++) sparse.setCell(i, i, MVPolynomial.parse("x + 1"));
+        var product = sparse.multiplyIm(sparse, Context.defaults().withTruncation(degree1));
+        assertEquals(MVPolynomial.parse("2 x + 1"), product.cell(3, 3));
+        var gram = degree2.call(() -> new Matrix(1, 2).init("x x", "y").gramIm());
+        assertEquals(MVPolynomial.parse("y y"), gram.cell(0, 0));
+        var lines = new java.io.StringWriter();
+        Context.defaults().withTruncation(degree1).call(() -> {
+            try {
+                return PolynomialBatch.run(new java.io.BufferedReader(new java.io.StringReader("y y + 1\n")), lines,
+                                           PolynomialBatch.Config.defaults().withRules(new SubstituteTerms().add("y", "x")));
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        });
+        assertEquals("1\n", lines.toString());
+    }
+}
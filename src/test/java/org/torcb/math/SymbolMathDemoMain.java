@@ -19,15 +19,11 @@ public interface SymbolMathDemoMain {
 
         var iiRule = SubstituteTerm.parse("i i", "1 - j j - k k");
         var jjRule = SubstituteTerm.parse("j j", "1 - i i - k k");
-        var l90_2 = l90_1.multiplyIm(l90_1)
-                         .substituteTermsIm(jjRule)
-                         .substituteTermsIm(iiRule)
-                         .substituteTermsIm(jjRule);
-        var l90_3 = l90_2.multiplyIm(l90_1)
-                         .substituteTermsIm(iiRule);
-        var l90_4 = l90_2.multiplyIm(l90_2)
-                         .substituteTermsIm(iiRule)
-                         .substituteTermsIm(jjRule);
+        var rules = new SubstituteTerms().add(jjRule, iiRule, jjRule);
+        var l90_2 = l90_1.powIm(2, rules);
+        var l90_3 = l90_1.powIm(3, rules);
+        var l90_4 = l90_1.powIm(4, rules);
+        var l90_9 = l90_1.powIm(9, rules, true);
         Matrix neg_3 = l90_3.multiplyIm(-1);
 
         var r1_3 = l90_1.addIm(l90_3);
@@ -44,11 +40,13 @@ public interface SymbolMathDemoMain {
         System.out.println("l90_2" + l90_2);
         System.out.println("l90_3" + l90_3);
         System.out.println("l90_4" + l90_4);
+        System.out.println("l90_9" + l90_9);
         System.out.println("add 1 3" + r1_3);
         System.out.println("add 2 4" + r2_4);
         System.out.println("add 1 3 ==0 " + isNull_1);
         System.out.println("add 2 4 ==0 " + isNull_2);
         assert l90_1.equals(neg_3);
+        assert l90_1.equals(l90_9);
         assert isNull_1;
         assert isNull_2;
     }
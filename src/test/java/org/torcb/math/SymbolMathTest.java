@@ -2,6 +2,9 @@ package org.torcb.math;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.torcb.math.SymbolMath.*;
 
@@ -105,6 +108,231 @@ public class SymbolMathTest {
         assertEquals(new MVPolynomial().add(1), det);
     }
 
+    @Test
+    void testGram() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.set(new SubstituteTerms()
+                .add("i i", "1 - j j - k k")
+                .add("cos cos", "1 - sin sin"));
+        var L = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        var rotateM = Matrix.identity(3).addIm(L.multiplyIm("sin")).addIm(L.multiplyIm(L).multiplyIm("1 - cos"));
+        var gram = rotateM.gramIm();
+        assertTrue(gram.isSymmetric());
+        assertNotSame(gram.cell(0, 2), gram.cell(2, 0));
+        assertEquals(Matrix.identity(3), gram);
+        assertEquals(rotateM.multiplyIm(rotateM.transposeIm()), gram);
+        var transposed = gram.transposeIm();
+        assertEquals(gram, transposed);
+        transposed.cell(0, 2).add("z");
+        gram.cell(2, 0).add("w");
+        assertEquals(MVPolynomial.parse("z"), transposed.cell(0, 2));
+        assertEquals(Matrix.identity(3), gram.substituteTermsIm("w", "0"));
+        gram.cells[1] = MVPolynomial.parse("q"); //direct write: symmetry is recomputed
+        assertFalse(gram.isSymmetric());
+        gram.cells[1] = null;
+
+        var m = new Matrix(2, 3).init("a", "b", "1", "0", "c", "a b");
+        var n = new Matrix(4, 3).init("1", "x", "0", "y", "0", "a", "2", "2", "2", "0", "0", "c");
+        var mnT = m.multiplyTransposeIm(n);
+        assertFalse(mnT.isSymmetric());
+        assertEquals(m.multiplyIm(n.transposeIm()), mnT);
+        var scaled = m.gramIm().multiplyIm(2).deriveIm("a");
+        assertTrue(scaled.isSymmetric());
+        assertEquals(m.multiplyIm(m.transposeIm()).multiplyIm(2).deriveIm("a"), scaled);
+        SubstituteRules.remove();
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testFingerprint() {
+        Matrix.logRingBuf.clear();
+        assertEquals(new Term("a b c"), new Term("c a b"));
+        assertEquals(new Term("c a b").hashCode(), new Term("a b c").hashCode());
+        assertNotEquals(new Term("a b").hashCode(), new Term("c d").hashCode());
+        assertEquals(new Term("a b").fingerprint(), new Term("a").multiplyIm(new Term("b")).fingerprint());
+        assertEquals(new Term("a").fingerprint(), new Term("a b").divideIm(new Term("b")).fingerprint());
+
+        var p = MVPolynomial.parse("2 a b + c - 1");
+        var q = MVPolynomial.parse("x y - c + 1");
+        var sum = p.addIm(q);
+        assertEquals(MVPolynomial.parse("2 b a + x y").fingerprint(), sum.fingerprint());
+        assertEquals(p.fingerprint(), p.copy().fingerprint());
+        assertEquals(p.fingerprint(), sum.minusIm(q).fingerprint());
+        assertNotEquals(p.fingerprint(), p.multiplyIm(2).fingerprint());
+        assertEquals(0, sum.minusIm(sum).fingerprint());
+        assertEquals(p.copy().add(new Term("a b"), 1e-12), p);
+        assertEquals(p.copy().add(new Term("a b"), 1e-12).hashCode(), p.hashCode());
+
+        var m = new Matrix(2, 2).init("a", "b", "0", "a b");
+        var same = new Matrix(2, 2).init("a", "b", "0 x", "b a");
+        assertEquals(m, same);
+        assertEquals(m.hashCode(), same.hashCode());
+        assertEquals(m.fingerprint(), same.fingerprint());
+        assertEquals(m.transposeIm().hashCode(), m.transpose().hashCode());
+        assertEquals(m.transposeIm().fingerprint(), m.transpose().fingerprint());
+        assertNotEquals(m.fingerprint(), m.transposeIm().fingerprint());
+        assertEquals(1, new HashSet<>(List.of(m, same, m.toMatrix())).size());
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testTruncation() {
+        Matrix.logRingBuf.clear();
+        var sinX = MVPolynomial.parse("x - 0.1666666666666667 x x x + 0.008333333333333333 x x x x x");
+        var cosY = MVPolynomial.parse("1 - 0.5 y y + 0.04166666666666667 y y y y");
+        var degree4 = Truncation.totalDegree(4);
+        var full = sinX.multiplyIm(cosY).multiplyIm(sinX.addIm(cosY));
+        var truncated = sinX.multiplyIm(cosY, 1, degree4).multiplyIm(sinX.addIm(cosY), 1, degree4);
+        assertEquals(full.truncateIm(degree4), truncated);
+        assertTrue(truncated.terms().stream().allMatch(t -> t.degree() <= 4));
+
+        var capX = Truncation.NONE.withMaxExponent("x", 3).withMaxDegree(6);
+        assertEquals(full.truncateIm(capX), sinX.multiplyIm(cosY, 1, capX).multiplyIm(sinX.addIm(cosY), 1, capX));
+        assertTrue(capX.accepts(new Term("x x x y y y")));
+        assertFalse(capX.accepts(new Term("x x x x")));
+
+        var m = new Matrix(2, 2).init(sinX, cosY, cosY.negateIm(), sinX);
+        assertEquals(m.multiplyIm(m).truncateIm(degree4), m.multiplyIm(m, degree4));
+        assertTrue(TruncationRules.get().isNone());
+        TruncationRules.set(degree4);
+        try {
+            assertEquals(m.multiplyIm(m, Truncation.NONE).truncateIm(degree4), m.multiplyIm(m));
+            TruncationRules.set(Truncation.totalDegree(2));
+            var cubic = MVPolynomial.parse("x x x + y");
+            assertEquals(2, cubic.terms().size());
+            assertEquals(3, SubstituteTerm.parse("a", "b c d").toExpression().terms().iterator().next().degree());
+            assertEquals(cubic, MVPolynomial.parse("(x - y) * x x + x x y + y"));
+        } finally {
+            TruncationRules.remove();
+        }
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testCompactTerms() {
+        var p = MVPolynomial.parse("x x + 2 x y - 3");
+        var two = new MVPolynomial().add(2);
+        var k = MVPolynomial.parse("-k");
+        assertEquals(MVPolynomial.parse("2 x x + 4 x y - 6"), p.multiplyIm(two));
+        assertEquals(MVPolynomial.parse("2 x x + 4 x y - 6"), two.multiplyIm(p));
+        assertEquals(MVPolynomial.parse("-k x x - 2 k x y + 3 k"), k.multiplyIm(p));
+        assertEquals(MVPolynomial.parse("-k x x - 2 k x y + 3 k"), p.multiplyIm(k));
+        assertEquals(MVPolynomial.parse("k k"), k.multiplyIm(k));
+        assertTrue(p.multiplyIm(new MVPolynomial()).isZero());
+        assertEquals(MVPolynomial.parse("x x x"), p.multiplyIm(MVPolynomial.parse("x"), 1, Truncation.totalDegree(2))
+                                                   .addIm(MVPolynomial.parse("x x x + 3 x")));
+
+        var grown = new MVPolynomial().add(1); //constant, promoted by a second term, shrunk again
+        grown.add(k);
+        assertEquals(MVPolynomial.parse("1 - k"), grown);
+        grown.add(1, "k");
+        assertEquals(new MVPolynomial().add(1), grown);
+        assertEquals(new MVPolynomial().add(1).hashCode(), grown.hashCode());
+        assertEquals(new MVPolynomial().add(1).fingerprint(), grown.fingerprint());
+
+        var copy = k.copy();
+        copy.add(1);
+        assertEquals(MVPolynomial.parse("-k"), k);
+        assertEquals(MVPolynomial.parse("1 - k"), k.addIm(new MVPolynomial().add(1)));
+        assertEquals("−k + 1", copy.toString());
+
+        Matrix.logRingBuf.clear();
+        var id = Matrix.identity(3);
+        assertArrayEquals(new double[]{1, 0, 0, 0, 1, 0, 0, 0, 1}, new Matrix(3, 3).init(1, 0, 0, 0, 1, 0, 0, 0, 1).getAllScalars());
+        var L = Matrix.init3x3("0", "-k", "j", "k", "0", "-i", "-j", "i", "0");
+        assertEquals(L, id.multiplyIm(L));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testMatrixPow() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var noRules = new SubstituteTerms();
+        var fib = new Matrix(2, 2).init(1, 1, 1, 0);
+        var fib20 = new Matrix(2, 2).init(10946, 6765, 6765, 4181);
+        assertEquals(fib20, fib.powIm(20, noRules));
+        assertEquals(fib20, fib.powIm(20, noRules, true));
+        assertEquals(Matrix.identity(2), fib.powIm(0, noRules));
+
+        var jordan = new Matrix(2, 2).init("a", "1", "0", "a");
+        var expect = new Matrix(2, 2).init("a a a a a a a", "7 a a a a a a", "0", "a a a a a a a");
+        var chained = jordan;
+        for (int i = 1; i < 7; i++) chained = chained.multiplyIm(jordan);
+        assertEquals(expect, chained);
+        assertEquals(expect, jordan.powIm(7, noRules));
+        assertEquals(expect, jordan.powIm(7, noRules, true));
+
+        var rules = new SubstituteTerms().add("i i", "1 - j j - k k");
+        var L = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        assertEquals(L.multiplyIm(-1), L.powIm(3, rules, true));
+        assertEquals(L, L.powIm(5, rules, true));
+        assertEquals(L.powIm(2, rules).multiplyIm(-1), L.powIm(12, rules, true));
+
+        var a = new Matrix(2, 2).init("x", "1", "0", "x");
+        var mutable = new SubstituteTerms();
+        var square = a.powIm(2, mutable);
+        square.cell(0, 0).add("q"); //callers get copies
+        assertEquals(new Matrix(2, 2).init("x x", "2 x", "0", "x x"), a.powIm(2, mutable));
+        mutable.add("x x", "y"); //same instance, new content
+        assertEquals(new Matrix(2, 2).init("y", "2 x", "0", "y"), a.powIm(2, mutable));
+        var truncated = a.multiplyIm(a, Truncation.totalDegree(1));
+        TruncationRules.set(Truncation.totalDegree(1));
+        try {
+            assertEquals(truncated, a.powIm(2, new SubstituteTerms()));
+        } finally {
+            TruncationRules.remove();
+        }
+        a.cells[0] = MVPolynomial.parse("z"); //direct write
+        assertEquals(MVPolynomial.parse("z z"), a.powIm(2, new SubstituteTerms()).cell(0, 0));
+        a.cells[1].add("w"); //in place, after a cache hit: the key holds its own copy
+        assertEquals(MVPolynomial.parse("z z"), a.powIm(2, new SubstituteTerms()).cell(0, 0));
+        assertEquals(MVPolynomial.parse("z + w z + x + w x"), a.powIm(2, new SubstituteTerms()).cell(0, 1));
+        Matrix.logRingBuf.clear();
+    }
+
+    @Test
+    void testCharacteristicPolynomial() {
+        Matrix.logRingBuf.clear();
+        SubstituteRules.remove();
+        var noRules = new SubstituteTerms();
+        var m = new Matrix(4, 4).init(
+                "a", "1", "b", "0",
+                "2", "c", "0", "a",
+                "0", "b", "1", "c",
+                "a b", "0", "3", "a");
+        assertEquals(m.determinant(), m.determinantBerkowitz(noRules));
+        var charPoly = m.characteristicPolynomial("x", noRules);
+        var xI_m = Matrix.diagonal(4, MVPolynomial.parse("x")).minusIm(m);
+        assertEquals(xI_m.determinant(), charPoly);
+
+        var traces = m.powerTraces(5, noRules);
+        var power = m;
+        for (int k = 1; k <= 5; k++, power = power.multiplyIm(m)) {
+            assertEquals(Matrix.trace(power), traces[k - 1]);
+        }
+
+        var rules = new SubstituteTerms().add("i i", "1 - j j - k k");
+        var L = Matrix.init3x3(
+                "0", "-k", "j",
+                "k", "0", "-i",
+                "-j", "i", "0");
+        assertEquals(MVPolynomial.parse("x x x + x"), L.characteristicPolynomial("x", rules));
+
+        var upper = Matrix.diagonal(9, MVPolynomial.parse("y"));
+        upper.iterate((pos, row, col, cell) -> {
+            if (col > row) upper.cells[pos] = MVPolynomial.parse(row + " a + " + col);
+        });
+        assertEquals(MVPolynomial.parse("y y y y y y y y y"), upper.determinantBerkowitz(noRules));
+        Matrix.logRingBuf.clear();
+    }
+
     @Test
     void testParseFull() throws NumberFormatException {
         try {
@@ -0,0 +1,51 @@
+package org.torcb.math;
+
+import static org.torcb.math.SymbolMath.*;
+
+/**
+ * Matrices shared by the tests
+ */
+interface TestMatrices {
+
+    /**
+     * 4x4 with zero cells and one product cell
+     */
+    static Matrix sample() {
+        return new Matrix(4, 4).init(
+                "a", "1", "b", "0",
+                "2", "c", "0", "a",
+                "0", "b", "1", "c",
+                "a b", "0", "3", "a");
+    }
+
+    /**
+     * Some zero cells, the others a varying subset of a small basis with integer coefficients
+     */
+    static Matrix symbolic(int dim, int seed) {
+        String[] basis = {"", "a", "b", "c c", "a b"};
+        var m = new Matrix(dim, dim);
+        m.iterate((pos, row, col, cell) -> {
+            if ((pos + seed) % 5 == 0) return; //some zero cells
+            var poly = m.cells[pos] = new MVPolynomial();
+            for (int i = 0; i < basis.length; i++) {
+                if ((pos + i + seed) % 3 != 0) poly.add(new Term(basis[i]), (pos * 7 + seed * 3 + i * 5) % 9 - 4);
+            }
+        });
+        return m;
+    }
+
+    /**
+     * Cells share one monomial basis (quadratic in a, b, c) with varying coefficients
+     */
+    static Matrix dense(int dim, int seed) {
+        String[] basis = {"", "a", "b", "c", "a a", "a b", "a c", "b b", "b c", "c c"};
+        var m = new Matrix(dim, dim);
+        m.iterate((pos, row, col, cell) -> {
+            var poly = m.cells[pos] = new MVPolynomial();
+            for (int i = 0; i < basis.length; i++) {
+                poly.add(new Term(basis[i]), (pos * 7 + seed * 3 + i * 5) % 9 - 4.5);
+            }
+        });
+        return m;
+    }
+}